@@ -0,0 +1,43 @@
+package com.mizan.almizan.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories of the app's own executors: virtual threads when the servlet stack runs on
+ * them (spring.threads.virtual.enabled), platform threads otherwise. Pool sizes still bound
+ * the concurrency either way.
+ */
+@Component
+public class AppThreads {
+
+    private final boolean virtual;
+
+    public AppThreads(@Value("${spring.threads.virtual.enabled:false}") boolean virtual) {
+        this.virtual = virtual;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Threads named {@code prefix0}, {@code prefix1}, ...
+     */
+    public ThreadFactory factory(String prefix) {
+        return virtual
+                ? Thread.ofVirtual().name(prefix, 0).factory()
+                : Thread.ofPlatform().name(prefix, 0).factory();
+    }
+
+    /**
+     * Background threads named {@code name} that do not keep the JVM alive.
+     */
+    public ThreadFactory daemonFactory(String name) {
+        return virtual
+                ? Thread.ofVirtual().name(name).factory()
+                : Thread.ofPlatform().name(name).daemon().factory();
+    }
+}
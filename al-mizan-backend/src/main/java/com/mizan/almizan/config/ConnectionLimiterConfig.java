@@ -0,0 +1,50 @@
+package com.mizan.almizan.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Puts a {@link LimitedDataSource} in front of the Hikari pool when app.datasource.limiter.enabled
+ * (on by default in virtual-thread mode), with as many permits as the pool has connections.
+ */
+@Configuration
+public class ConnectionLimiterConfig {
+
+    @Bean
+    static BeanPostProcessor connectionLimiterPostProcessor(Environment environment) {
+        boolean enabled = environment.getProperty("app.datasource.limiter.enabled", Boolean.class,
+                environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false));
+        Duration acquireTimeout = environment.getProperty("app.datasource.limiter.acquire-timeout",
+                Duration.class, Duration.ofSeconds(60));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (enabled && bean instanceof HikariDataSource hikari) {
+                    return new LimitedDataSource(hikari, hikari.getMaximumPoolSize(), acquireTimeout);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    MeterBinder connectionLimiterMetrics(DataSource dataSource) {
+        return registry -> {
+            try {
+                if (dataSource.isWrapperFor(LimitedDataSource.class)) {
+                    dataSource.unwrap(LimitedDataSource.class).bindTo(registry);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+}
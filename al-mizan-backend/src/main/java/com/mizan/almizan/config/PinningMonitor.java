@@ -0,0 +1,82 @@
+package com.mizan.almizan.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Records virtual threads pinned to their carrier (blocking inside {@code synchronized} or native code)
+ * from the JFR jdk.VirtualThreadPinned event, as the timer mizan.vthreads.pinned tagged with
+ * the innermost application frame. Enabled by default in virtual-thread mode.
+ */
+@Component
+@Slf4j
+public class PinningMonitor {
+
+    private static final String APP_PACKAGE = "com.mizan.";
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Duration threshold;
+    private RecordingStream stream;
+
+    public PinningMonitor(MeterRegistry meterRegistry,
+                          @Value("${app.threads.pinning.enabled:${spring.threads.virtual.enabled:false}}") boolean enabled,
+                          @Value("${app.threads.pinning.threshold:20ms}") Duration threshold) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.threshold = threshold;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        stream = new RecordingStream();
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+        stream.onEvent("jdk.VirtualThreadPinned", this::record);
+        stream.startAsync();
+        log.info("Virtual thread pinning monitor started (threshold {})", threshold);
+    }
+
+    private void record(RecordedEvent event) {
+        String frame = appFrame(event);
+        Timer.builder("mizan.vthreads.pinned")
+                .description("Virtual threads pinned to their carrier thread")
+                .tag("frame", frame)
+                .register(meterRegistry)
+                .record(event.getDuration());
+        log.warn("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), frame);
+    }
+
+    private static String appFrame(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "unknown";
+        }
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (type.startsWith(APP_PACKAGE)) {
+                return type.substring(type.lastIndexOf('.') + 1) + "." + frame.getMethod().getName();
+            }
+        }
+        return "other";
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
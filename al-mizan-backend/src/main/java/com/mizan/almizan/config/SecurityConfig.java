@@ -1,6 +1,9 @@
 package com.mizan.almizan.config;
 
+import com.mizan.almizan.security.BoundedPasswordEncoder;
 import com.mizan.almizan.security.JwtFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,6 +22,7 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import org.springframework.beans.factory.annotation.Value;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -39,6 +43,8 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        // Completion of streamed responses, already authorized on the request dispatch
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers(
                                 "/api/auth/**",
                                 "/actuator/**",
@@ -73,9 +79,16 @@ public class SecurityConfig {
         return source;
     }
 
+    /**
+     * BCrypt on a bounded executor: used by register and, through the AuthenticationManager, by login.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry,
+                                           @Value("${app.auth.hashing.threads:0}") int threads,
+                                           @Value("${app.auth.hashing.queue-capacity:32}") int queueCapacity,
+                                           @Value("${app.auth.hashing.retry-after:1s}") Duration retryAfter) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), poolSize, queueCapacity, retryAfter, meterRegistry);
     }
 
     @Bean
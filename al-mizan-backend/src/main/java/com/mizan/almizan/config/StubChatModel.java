@@ -0,0 +1,75 @@
+package com.mizan.almizan.config;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local chat model for development and tests without network access (app.ai.stub.enabled):
+ * answers a fixed advice JSON in the requested language, streamed in small chunks.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "app.ai.stub.enabled", havingValue = "true")
+public class StubChatModel implements ChatModel {
+
+    private static final int CHUNK_SIZE = 8;
+
+    private final Duration chunkDelay;
+
+    public StubChatModel(@Value("${app.ai.stub.chunk-delay:30ms}") Duration chunkDelay) {
+        this.chunkDelay = chunkDelay;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return response(answer(prompt));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        String answer = answer(prompt);
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < answer.length(); i += CHUNK_SIZE) {
+            chunks.add(answer.substring(i, Math.min(i + CHUNK_SIZE, answer.length())));
+        }
+        return Flux.fromIterable(chunks)
+                .delayElements(chunkDelay)
+                .map(StubChatModel::response);
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static String answer(Prompt prompt) {
+        String content = prompt.getContents();
+        if (content.contains("in English")) {
+            return """
+                    {"advice": "Keep up your good deeds, and let each prayer renew your intention.",
+                     "encouragement": "اللهم أعنا على ذكرك وشكرك وحسن عبادتك",
+                     "hadithReference": "Sahih al-Bukhari 1"}""";
+        }
+        if (content.contains("باللغة العربية")) {
+            return """
+                    {"advice": "واصل أعمالك الصالحة، وجدد نيتك مع كل صلاة.",
+                     "encouragement": "اللهم أعنا على ذكرك وشكرك وحسن عبادتك",
+                     "hadithReference": "صحيح البخاري 1"}""";
+        }
+        return """
+                {"advice": "Continuez vos bonnes actions et renouvelez votre intention à chaque prière.",
+                 "encouragement": "اللهم أعنا على ذكرك وشكرك وحسن عبادتك",
+                 "hadithReference": "Sahih al-Bukhari 1"}""";
+    }
+}
@@ -2,50 +2,76 @@ package com.mizan.almizan.controller;
 
 import com.mizan.almizan.dto.ActionDTO;
 import com.mizan.almizan.entity.Action;
-import com.mizan.almizan.entity.AppUser;
-import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.security.AuthenticatedUser;
 import com.mizan.almizan.service.ActionService;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/actions")
-@RequiredArgsConstructor
 public class ActionController {
 
     private final ActionService actionService;
-    private final UserRepository userRepository;
+    private final CacheControl catalogCacheControl;
 
+    public ActionController(ActionService actionService,
+                            @Value("${app.catalog.http.max-age:5m}") Duration catalogMaxAge) {
+        this.actionService = actionService;
+        this.catalogCacheControl = CacheControl.maxAge(catalogMaxAge).cachePrivate();
+    }
+
+    /**
+     * Active catalog, all names or only those of {@code lang} (fr, en, ar).
+     */
     @GetMapping
-    public ResponseEntity<List<ActionDTO>> getAllActions() {
-        return ResponseEntity.ok(actionService.getAllActions());
+    public ResponseEntity<byte[]> getAllActions(
+            @RequestParam(required = false) String lang,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return catalogResponse(actionService.getCatalogBody(lang, null), acceptEncoding);
     }
 
     @GetMapping("/type/{type}")
-    public ResponseEntity<List<ActionDTO>> getByType(@PathVariable Action.ActionType type) {
-        return ResponseEntity.ok(actionService.getActionsByType(type));
+    public ResponseEntity<byte[]> getByType(
+            @PathVariable Action.ActionType type,
+            @RequestParam(required = false) String lang,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return catalogResponse(actionService.getCatalogBody(lang, type), acceptEncoding);
     }
 
     @GetMapping("/today")
-    public ResponseEntity<List<ActionDTO>> getTodayActions(@AuthenticationPrincipal UserDetails userDetails) {
-        AppUser user = userRepository.findByUsername(userDetails.getUsername())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        return ResponseEntity.ok(actionService.getActionsForUserAndDate(user.getId(), LocalDate.now()));
+    public ResponseEntity<List<ActionDTO>> getTodayActions(@AuthenticationPrincipal AuthenticatedUser user) {
+        return ResponseEntity.ok(actionService.getActionsForUserAndDate(user.id(), LocalDate.now()));
     }
 
     @GetMapping("/date/{date}")
     public ResponseEntity<List<ActionDTO>> getActionsByDate(
-            @AuthenticationPrincipal UserDetails userDetails,
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
-        AppUser user = userRepository.findByUsername(userDetails.getUsername())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        return ResponseEntity.ok(actionService.getActionsForUserAndDate(user.getId(), date));
+        return ResponseEntity.ok(actionService.getActionsForUserAndDate(user.id(), date));
+    }
+
+    /**
+     * Pre-rendered bytes, gzipped when accepted. Spring answers a matching If-None-Match with 304.
+     */
+    private ResponseEntity<byte[]> catalogResponse(ActionService.CatalogBody body, String acceptEncoding) {
+        boolean gzip = AcceptEncoding.allowsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(catalogCacheControl)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.eTag(body.gzipETag()).header(HttpHeaders.CONTENT_ENCODING, "gzip").body(body.gzip());
+        }
+        return response.eTag(body.eTag()).body(body.json());
     }
 }
@@ -2,17 +2,20 @@ package com.mizan.almizan.controller;
 
 import com.mizan.almizan.dto.AiAdviceDTO;
 import com.mizan.almizan.dto.BalanceDTO;
-import com.mizan.almizan.entity.AppUser;
-import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.security.AuthenticatedUser;
 import com.mizan.almizan.service.AiAdviceService;
 import com.mizan.almizan.service.BalanceService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/advice")
@@ -21,17 +24,29 @@ public class AiAdviceController {
 
     private final AiAdviceService aiAdviceService;
     private final BalanceService balanceService;
-    private final UserRepository userRepository;
 
+    /**
+     * Asynchronous: the servlet thread is released while the model answers on the advice executor.
+     */
     @GetMapping("/today")
-    public ResponseEntity<AiAdviceDTO> getTodayAdvice(
-            @AuthenticationPrincipal UserDetails userDetails,
+    public CompletableFuture<ResponseEntity<AiAdviceDTO>> getTodayAdvice(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @RequestParam(defaultValue = "fr") String lang) {
-        AppUser user = userRepository.findByUsername(userDetails.getUsername())
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        BalanceDTO balance = balanceService.getBalance(user.id(), LocalDate.now());
+        return aiAdviceService.generateAdvice(balance, lang).thenApply(ResponseEntity::ok);
+    }
 
-        BalanceDTO balance = balanceService.getBalance(user.getId(), LocalDate.now());
-        AiAdviceDTO advice = aiAdviceService.generateAdvice(balance, lang);
-        return ResponseEntity.ok(advice);
+    /**
+     * Server-Sent Events: "delta" events with {"text": ...} while the advice is generated,
+     * then one "advice" event with the complete advice.
+     */
+    @GetMapping(value = "/today/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamTodayAdvice(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam(defaultValue = "fr") String lang) {
+        BalanceDTO balance = balanceService.getBalance(user.id(), LocalDate.now());
+        return aiAdviceService.streamAdvice(balance, lang).map(event -> event.advice() != null
+                ? ServerSentEvent.builder((Object) event.advice()).event("advice").build()
+                : ServerSentEvent.builder((Object) Map.of("text", event.delta())).event("delta").build());
     }
 }
\ No newline at end of file
@@ -1,19 +1,32 @@
 package com.mizan.almizan.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mizan.almizan.dto.BalanceDTO;
+import com.mizan.almizan.dto.BulkToggleRequest;
 import com.mizan.almizan.dto.CheckActionRequest;
-import com.mizan.almizan.entity.AppUser;
-import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.dto.HistoryPageDTO;
+import com.mizan.almizan.dto.StreakDTO;
+import com.mizan.almizan.security.AuthenticatedUser;
 import com.mizan.almizan.service.BalanceService;
+import com.mizan.almizan.service.HistoryExportService;
+import com.mizan.almizan.service.StreakService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/balance")
@@ -21,48 +34,125 @@ import java.util.List;
 public class BalanceController {
 
     private final BalanceService balanceService;
-    private final UserRepository userRepository;
+    private final StreakService streakService;
+    private final HistoryExportService historyExportService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/toggle")
     public ResponseEntity<BalanceDTO> toggleAction(
-            @AuthenticationPrincipal UserDetails userDetails,
+            @AuthenticationPrincipal AuthenticatedUser user,
             @RequestBody CheckActionRequest request) {
-        Long userId = getUserId(userDetails);
-        return ResponseEntity.ok(balanceService.toggleAction(userId, request));
+        return ResponseEntity.ok(balanceService.toggleAction(user.id(), request));
+    }
+
+    /**
+     * Many toggles in one transaction (catch-up or offline edits); returns the balance of each affected day.
+     */
+    @PostMapping("/toggle/bulk")
+    public ResponseEntity<List<BalanceDTO>> toggleActions(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestBody BulkToggleRequest request) {
+        return ResponseEntity.ok(balanceService.toggleActions(user.id(), request));
     }
 
     @GetMapping("/today")
-    public ResponseEntity<BalanceDTO> getTodayBalance(@AuthenticationPrincipal UserDetails userDetails) {
-        Long userId = getUserId(userDetails);
-        return ResponseEntity.ok(balanceService.getBalance(userId, LocalDate.now()));
+    public ResponseEntity<BalanceDTO> getTodayBalance(@AuthenticationPrincipal AuthenticatedUser user) {
+        return ResponseEntity.ok(balanceService.getBalance(user.id(), LocalDate.now()));
     }
 
     @GetMapping("/date/{date}")
     public ResponseEntity<BalanceDTO> getBalanceByDate(
-            @AuthenticationPrincipal UserDetails userDetails,
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
-        Long userId = getUserId(userDetails);
-        return ResponseEntity.ok(balanceService.getBalance(userId, date));
+        return ResponseEntity.ok(balanceService.getBalance(user.id(), date));
     }
 
     @GetMapping("/history")
     public ResponseEntity<List<BalanceDTO>> getHistory(
-            @AuthenticationPrincipal UserDetails userDetails,
+            @AuthenticationPrincipal AuthenticatedUser user,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
-        Long userId = getUserId(userDetails);
-        return ResponseEntity.ok(balanceService.getHistory(userId, startDate, endDate));
+        return ResponseEntity.ok(balanceService.getHistory(user.id(), startDate, endDate));
+    }
+
+    @GetMapping("/history/page")
+    public ResponseEntity<HistoryPageDTO> getHistoryPage(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate before,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(balanceService.getHistoryPage(user.id(), startDate, endDate, before, limit));
+    }
+
+    /**
+     * Whole range as a JSON array written element by element while rows are read,
+     * so memory stays flat however long the range is.
+     */
+    @GetMapping("/history/stream")
+    public ResponseEntity<StreamingResponseBody> streamHistory(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        balanceService.checkHistoryRange(startDate, endDate);
+        Long userId = user.id();
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.writeStartArray();
+                balanceService.streamHistory(userId, startDate, endDate, balance -> {
+                    try {
+                        json.writeObject(balance);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                json.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Whole history of the user as NDJSON (one day per line) or CSV, streamed from a cursor
+     * and gzipped on the fly when accepted.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        HistoryExportService.Format exportFormat = HistoryExportService.Format.of(format);
+        boolean gzip = AcceptEncoding.allowsGzip(acceptEncoding);
+        Long userId = user.id();
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                try (GZIPOutputStream compressed = new GZIPOutputStream(out, 8192)) {
+                    historyExportService.export(userId, exportFormat, compressed);
+                }
+            } else {
+                historyExportService.export(userId, exportFormat, out);
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(exportFormat == HistoryExportService.Format.CSV
+                        ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("al-mizan-history." + exportFormat.name().toLowerCase()).build().toString())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 
     @GetMapping("/recent")
-    public ResponseEntity<List<BalanceDTO>> getRecentHistory(@AuthenticationPrincipal UserDetails userDetails) {
-        Long userId = getUserId(userDetails);
-        return ResponseEntity.ok(balanceService.getRecentHistory(userId));
+    public ResponseEntity<List<BalanceDTO>> getRecentHistory(@AuthenticationPrincipal AuthenticatedUser user) {
+        return ResponseEntity.ok(balanceService.getRecentHistory(user.id()));
     }
 
-    private Long getUserId(UserDetails userDetails) {
-        AppUser user = userRepository.findByUsername(userDetails.getUsername())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        return user.getId();
+    @GetMapping("/streak")
+    public ResponseEntity<StreakDTO> getStreak(@AuthenticationPrincipal AuthenticatedUser user) {
+        return ResponseEntity.ok(streakService.getStreak(user.id()));
     }
 }
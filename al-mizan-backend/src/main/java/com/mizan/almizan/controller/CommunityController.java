@@ -0,0 +1,24 @@
+package com.mizan.almizan.controller;
+
+import com.mizan.almizan.dto.CommunityStatsDTO;
+import com.mizan.almizan.service.CommunityStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/api/community")
+@RequiredArgsConstructor
+public class CommunityController {
+
+    private final CommunityStats communityStats;
+
+    @GetMapping("/stats")
+    public ResponseEntity<CommunityStatsDTO> getStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return ResponseEntity.ok(communityStats.getStats(date));
+    }
+}
@@ -0,0 +1,49 @@
+package com.mizan.almizan.controller;
+
+import com.mizan.almizan.dto.DayViewDTO;
+import com.mizan.almizan.security.AuthenticatedUser;
+import com.mizan.almizan.service.DayViewService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/api/day")
+@RequiredArgsConstructor
+public class DayController {
+
+    private final DayViewService dayViewService;
+
+    @GetMapping
+    public ResponseEntity<DayViewDTO> getToday(@AuthenticationPrincipal AuthenticatedUser user, WebRequest webRequest) {
+        return dayView(user.id(), LocalDate.now(), webRequest);
+    }
+
+    @GetMapping("/{date}")
+    public ResponseEntity<DayViewDTO> getDay(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            WebRequest webRequest) {
+        return dayView(user.id(), date, webRequest);
+    }
+
+    /**
+     * Conditional GET: a matching If-None-Match gets a 304 without reading the day's actions.
+     */
+    private ResponseEntity<DayViewDTO> dayView(Long userId, LocalDate date, WebRequest webRequest) {
+        String eTag = dayViewService.currentETag(userId, date);
+        if (eTag != null && webRequest.checkNotModified(eTag)) {
+            dayViewService.countNotModified();
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(dayViewService.getDayView(userId, date));
+    }
+}
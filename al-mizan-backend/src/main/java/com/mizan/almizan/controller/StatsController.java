@@ -0,0 +1,30 @@
+package com.mizan.almizan.controller;
+
+import com.mizan.almizan.dto.PeriodStatsDTO;
+import com.mizan.almizan.security.AuthenticatedUser;
+import com.mizan.almizan.service.StatsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/stats")
+@RequiredArgsConstructor
+public class StatsController {
+
+    private final StatsService statsService;
+
+    @GetMapping
+    public ResponseEntity<List<PeriodStatsDTO>> getStats(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam(defaultValue = "MONTH") String period,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(statsService.getStats(user.id(), period, from, to));
+    }
+}
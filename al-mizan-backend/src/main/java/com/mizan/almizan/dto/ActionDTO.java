@@ -3,7 +3,7 @@ package com.mizan.almizan.dto;
 import com.mizan.almizan.entity.Action;
 import lombok.*;
 
-@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder(toBuilder = true)
 public class ActionDTO {
     private Long id;
     private String nameAr;
@@ -28,4 +28,11 @@ public class ActionDTO {
                 .checked(false)
                 .build();
     }
+
+    /**
+     * Copy of this DTO with the given checked state (catalog DTOs are shared and never mutated).
+     */
+    public ActionDTO withChecked(boolean checked) {
+        return toBuilder().checked(checked).build();
+    }
 }
@@ -0,0 +1,67 @@
+package com.mizan.almizan.dto;
+
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.entity.DailyBalance;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Counts and weights of a day, as stored in daily_balances or computed from checked actions.
+ */
+public record BalanceTotals(int goodCount, int badCount, int goodWeight, int badWeight) {
+
+    public static final BalanceTotals EMPTY = new BalanceTotals(0, 0, 0, 0);
+
+    public static BalanceTotals of(DailyBalance balance) {
+        return new BalanceTotals(
+                Objects.requireNonNullElse(balance.getGoodCount(), 0),
+                Objects.requireNonNullElse(balance.getBadCount(), 0),
+                Objects.requireNonNullElse(balance.getGoodWeight(), 0),
+                Objects.requireNonNullElse(balance.getBadWeight(), 0));
+    }
+
+    /**
+     * Contribution of one checked action, times {@code sign} (-1 when it is unchecked).
+     */
+    public static BalanceTotals of(Action action, int sign) {
+        int weight = action.getWeight() * sign;
+        return action.getType() == Action.ActionType.GOOD
+                ? new BalanceTotals(sign, 0, weight, 0)
+                : new BalanceTotals(0, sign, 0, weight);
+    }
+
+    public DailyBalance.BalanceVerdict verdict() {
+        return verdictOf(goodWeight, badWeight);
+    }
+
+    public BalanceTotals plus(BalanceTotals delta) {
+        return new BalanceTotals(goodCount + delta.goodCount, badCount + delta.badCount,
+                goodWeight + delta.goodWeight, badWeight + delta.badWeight);
+    }
+
+    public BalanceTotals minus(BalanceTotals delta) {
+        return new BalanceTotals(goodCount - delta.goodCount, badCount - delta.badCount,
+                goodWeight - delta.goodWeight, badWeight - delta.badWeight);
+    }
+
+    public BalanceDTO toDto(LocalDate date) {
+        return BalanceDTO.builder()
+                .date(date)
+                .goodCount(goodCount)
+                .badCount(badCount)
+                .goodWeight(goodWeight)
+                .badWeight(badWeight)
+                .verdict(verdict().name())
+                .build();
+    }
+
+    public static DailyBalance.BalanceVerdict verdictOf(int goodWeight, int badWeight) {
+        if (goodWeight > badWeight) {
+            return DailyBalance.BalanceVerdict.POSITIVE;   // حسنات > سيئات
+        } else if (badWeight > goodWeight) {
+            return DailyBalance.BalanceVerdict.NEGATIVE;   // سيئات > حسنات
+        }
+        return DailyBalance.BalanceVerdict.NEUTRAL;
+    }
+}
@@ -0,0 +1,13 @@
+package com.mizan.almizan.dto;
+
+import lombok.*;
+import java.util.List;
+
+/**
+ * Several toggles applied together, possibly on different dates (items without a date are for today).
+ * When the same action and date appear more than once, the last item wins.
+ */
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor
+public class BulkToggleRequest {
+    private List<CheckActionRequest> items;
+}
@@ -0,0 +1,27 @@
+package com.mizan.almizan.dto;
+
+import lombok.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Community view of one day: users per verdict (only users with checked actions count) and the
+ * actions checked by the most users, overall and per category.
+ */
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class CommunityStatsDTO {
+    private LocalDate date;
+    private Long positiveUsers;
+    private Long negativeUsers;
+    private Long neutralUsers;
+    private List<ActionCount> topActions;
+    private Map<String, List<ActionCount>> topActionsByCategory;
+
+    @Getter @Setter @NoArgsConstructor @AllArgsConstructor
+    public static class ActionCount {
+        private Long actionId;
+        private String type;
+        private Long users;
+    }
+}
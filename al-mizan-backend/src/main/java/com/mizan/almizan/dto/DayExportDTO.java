@@ -0,0 +1,19 @@
+package com.mizan.almizan.dto;
+
+import lombok.*;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * One day of a history export: the stored balance and the ids of the actions checked that day.
+ */
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class DayExportDTO {
+    private LocalDate date;
+    private Integer goodCount;
+    private Integer badCount;
+    private Integer goodWeight;
+    private Integer badWeight;
+    private String verdict;
+    private List<Long> checkedActionIds;
+}
@@ -0,0 +1,12 @@
+package com.mizan.almizan.dto;
+
+import lombok.*;
+import java.time.LocalDate;
+import java.util.List;
+
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class DayViewDTO {
+    private LocalDate date;
+    private BalanceDTO balance;
+    private List<ActionDTO> actions;
+}
@@ -0,0 +1,15 @@
+package com.mizan.almizan.dto;
+
+import lombok.*;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * One page of history, newest first. Pass {@code nextCursor} as {@code before} to get the
+ * next (older) page; it is null on the last page.
+ */
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class HistoryPageDTO {
+    private List<BalanceDTO> items;
+    private LocalDate nextCursor;
+}
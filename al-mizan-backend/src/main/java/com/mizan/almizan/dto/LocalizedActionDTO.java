@@ -0,0 +1,33 @@
+package com.mizan.almizan.dto;
+
+import com.mizan.almizan.entity.Action;
+import lombok.*;
+
+/**
+ * Catalog entry with the name in one language only ({@code GET /api/actions?lang=}).
+ */
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class LocalizedActionDTO {
+    private Long id;
+    private String name;
+    private Action.ActionType type;
+    private Integer weight;
+    private String category;
+    private String icon;
+
+    public static LocalizedActionDTO from(ActionDTO action, String lang) {
+        return LocalizedActionDTO.builder()
+                .id(action.getId())
+                .name(switch (lang) {
+                    case "ar" -> action.getNameAr();
+                    case "en" -> action.getNameEn();
+                    case "fr" -> action.getNameFr();
+                    default -> throw new RuntimeException("Unsupported lang: " + lang);
+                })
+                .type(action.getType())
+                .weight(action.getWeight())
+                .category(action.getCategory())
+                .icon(action.getIcon())
+                .build();
+    }
+}
@@ -0,0 +1,24 @@
+package com.mizan.almizan.dto;
+
+import lombok.*;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Totals of one week, month or year; positive/negative/neutral days count only days with checked actions.
+ */
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class PeriodStatsDTO {
+    private String period;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private Integer goodCount;
+    private Integer badCount;
+    private Integer goodWeight;
+    private Integer badWeight;
+    private String verdict;
+    private Integer positiveDays;
+    private Integer negativeDays;
+    private Integer neutralDays;
+    private Map<String, BalanceTotals> categories;
+}
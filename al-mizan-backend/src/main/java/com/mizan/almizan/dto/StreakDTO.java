@@ -0,0 +1,22 @@
+package com.mizan.almizan.dto;
+
+import lombok.*;
+import java.time.LocalDate;
+
+/**
+ * Consecutive POSITIVE days: the streak still going (ends today or yesterday, else 0) and the longest one.
+ */
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class StreakDTO {
+    private Integer currentLength;
+    private Integer bestLength;
+    private LocalDate lastPositiveDate;
+
+    public static StreakDTO from(StreakState state, LocalDate today) {
+        return StreakDTO.builder()
+                .currentLength(state.current(today))
+                .bestLength(state.best())
+                .lastPositiveDate(state.end())
+                .build();
+    }
+}
@@ -0,0 +1,63 @@
+package com.mizan.almizan.dto;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+/**
+ * Latest run of consecutive POSITIVE days ({@code length} days ending on {@code end}) and the longest
+ * run before it. Enough to apply a change of one day in O(1) as long as it touches the latest run.
+ */
+public record StreakState(int length, LocalDate end, int earlierBest) {
+
+    public static final StreakState NONE = new StreakState(0, null, 0);
+
+    public int best() {
+        return Math.max(length, earlierBest);
+    }
+
+    /**
+     * Length of the streak still going on {@code today}: the latest run if it ends today or yesterday.
+     */
+    public int current(LocalDate today) {
+        return end != null && !end.isBefore(today.minusDays(1)) ? length : 0;
+    }
+
+    /**
+     * State after a positive day later than {@link #end()}: extends the latest run or starts a new one.
+     */
+    public StreakState next(LocalDate date) {
+        if (end != null && date.equals(end.plusDays(1))) {
+            return new StreakState(length + 1, date, earlierBest);
+        }
+        return new StreakState(1, date, best());
+    }
+
+    /**
+     * Apply a day that became positive; empty when it is not after the latest run
+     * (it may merge or lengthen earlier runs, which only the history tells).
+     */
+    public Optional<StreakState> withPositive(LocalDate date) {
+        return end == null || date.isAfter(end) ? Optional.of(next(date)) : Optional.empty();
+    }
+
+    /**
+     * Apply a day that stopped being positive; empty when it is outside the latest run, or the
+     * latest run's only day (the run before it becomes the latest one).
+     */
+    public Optional<StreakState> withoutPositive(LocalDate date) {
+        if (end == null) {
+            return Optional.empty();
+        }
+        LocalDate start = end.minusDays(length - 1);
+        if (date.equals(end) && length > 1) {
+            return Optional.of(new StreakState(length - 1, end.minusDays(1), earlierBest));
+        }
+        if (!date.isBefore(start) && date.isBefore(end)) {
+            // Split: the days before the date become an earlier run
+            return Optional.of(new StreakState((int) ChronoUnit.DAYS.between(date, end), end,
+                    Math.max(earlierBest, (int) ChronoUnit.DAYS.between(start, date))));
+        }
+        return Optional.empty();
+    }
+}
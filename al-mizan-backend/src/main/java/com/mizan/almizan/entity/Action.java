@@ -9,7 +9,8 @@ import lombok.*;
 public class Action {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "actions_seq")
+    @SequenceGenerator(name = "actions_seq", sequenceName = "actions_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -37,6 +38,10 @@ public class Action {
     @Column(nullable = false)
     private Boolean active = true;
 
+    /** Stable bit of this action in day masks; assigned once and never reused. */
+    @Column(name = "bit_index", unique = true)
+    private Integer bitIndex;
+
     public enum ActionType {
         GOOD,  // حسنات
         BAD    // سيئات
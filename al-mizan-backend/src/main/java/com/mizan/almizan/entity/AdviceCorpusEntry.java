@@ -0,0 +1,70 @@
+package com.mizan.almizan.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * One generated AI advice, stored under the inputs of its prompt (totals, verdict, language).
+ */
+@Entity
+@Table(name = "advice_corpus")
+@IdClass(AdviceCorpusEntry.Key.class)
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class AdviceCorpusEntry {
+
+    @Id
+    @Column(name = "good_count")
+    private Integer goodCount;
+
+    @Id
+    @Column(name = "good_weight")
+    private Integer goodWeight;
+
+    @Id
+    @Column(name = "bad_count")
+    private Integer badCount;
+
+    @Id
+    @Column(name = "bad_weight")
+    private Integer badWeight;
+
+    @Id
+    @Column(name = "verdict", length = 20)
+    private String verdict;
+
+    @Id
+    @Column(name = "lang", length = 2)
+    private String lang;
+
+    @Id
+    @Column(name = "variant")
+    private Integer variant;
+
+    @Column(name = "advice", nullable = false, length = 4000)
+    private String advice;
+
+    @Column(name = "encouragement", nullable = false, length = 4000)
+    private String encouragement;
+
+    @Column(name = "hadith_reference", nullable = false, length = 4000)
+    private String hadithReference;
+
+    @Column(name = "generation_ms", nullable = false)
+    private Integer generationMs;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Getter @Setter @NoArgsConstructor @AllArgsConstructor @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Integer goodCount;
+        private Integer goodWeight;
+        private Integer badCount;
+        private Integer badWeight;
+        private String verdict;
+        private String lang;
+        private Integer variant;
+    }
+}
@@ -2,6 +2,7 @@ package com.mizan.almizan.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -11,7 +12,8 @@ import java.util.List;
 public class AppUser {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "app_users_seq")
+    @SequenceGenerator(name = "app_users_seq", sequenceName = "app_users_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true)
@@ -26,6 +28,10 @@ public class AppUser {
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    /** Days before this date are archived in user_day_masks (null: none). */
+    @Column(name = "actions_archived_before")
+    private LocalDate actionsArchivedBefore;
+
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<UserDailyAction> dailyActions;
 
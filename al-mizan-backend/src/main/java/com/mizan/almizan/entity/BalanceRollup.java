@@ -0,0 +1,80 @@
+package com.mizan.almizan.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Totals of a user's week or month, with the number of positive, negative and neutral days
+ * (days without any checked action are not counted).
+ */
+@Entity
+@Table(name = "balance_rollups")
+@IdClass(BalanceRollup.Key.class)
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class BalanceRollup {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "period_type", length = 10)
+    private PeriodType periodType;
+
+    @Id
+    @Column(name = "period_start")
+    private LocalDate periodStart;
+
+    @Column(name = "good_count", nullable = false)
+    private Integer goodCount;
+
+    @Column(name = "bad_count", nullable = false)
+    private Integer badCount;
+
+    @Column(name = "good_weight", nullable = false)
+    private Integer goodWeight;
+
+    @Column(name = "bad_weight", nullable = false)
+    private Integer badWeight;
+
+    @Column(name = "positive_days", nullable = false)
+    private Integer positiveDays;
+
+    @Column(name = "negative_days", nullable = false)
+    private Integer negativeDays;
+
+    @Column(name = "neutral_days", nullable = false)
+    private Integer neutralDays;
+
+    public enum PeriodType {
+        WEEK,   // ISO week, starting on Monday
+        MONTH;
+
+        public LocalDate startOf(LocalDate date) {
+            return this == WEEK
+                    ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    : date.withDayOfMonth(1);
+        }
+
+        public LocalDate endOf(LocalDate periodStart) {
+            return this == WEEK ? periodStart.plusDays(6) : periodStart.plusMonths(1).minusDays(1);
+        }
+
+        public ChronoUnit unit() {
+            return this == WEEK ? ChronoUnit.WEEKS : ChronoUnit.MONTHS;
+        }
+    }
+
+    @Getter @Setter @NoArgsConstructor @AllArgsConstructor @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Long userId;
+        private PeriodType periodType;
+        private LocalDate periodStart;
+    }
+}
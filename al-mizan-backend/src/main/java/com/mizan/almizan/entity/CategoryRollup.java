@@ -0,0 +1,53 @@
+package com.mizan.almizan.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Totals of a user's week or month restricted to one {@link Action#getCategory() action category}.
+ */
+@Entity
+@Table(name = "category_rollups")
+@IdClass(CategoryRollup.Key.class)
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class CategoryRollup {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "period_type", length = 10)
+    private BalanceRollup.PeriodType periodType;
+
+    @Id
+    @Column(name = "period_start")
+    private LocalDate periodStart;
+
+    @Id
+    @Column(name = "category", length = 100)
+    private String category;
+
+    @Column(name = "good_count", nullable = false)
+    private Integer goodCount;
+
+    @Column(name = "bad_count", nullable = false)
+    private Integer badCount;
+
+    @Column(name = "good_weight", nullable = false)
+    private Integer goodWeight;
+
+    @Column(name = "bad_weight", nullable = false)
+    private Integer badWeight;
+
+    @Getter @Setter @NoArgsConstructor @AllArgsConstructor @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Long userId;
+        private BalanceRollup.PeriodType periodType;
+        private LocalDate periodStart;
+        private String category;
+    }
+}
@@ -0,0 +1,33 @@
+package com.mizan.almizan.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Snapshot of the number of users who checked an action on one day (see CommunityStats).
+ */
+@Entity
+@Table(name = "community_action_stats")
+@IdClass(CommunityActionStats.Key.class)
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class CommunityActionStats {
+
+    @Id
+    @Column(name = "stat_date")
+    private LocalDate statDate;
+
+    @Id
+    @Column(name = "action_id")
+    private Long actionId;
+
+    @Column(name = "checked_count", nullable = false)
+    private Long checkedCount;
+
+    @Getter @Setter @NoArgsConstructor @AllArgsConstructor @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private LocalDate statDate;
+        private Long actionId;
+    }
+}
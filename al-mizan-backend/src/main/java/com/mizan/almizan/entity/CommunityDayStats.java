@@ -0,0 +1,27 @@
+package com.mizan.almizan.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDate;
+
+/**
+ * Snapshot of the community verdict distribution of one day (see CommunityStats).
+ */
+@Entity
+@Table(name = "community_day_stats")
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class CommunityDayStats {
+
+    @Id
+    @Column(name = "stat_date")
+    private LocalDate statDate;
+
+    @Column(name = "positive_users", nullable = false)
+    private Long positiveUsers;
+
+    @Column(name = "negative_users", nullable = false)
+    private Long negativeUsers;
+
+    @Column(name = "neutral_users", nullable = false)
+    private Long neutralUsers;
+}
@@ -2,6 +2,7 @@ package com.mizan.almizan.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 import java.time.LocalDate;
 
 @Entity
@@ -11,7 +12,11 @@ import java.time.LocalDate;
 public class DailyBalance {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "daily_balances_seq")
+    @SequenceGenerator(name = "daily_balances_seq", sequenceName = "daily_balances_seq", allocationSize = 50)
+    // Rows also inserted in SQL (generated schema of the test profile); each uses the bottom id
+    // of a pool and the 49 above it are skipped, see V7
+    @ColumnDefault("next value for daily_balances_seq")
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -36,6 +41,11 @@ public class DailyBalance {
     @Enumerated(EnumType.STRING)
     private BalanceVerdict verdict;
 
+    // Bumped by every write of the row (ETag of the day view); not a JPA @Version, rows are written in SQL
+    @Column(nullable = false)
+    @Builder.Default
+    private Long version = 0L;
+
     public enum BalanceVerdict {
         POSITIVE,   // حسنات > سيئات
         NEGATIVE,   // سيئات > حسنات
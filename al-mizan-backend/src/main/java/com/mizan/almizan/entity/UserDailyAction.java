@@ -2,6 +2,7 @@ package com.mizan.almizan.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -12,7 +13,11 @@ import java.time.LocalDateTime;
 public class UserDailyAction {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_daily_actions_seq")
+    @SequenceGenerator(name = "user_daily_actions_seq", sequenceName = "user_daily_actions_seq", allocationSize = 50)
+    // Rows also inserted in SQL (generated schema of the test profile); each uses the bottom id
+    // of a pool and the 49 above it are skipped, see V7
+    @ColumnDefault("next value for user_daily_actions_seq")
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,34 @@
+package com.mizan.almizan.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Compact day record: the checked actions of a user's day as a bitmask
+ * (bit = {@link Action#getBitIndex()}, little-endian bytes as produced by {@link java.util.BitSet}).
+ */
+@Entity
+@Table(name = "user_day_masks")
+@IdClass(UserDayMask.Key.class)
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class UserDayMask {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "mask_date")
+    private LocalDate maskDate;
+
+    @Column(name = "checked_mask", nullable = false)
+    private byte[] checkedMask;
+
+    @Getter @Setter @NoArgsConstructor @AllArgsConstructor @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Long userId;
+        private LocalDate maskDate;
+    }
+}
@@ -0,0 +1,35 @@
+package com.mizan.almizan.entity;
+
+import com.mizan.almizan.dto.StreakState;
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDate;
+
+/**
+ * Streak state of a user (see {@link StreakState}); best_length is stored for direct reads.
+ */
+@Entity
+@Table(name = "user_streaks")
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class UserStreak {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "run_length", nullable = false)
+    private Integer runLength;
+
+    @Column(name = "last_positive_date")
+    private LocalDate lastPositiveDate;
+
+    @Column(name = "best_length", nullable = false)
+    private Integer bestLength;
+
+    @Column(name = "earlier_best_length", nullable = false)
+    private Integer earlierBestLength;
+
+    public StreakState toState() {
+        return new StreakState(runLength, lastPositiveDate, earlierBestLength);
+    }
+}
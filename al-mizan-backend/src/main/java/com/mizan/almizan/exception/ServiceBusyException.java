@@ -0,0 +1,19 @@
+package com.mizan.almizan.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Work refused because a bounded queue is full; answered with 503 and Retry-After.
+ */
+@Getter
+public class ServiceBusyException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ServiceBusyException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -2,10 +2,23 @@ package com.mizan.almizan.repository;
 
 import com.mizan.almizan.entity.Action;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 public interface ActionRepository extends JpaRepository<Action, Long> {
     List<Action> findByTypeAndActiveTrue(Action.ActionType type);
     List<Action> findByActiveTrue();
     List<Action> findByCategory(String category);
+
+    @Query("SELECT COUNT(a) FROM Action a WHERE a.bitIndex IS NULL")
+    long countWithoutBitIndex();
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("UPDATE Action a SET a.bitIndex = :bitIndex WHERE a.id = :id AND a.bitIndex IS NULL")
+    int assignBitIndex(@Param("id") Long id, @Param("bitIndex") int bitIndex);
 }
@@ -0,0 +1,14 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.AdviceCorpusEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
+
+public interface AdviceCorpusRepository extends JpaRepository<AdviceCorpusEntry, AdviceCorpusEntry.Key>, AdviceCorpusRepositoryCustom {
+
+    List<AdviceCorpusEntry> findByGoodCountAndGoodWeightAndBadCountAndBadWeightAndVerdictAndLangOrderByVariant(
+            Integer goodCount, Integer goodWeight, Integer badCount, Integer badWeight, String verdict, String lang);
+
+    List<AdviceCorpusEntry> findByOrderByCreatedAtDesc(Pageable pageable);
+}
@@ -0,0 +1,14 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.AdviceCorpusEntry;
+
+/**
+ * Native writes on advice_corpus (see {@link AdviceCorpusRepositoryImpl}).
+ */
+public interface AdviceCorpusRepositoryCustom {
+
+    /**
+     * Store the entry unless its variant already exists (concurrent generations keep the first one).
+     */
+    void insertIfAbsent(AdviceCorpusEntry entry);
+}
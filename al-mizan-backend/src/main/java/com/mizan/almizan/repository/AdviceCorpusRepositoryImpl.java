@@ -0,0 +1,45 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.AdviceCorpusEntry;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class AdviceCorpusRepositoryImpl implements AdviceCorpusRepositoryCustom {
+
+    private static final String PG_INSERT = """
+            INSERT INTO advice_corpus (good_count, good_weight, bad_count, bad_weight, verdict, lang, variant,
+                                       advice, encouragement, hadith_reference, generation_ms, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT (good_count, good_weight, bad_count, bad_weight, verdict, lang, variant) DO NOTHING
+            """;
+
+    private static final String H2_INSERT = """
+            MERGE INTO advice_corpus c
+            USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS INTEGER),
+                           CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS INTEGER),
+                           CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS INTEGER)))
+                AS s (good_count, good_weight, bad_count, bad_weight, verdict, lang, variant,
+                      advice, encouragement, hadith_reference, generation_ms)
+            ON c.good_count = s.good_count AND c.good_weight = s.good_weight AND c.bad_count = s.bad_count
+                AND c.bad_weight = s.bad_weight AND c.verdict = s.verdict AND c.lang = s.lang AND c.variant = s.variant
+            WHEN NOT MATCHED THEN INSERT (good_count, good_weight, bad_count, bad_weight, verdict, lang, variant,
+                                          advice, encouragement, hadith_reference, generation_ms, created_at)
+                VALUES (s.good_count, s.good_weight, s.bad_count, s.bad_weight, s.verdict, s.lang, s.variant,
+                        s.advice, s.encouragement, s.hadith_reference, s.generation_ms, CURRENT_TIMESTAMP)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect sqlDialect;
+
+    public AdviceCorpusRepositoryImpl(JdbcTemplate jdbcTemplate, SqlDialect sqlDialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sqlDialect = sqlDialect;
+    }
+
+    @Override
+    public void insertIfAbsent(AdviceCorpusEntry entry) {
+        jdbcTemplate.update(sqlDialect.isPostgres() ? PG_INSERT : H2_INSERT,
+                entry.getGoodCount(), entry.getGoodWeight(), entry.getBadCount(), entry.getBadWeight(),
+                entry.getVerdict(), entry.getLang(), entry.getVariant(),
+                entry.getAdvice(), entry.getEncouragement(), entry.getHadithReference(), entry.getGenerationMs());
+    }
+}
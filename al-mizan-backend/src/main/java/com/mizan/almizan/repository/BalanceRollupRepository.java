@@ -0,0 +1,12 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.BalanceRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface BalanceRollupRepository extends JpaRepository<BalanceRollup, BalanceRollup.Key>, BalanceRollupRepositoryCustom {
+
+    List<BalanceRollup> findByUserIdAndPeriodTypeAndPeriodStartBetweenOrderByPeriodStart(
+            Long userId, BalanceRollup.PeriodType periodType, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,31 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.BalanceRollup.PeriodType;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * Signed-delta upserts on balance_rollups and category_rollups (see {@link BalanceRollupRepositoryImpl}).
+ */
+public interface BalanceRollupRepositoryCustom {
+
+    /**
+     * Add the deltas to their rollup rows, creating missing rows. One JDBC batch per table.
+     */
+    void addRollups(Collection<RollupDelta> deltas, Collection<CategoryDelta> categoryDeltas);
+
+    /**
+     * Delete all rollups of the users whose id is in [fromUserId, toUserId].
+     */
+    void deleteRollups(long fromUserId, long toUserId);
+
+    record RollupDelta(Long userId, PeriodType periodType, LocalDate periodStart, BalanceTotals totals,
+                       int positiveDays, int negativeDays, int neutralDays) {
+    }
+
+    record CategoryDelta(Long userId, PeriodType periodType, LocalDate periodStart, String category,
+                         BalanceTotals totals) {
+    }
+}
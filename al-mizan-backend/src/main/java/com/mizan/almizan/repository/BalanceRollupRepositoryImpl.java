@@ -0,0 +1,90 @@
+package com.mizan.almizan.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Rollup upserts that add to the stored values: INSERT ... ON CONFLICT on PostgreSQL, MERGE on H2.
+ */
+public class BalanceRollupRepositoryImpl implements BalanceRollupRepositoryCustom {
+
+    private static final List<String> ROLLUP_KEY = List.of("user_id", "period_type", "period_start");
+    private static final List<String> CATEGORY_KEY = List.of("user_id", "period_type", "period_start", "category");
+    private static final List<String> TOTALS = List.of("good_count", "bad_count", "good_weight", "bad_weight");
+    private static final List<String> DAYS = List.of("positive_days", "negative_days", "neutral_days");
+
+    private static final String PG_ADD_ROLLUP = pgAdd("balance_rollups", ROLLUP_KEY, concat(TOTALS, DAYS));
+    private static final String H2_ADD_ROLLUP = h2Add("balance_rollups", ROLLUP_KEY, concat(TOTALS, DAYS));
+    private static final String PG_ADD_CATEGORY = pgAdd("category_rollups", CATEGORY_KEY, TOTALS);
+    private static final String H2_ADD_CATEGORY = h2Add("category_rollups", CATEGORY_KEY, TOTALS);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect sqlDialect;
+
+    public BalanceRollupRepositoryImpl(JdbcTemplate jdbcTemplate, SqlDialect sqlDialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sqlDialect = sqlDialect;
+    }
+
+    @Override
+    public void addRollups(Collection<RollupDelta> deltas, Collection<CategoryDelta> categoryDeltas) {
+        boolean postgres = sqlDialect.isPostgres();
+        if (!deltas.isEmpty()) {
+            jdbcTemplate.batchUpdate(postgres ? PG_ADD_ROLLUP : H2_ADD_ROLLUP, deltas.stream()
+                    .map(d -> new Object[]{d.userId(), d.periodType().name(), Date.valueOf(d.periodStart()),
+                            d.totals().goodCount(), d.totals().badCount(), d.totals().goodWeight(), d.totals().badWeight(),
+                            d.positiveDays(), d.negativeDays(), d.neutralDays()})
+                    .toList());
+        }
+        if (!categoryDeltas.isEmpty()) {
+            jdbcTemplate.batchUpdate(postgres ? PG_ADD_CATEGORY : H2_ADD_CATEGORY, categoryDeltas.stream()
+                    .map(d -> new Object[]{d.userId(), d.periodType().name(), Date.valueOf(d.periodStart()), d.category(),
+                            d.totals().goodCount(), d.totals().badCount(), d.totals().goodWeight(), d.totals().badWeight()})
+                    .toList());
+        }
+    }
+
+    @Override
+    public void deleteRollups(long fromUserId, long toUserId) {
+        jdbcTemplate.update("DELETE FROM category_rollups WHERE user_id BETWEEN ? AND ?", fromUserId, toUserId);
+        jdbcTemplate.update("DELETE FROM balance_rollups WHERE user_id BETWEEN ? AND ?", fromUserId, toUserId);
+    }
+
+    private static String pgAdd(String table, List<String> key, List<String> values) {
+        List<String> columns = concat(key, values);
+        return """
+                INSERT INTO %s AS r (%s) VALUES (%s)
+                ON CONFLICT (%s) DO UPDATE SET %s
+                """.formatted(table, String.join(", ", columns),
+                columns.stream().map(c -> "?").collect(Collectors.joining(", ")),
+                String.join(", ", key),
+                values.stream().map(c -> c + " = r." + c + " + EXCLUDED." + c).collect(Collectors.joining(", ")));
+    }
+
+    private static String h2Add(String table, List<String> key, List<String> values) {
+        List<String> columns = concat(key, values);
+        return """
+                MERGE INTO %s r
+                USING (VALUES (CAST(? AS BIGINT), CAST(? AS VARCHAR(10)), CAST(? AS DATE), %s)) AS d (%s)
+                ON %s
+                WHEN MATCHED THEN UPDATE SET %s
+                WHEN NOT MATCHED THEN INSERT (%s) VALUES (%s)
+                """.formatted(table,
+                Stream.concat(key.stream().skip(3).map(c -> "CAST(? AS VARCHAR(100))"),
+                        values.stream().map(c -> "CAST(? AS INTEGER)")).collect(Collectors.joining(", ")),
+                String.join(", ", columns),
+                key.stream().map(c -> "r." + c + " = d." + c).collect(Collectors.joining(" AND ")),
+                values.stream().map(c -> c + " = r." + c + " + d." + c).collect(Collectors.joining(", ")),
+                String.join(", ", columns),
+                columns.stream().map(c -> "d." + c).collect(Collectors.joining(", ")));
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        return Stream.concat(first.stream(), second.stream()).toList();
+    }
+}
@@ -0,0 +1,13 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.BalanceRollup;
+import com.mizan.almizan.entity.CategoryRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface CategoryRollupRepository extends JpaRepository<CategoryRollup, CategoryRollup.Key> {
+
+    List<CategoryRollup> findByUserIdAndPeriodTypeAndPeriodStartBetween(
+            Long userId, BalanceRollup.PeriodType periodType, LocalDate from, LocalDate to);
+}
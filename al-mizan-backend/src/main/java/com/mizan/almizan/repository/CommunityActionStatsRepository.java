@@ -0,0 +1,11 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.CommunityActionStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface CommunityActionStatsRepository extends JpaRepository<CommunityActionStats, CommunityActionStats.Key> {
+
+    List<CommunityActionStats> findByStatDateGreaterThanEqual(LocalDate from);
+}
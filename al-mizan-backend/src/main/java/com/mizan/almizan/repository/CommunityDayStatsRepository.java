@@ -0,0 +1,11 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.CommunityDayStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface CommunityDayStatsRepository extends JpaRepository<CommunityDayStats, LocalDate>, CommunityDayStatsRepositoryCustom {
+
+    List<CommunityDayStats> findByStatDateGreaterThanEqual(LocalDate from);
+}
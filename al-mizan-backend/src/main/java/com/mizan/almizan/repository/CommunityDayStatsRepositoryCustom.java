@@ -0,0 +1,17 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.CommunityActionStats;
+import com.mizan.almizan.entity.CommunityDayStats;
+
+import java.util.Collection;
+
+/**
+ * Snapshot writes on community_day_stats and community_action_stats (see {@link CommunityDayStatsRepositoryImpl}).
+ */
+public interface CommunityDayStatsRepositoryCustom {
+
+    /**
+     * Store the rows, replacing the values of existing ones. One JDBC batch per table.
+     */
+    void saveSnapshot(Collection<CommunityDayStats> days, Collection<CommunityActionStats> actions);
+}
@@ -0,0 +1,66 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.CommunityActionStats;
+import com.mizan.almizan.entity.CommunityDayStats;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.util.Collection;
+
+public class CommunityDayStatsRepositoryImpl implements CommunityDayStatsRepositoryCustom {
+
+    private static final String PG_UPSERT_DAY = """
+            INSERT INTO community_day_stats (stat_date, positive_users, negative_users, neutral_users)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (stat_date) DO UPDATE SET positive_users = EXCLUDED.positive_users,
+                negative_users = EXCLUDED.negative_users, neutral_users = EXCLUDED.neutral_users
+            """;
+
+    private static final String H2_UPSERT_DAY = """
+            MERGE INTO community_day_stats c
+            USING (VALUES (CAST(? AS DATE), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT)))
+                AS s (stat_date, positive_users, negative_users, neutral_users)
+            ON c.stat_date = s.stat_date
+            WHEN MATCHED THEN UPDATE SET positive_users = s.positive_users,
+                negative_users = s.negative_users, neutral_users = s.neutral_users
+            WHEN NOT MATCHED THEN INSERT (stat_date, positive_users, negative_users, neutral_users)
+                VALUES (s.stat_date, s.positive_users, s.negative_users, s.neutral_users)
+            """;
+
+    private static final String PG_UPSERT_ACTION = """
+            INSERT INTO community_action_stats (stat_date, action_id, checked_count) VALUES (?, ?, ?)
+            ON CONFLICT (stat_date, action_id) DO UPDATE SET checked_count = EXCLUDED.checked_count
+            """;
+
+    private static final String H2_UPSERT_ACTION = """
+            MERGE INTO community_action_stats c
+            USING (VALUES (CAST(? AS DATE), CAST(? AS BIGINT), CAST(? AS BIGINT))) AS s (stat_date, action_id, checked_count)
+            ON c.stat_date = s.stat_date AND c.action_id = s.action_id
+            WHEN MATCHED THEN UPDATE SET checked_count = s.checked_count
+            WHEN NOT MATCHED THEN INSERT (stat_date, action_id, checked_count) VALUES (s.stat_date, s.action_id, s.checked_count)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect sqlDialect;
+
+    public CommunityDayStatsRepositoryImpl(JdbcTemplate jdbcTemplate, SqlDialect sqlDialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sqlDialect = sqlDialect;
+    }
+
+    @Override
+    public void saveSnapshot(Collection<CommunityDayStats> days, Collection<CommunityActionStats> actions) {
+        boolean postgres = sqlDialect.isPostgres();
+        if (!days.isEmpty()) {
+            jdbcTemplate.batchUpdate(postgres ? PG_UPSERT_DAY : H2_UPSERT_DAY, days.stream()
+                    .map(d -> new Object[]{Date.valueOf(d.getStatDate()),
+                            d.getPositiveUsers(), d.getNegativeUsers(), d.getNeutralUsers()})
+                    .toList());
+        }
+        if (!actions.isEmpty()) {
+            jdbcTemplate.batchUpdate(postgres ? PG_UPSERT_ACTION : H2_UPSERT_ACTION, actions.stream()
+                    .map(a -> new Object[]{Date.valueOf(a.getStatDate()), a.getActionId(), a.getCheckedCount()})
+                    .toList());
+        }
+    }
+}
@@ -2,13 +2,24 @@ package com.mizan.almizan.repository;
 
 import com.mizan.almizan.entity.DailyBalance;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
-public interface DailyBalanceRepository extends JpaRepository<DailyBalance, Long> {
+public interface DailyBalanceRepository extends JpaRepository<DailyBalance, Long>, DailyBalanceRepositoryCustom {
     Optional<DailyBalance> findByUserIdAndBalanceDate(Long userId, LocalDate date);
     List<DailyBalance> findByUserIdAndBalanceDateBetweenOrderByBalanceDateDesc(
             Long userId, LocalDate startDate, LocalDate endDate);
     List<DailyBalance> findTop30ByUserIdOrderByBalanceDateDesc(Long userId);
+    List<DailyBalance> findByUserIdAndBalanceDateGreaterThanEqual(Long userId, LocalDate startDate);
+    boolean existsByUserIdAndBalanceDateBefore(Long userId, LocalDate date);
+    List<DailyBalance> findByBalanceDateBetween(LocalDate startDate, LocalDate endDate);
+
+    @Query("SELECT MIN(b.balanceDate) FROM DailyBalance b")
+    LocalDate findMinBalanceDate();
+
+    @Query("SELECT b.version FROM DailyBalance b WHERE b.user.id = :userId AND b.balanceDate = :date")
+    Optional<Long> findVersion(@Param("userId") Long userId, @Param("date") LocalDate date);
 }
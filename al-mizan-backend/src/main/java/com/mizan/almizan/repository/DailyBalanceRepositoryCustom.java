@@ -0,0 +1,112 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.dto.BalanceDTO;
+import com.mizan.almizan.dto.BalanceTotals;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Native, single-statement writes and JDBC reads on daily_balances (see {@link DailyBalanceRepositoryImpl}).
+ */
+public interface DailyBalanceRepositoryCustom {
+
+    /**
+     * Atomically add a signed delta to the day's balance (creating the row if needed)
+     * and return the updated totals.
+     */
+    BalanceTotals applyDelta(Long userId, LocalDate date, BalanceTotals delta);
+
+    /**
+     * Overwrite the day's balance with the given totals.
+     */
+    void upsertTotals(Long userId, LocalDate date, BalanceTotals totals);
+
+    /**
+     * Overwrite several days of one user with the given totals, as one JDBC batch.
+     */
+    void upsertTotals(Long userId, Map<LocalDate, BalanceTotals> totalsByDate);
+
+    /**
+     * Stored totals of the given days of one user; days without a row are absent.
+     */
+    Map<LocalDate, BalanceTotals> findTotals(Long userId, Collection<LocalDate> dates);
+
+    /**
+     * Stored totals and version of one day, or null if the day has no row.
+     */
+    VersionedTotals findVersionedTotals(Long userId, LocalDate date);
+
+    /**
+     * Lock the given days of one user (FOR UPDATE) until the end of the transaction, creating
+     * empty rows for the missing ones, and return their stored totals.
+     */
+    Map<LocalDate, BalanceTotals> lockTotals(Long userId, Collection<LocalDate> dates);
+
+    /**
+     * Lock the users whose id is in [fromUserId, toUserId] and all their balances until the end of the transaction:
+     * their existing days cannot be updated, and on PostgreSQL no row referencing them can be inserted
+     * (the foreign key checks wait for the user rows).
+     */
+    void lockUserRange(long fromUserId, long toUserId);
+
+    /**
+     * Recompute the day from its checked actions (one aggregate query), store and return it.
+     */
+    BalanceTotals recompute(Long userId, LocalDate date);
+
+    /**
+     * Days in the range whose stored balance differs from a full recompute of the checked actions,
+     * with the recomputed totals.
+     */
+    List<Drift> findDrift(LocalDate from, LocalDate to);
+
+    /**
+     * One keyset page of the user's balances, newest first: dates in [from, before), at most {@code limit} rows.
+     */
+    List<BalanceDTO> findHistoryPage(Long userId, LocalDate from, LocalDate before, int limit);
+
+    /**
+     * Pass the user's balances in the range to the consumer, newest first, as they come off
+     * a JDBC cursor reading {@code fetchSize} rows at a time (needs a transaction on PostgreSQL).
+     */
+    void streamHistory(Long userId, LocalDate from, LocalDate to, int fetchSize, Consumer<BalanceDTO> consumer);
+
+    /**
+     * Pass every stored day of the user to the consumer, oldest first, with its checked actions: the ids
+     * of its user_daily_actions rows (with {@code withRows}) and its user_day_masks row (archived days of
+     * the rows format, every day of the bitmask format). Read from one forward-only cursor of
+     * {@code fetchSize} rows, a single day held in memory (needs a transaction on PostgreSQL).
+     */
+    void exportDays(Long userId, boolean withRows, int fetchSize, Consumer<ExportedDay> consumer);
+
+    /**
+     * Pass every stored balance of the users whose id is in [fromUserId, toUserId] to the consumer.
+     */
+    void forEachBalance(long fromUserId, long toUserId, Consumer<DayTotals> consumer);
+
+    /**
+     * Pass every stored balance dated in [from, to] to the consumer.
+     */
+    void forEachBalanceBetween(LocalDate from, LocalDate to, Consumer<DayTotals> consumer);
+
+    /**
+     * The most common day totals since the date, most frequent first.
+     */
+    List<BalanceTotals> findFrequentTotals(LocalDate since, int limit);
+
+    record DayTotals(Long userId, LocalDate date, BalanceTotals totals) {
+    }
+
+    record ExportedDay(LocalDate date, BalanceTotals totals, List<Long> actionIds, byte[] mask) {
+    }
+
+    record Drift(Long userId, LocalDate date, BalanceTotals stored, BalanceTotals expected) {
+    }
+
+    record VersionedTotals(BalanceTotals totals, long version) {
+    }
+}
@@ -0,0 +1,452 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.dto.BalanceDTO;
+import com.mizan.almizan.dto.BalanceTotals;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Upserts on daily_balances: INSERT ... ON CONFLICT on PostgreSQL, MERGE on H2.
+ * The verdict is derived in the same statement from the updated weights, and every write bumps the day's version.
+ */
+public class DailyBalanceRepositoryImpl implements DailyBalanceRepositoryCustom {
+
+    private static final String TOTALS_COLUMNS = "good_count, bad_count, good_weight, bad_weight";
+
+    private static final String PG_APPLY_DELTA = """
+            INSERT INTO daily_balances AS db (user_id, balance_date, good_count, bad_count, good_weight, bad_weight, verdict, version)
+            VALUES (:userId, :date, :goodCount, :badCount, :goodWeight, :badWeight, %s, 1)
+            ON CONFLICT (user_id, balance_date) DO UPDATE SET
+                good_count = COALESCE(db.good_count, 0) + EXCLUDED.good_count,
+                bad_count = COALESCE(db.bad_count, 0) + EXCLUDED.bad_count,
+                good_weight = COALESCE(db.good_weight, 0) + EXCLUDED.good_weight,
+                bad_weight = COALESCE(db.bad_weight, 0) + EXCLUDED.bad_weight,
+                verdict = %s,
+                version = db.version + 1
+            RETURNING good_count, bad_count, good_weight, bad_weight
+            """.formatted(
+            verdictCase(":goodWeight", ":badWeight"),
+            verdictCase("COALESCE(db.good_weight, 0) + EXCLUDED.good_weight",
+                    "COALESCE(db.bad_weight, 0) + EXCLUDED.bad_weight"));
+
+    private static final String H2_APPLY_DELTA = """
+            MERGE INTO daily_balances db
+            USING (VALUES (CAST(:userId AS BIGINT), CAST(:date AS DATE), :goodCount, :badCount, :goodWeight, :badWeight))
+                AS d (user_id, balance_date, good_count, bad_count, good_weight, bad_weight)
+            ON db.user_id = d.user_id AND db.balance_date = d.balance_date
+            WHEN MATCHED THEN UPDATE SET
+                good_count = COALESCE(db.good_count, 0) + d.good_count,
+                bad_count = COALESCE(db.bad_count, 0) + d.bad_count,
+                good_weight = COALESCE(db.good_weight, 0) + d.good_weight,
+                bad_weight = COALESCE(db.bad_weight, 0) + d.bad_weight,
+                verdict = %s,
+                version = db.version + 1
+            WHEN NOT MATCHED THEN INSERT (user_id, balance_date, good_count, bad_count, good_weight, bad_weight, verdict, version)
+                VALUES (d.user_id, d.balance_date, d.good_count, d.bad_count, d.good_weight, d.bad_weight, %s, 1)
+            """.formatted(
+            verdictCase("COALESCE(db.good_weight, 0) + d.good_weight", "COALESCE(db.bad_weight, 0) + d.bad_weight"),
+            verdictCase("d.good_weight", "d.bad_weight"));
+
+    private static final String PG_UPSERT_TOTALS = """
+            INSERT INTO daily_balances AS db (user_id, balance_date, good_count, bad_count, good_weight, bad_weight, verdict, version)
+            VALUES (:userId, :date, :goodCount, :badCount, :goodWeight, :badWeight, :verdict, 1)
+            ON CONFLICT (user_id, balance_date) DO UPDATE SET
+                good_count = EXCLUDED.good_count,
+                bad_count = EXCLUDED.bad_count,
+                good_weight = EXCLUDED.good_weight,
+                bad_weight = EXCLUDED.bad_weight,
+                verdict = EXCLUDED.verdict,
+                version = db.version + 1
+            """;
+
+    private static final String H2_UPSERT_TOTALS = """
+            MERGE INTO daily_balances db
+            USING (VALUES (CAST(:userId AS BIGINT), CAST(:date AS DATE), :goodCount, :badCount, :goodWeight, :badWeight,
+                           CAST(:verdict AS VARCHAR(20))))
+                AS d (user_id, balance_date, good_count, bad_count, good_weight, bad_weight, verdict)
+            ON db.user_id = d.user_id AND db.balance_date = d.balance_date
+            WHEN MATCHED THEN UPDATE SET
+                good_count = d.good_count, bad_count = d.bad_count,
+                good_weight = d.good_weight, bad_weight = d.bad_weight, verdict = d.verdict,
+                version = db.version + 1
+            WHEN NOT MATCHED THEN INSERT (user_id, balance_date, good_count, bad_count, good_weight, bad_weight, verdict, version)
+                VALUES (d.user_id, d.balance_date, d.good_count, d.bad_count, d.good_weight, d.bad_weight, d.verdict, 1)
+            """;
+
+    private static final String PG_CREATE_EMPTY = """
+            INSERT INTO daily_balances (user_id, balance_date, good_count, bad_count, good_weight, bad_weight, verdict, version)
+            VALUES (:userId, :date, 0, 0, 0, 0, :verdict, 1)
+            ON CONFLICT (user_id, balance_date) DO NOTHING
+            """;
+
+    private static final String H2_CREATE_EMPTY = """
+            MERGE INTO daily_balances db
+            USING (VALUES (CAST(:userId AS BIGINT), CAST(:date AS DATE))) AS d (user_id, balance_date)
+            ON db.user_id = d.user_id AND db.balance_date = d.balance_date
+            WHEN NOT MATCHED THEN INSERT (user_id, balance_date, good_count, bad_count, good_weight, bad_weight, verdict, version)
+                VALUES (d.user_id, d.balance_date, 0, 0, 0, 0, :verdict, 1)
+            """;
+
+    private static final String CHECKED_TOTALS = """
+            SELECT uda.user_id, uda.action_date,
+                   SUM(CASE WHEN a.type = 'GOOD' THEN 1 ELSE 0 END) AS good_count,
+                   SUM(CASE WHEN a.type = 'BAD' THEN 1 ELSE 0 END) AS bad_count,
+                   SUM(CASE WHEN a.type = 'GOOD' THEN a.weight ELSE 0 END) AS good_weight,
+                   SUM(CASE WHEN a.type = 'BAD' THEN a.weight ELSE 0 END) AS bad_weight
+            FROM user_daily_actions uda
+            JOIN actions a ON a.id = uda.action_id
+            WHERE uda.checked = TRUE AND uda.action_date BETWEEN :from AND :to
+            GROUP BY uda.user_id, uda.action_date
+            """;
+
+    private static final String DAY_TOTALS = """
+            SELECT COALESCE(SUM(CASE WHEN a.type = 'GOOD' THEN 1 ELSE 0 END), 0) AS good_count,
+                   COALESCE(SUM(CASE WHEN a.type = 'BAD' THEN 1 ELSE 0 END), 0) AS bad_count,
+                   COALESCE(SUM(CASE WHEN a.type = 'GOOD' THEN a.weight ELSE 0 END), 0) AS good_weight,
+                   COALESCE(SUM(CASE WHEN a.type = 'BAD' THEN a.weight ELSE 0 END), 0) AS bad_weight
+            FROM user_daily_actions uda
+            JOIN actions a ON a.id = uda.action_id
+            WHERE uda.user_id = :userId AND uda.action_date = :date AND uda.checked = TRUE
+            """;
+
+    private static final String FIND_DRIFT = """
+            SELECT agg.user_id, agg.action_date AS balance_date,
+                   COALESCE(db.good_count, 0) AS s_good_count, COALESCE(db.bad_count, 0) AS s_bad_count,
+                   COALESCE(db.good_weight, 0) AS s_good_weight, COALESCE(db.bad_weight, 0) AS s_bad_weight,
+                   agg.good_count, agg.bad_count, agg.good_weight, agg.bad_weight
+            FROM (%s) agg
+            LEFT JOIN daily_balances db ON db.user_id = agg.user_id AND db.balance_date = agg.action_date
+            WHERE COALESCE(db.good_count, 0) <> agg.good_count OR COALESCE(db.bad_count, 0) <> agg.bad_count
+               OR COALESCE(db.good_weight, 0) <> agg.good_weight OR COALESCE(db.bad_weight, 0) <> agg.bad_weight
+            UNION ALL
+            SELECT db.user_id, db.balance_date,
+                   COALESCE(db.good_count, 0), COALESCE(db.bad_count, 0),
+                   COALESCE(db.good_weight, 0), COALESCE(db.bad_weight, 0),
+                   0, 0, 0, 0
+            FROM daily_balances db
+            WHERE db.balance_date BETWEEN :from AND :to
+              AND (COALESCE(db.good_count, 0) <> 0 OR COALESCE(db.bad_count, 0) <> 0
+                   OR COALESCE(db.good_weight, 0) <> 0 OR COALESCE(db.bad_weight, 0) <> 0)
+              AND NOT EXISTS (SELECT 1 FROM user_daily_actions uda
+                              WHERE uda.user_id = db.user_id AND uda.action_date = db.balance_date
+                                AND uda.checked = TRUE)
+            """.formatted(CHECKED_TOTALS);
+
+    private static final String HISTORY_COLUMNS = """
+            SELECT balance_date, COALESCE(good_count, 0) AS good_count, COALESCE(bad_count, 0) AS bad_count,
+                   COALESCE(good_weight, 0) AS good_weight, COALESCE(bad_weight, 0) AS bad_weight
+            FROM daily_balances
+            """;
+
+    private static final String HISTORY_PAGE = HISTORY_COLUMNS + """
+            WHERE user_id = :userId AND balance_date >= :from AND balance_date < :before
+            ORDER BY balance_date DESC
+            LIMIT :limit
+            """;
+
+    private static final String HISTORY_RANGE = HISTORY_COLUMNS + """
+            WHERE user_id = :userId AND balance_date BETWEEN :from AND :to
+            ORDER BY balance_date DESC
+            """;
+
+    // One row per checked action of the day (or one row without any), its mask on the same rows
+    private static final String EXPORT_DAYS = """
+            SELECT db.balance_date, COALESCE(db.good_count, 0) AS good_count, COALESCE(db.bad_count, 0) AS bad_count,
+                   COALESCE(db.good_weight, 0) AS good_weight, COALESCE(db.bad_weight, 0) AS bad_weight,
+                   uda.action_id, m.checked_mask
+            FROM daily_balances db
+            JOIN app_users u ON u.id = db.user_id
+            LEFT JOIN user_day_masks m ON m.user_id = db.user_id AND m.mask_date = db.balance_date
+                AND (:withRows = FALSE OR m.mask_date < u.actions_archived_before)
+            LEFT JOIN user_daily_actions uda ON uda.user_id = db.user_id AND uda.action_date = db.balance_date
+                AND uda.checked = TRUE AND :withRows = TRUE
+            WHERE db.user_id = :userId
+            ORDER BY db.balance_date, uda.action_id
+            """;
+
+    private static final String DAYS_TOTALS = """
+            SELECT balance_date, COALESCE(good_count, 0) AS good_count, COALESCE(bad_count, 0) AS bad_count,
+                   COALESCE(good_weight, 0) AS good_weight, COALESCE(bad_weight, 0) AS bad_weight
+            FROM daily_balances
+            WHERE user_id = :userId AND balance_date IN (:dates)
+            """;
+
+    private static final String DAY_VERSIONED_TOTALS = """
+            SELECT COALESCE(good_count, 0) AS good_count, COALESCE(bad_count, 0) AS bad_count,
+                   COALESCE(good_weight, 0) AS good_weight, COALESCE(bad_weight, 0) AS bad_weight, version
+            FROM daily_balances
+            WHERE user_id = :userId AND balance_date = :date
+            """;
+
+    private static final String USER_RANGE_BALANCES = """
+            SELECT user_id, balance_date, COALESCE(good_count, 0) AS good_count, COALESCE(bad_count, 0) AS bad_count,
+                   COALESCE(good_weight, 0) AS good_weight, COALESCE(bad_weight, 0) AS bad_weight
+            FROM daily_balances
+            WHERE user_id BETWEEN :fromUserId AND :toUserId
+            """;
+
+    private static final String LOCK_USERS = """
+            SELECT id FROM app_users WHERE id BETWEEN :fromUserId AND :toUserId ORDER BY id FOR UPDATE
+            """;
+
+    private static final String LOCK_USER_BALANCES = """
+            SELECT user_id FROM daily_balances WHERE user_id BETWEEN :fromUserId AND :toUserId
+            ORDER BY user_id, balance_date FOR UPDATE
+            """;
+
+    private static final String DATE_RANGE_BALANCES = """
+            SELECT user_id, balance_date, COALESCE(good_count, 0) AS good_count, COALESCE(bad_count, 0) AS bad_count,
+                   COALESCE(good_weight, 0) AS good_weight, COALESCE(bad_weight, 0) AS bad_weight
+            FROM daily_balances
+            WHERE balance_date BETWEEN :from AND :to
+            """;
+
+    private static final String FREQUENT_TOTALS = """
+            SELECT COALESCE(good_count, 0) AS good_count, COALESCE(bad_count, 0) AS bad_count,
+                   COALESCE(good_weight, 0) AS good_weight, COALESCE(bad_weight, 0) AS bad_weight
+            FROM daily_balances
+            WHERE balance_date >= :since
+            GROUP BY COALESCE(good_count, 0), COALESCE(bad_count, 0), COALESCE(good_weight, 0), COALESCE(bad_weight, 0)
+            ORDER BY COUNT(*) DESC
+            LIMIT :limit
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final SqlDialect sqlDialect;
+
+    public DailyBalanceRepositoryImpl(NamedParameterJdbcTemplate jdbcTemplate, SqlDialect sqlDialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sqlDialect = sqlDialect;
+    }
+
+    @Override
+    public BalanceTotals applyDelta(Long userId, LocalDate date, BalanceTotals delta) {
+        MapSqlParameterSource params = params(userId, date, delta);
+        if (sqlDialect.isPostgres()) {
+            return jdbcTemplate.queryForObject(PG_APPLY_DELTA, params, (rs, i) -> totals(rs, ""));
+        }
+        jdbcTemplate.update(H2_APPLY_DELTA, params);
+        return jdbcTemplate.queryForObject(
+                "SELECT " + TOTALS_COLUMNS + " FROM daily_balances WHERE user_id = :userId AND balance_date = :date",
+                params, (rs, i) -> totals(rs, ""));
+    }
+
+    @Override
+    public void upsertTotals(Long userId, LocalDate date, BalanceTotals totals) {
+        MapSqlParameterSource params = params(userId, date, totals)
+                .addValue("verdict", totals.verdict().name());
+        jdbcTemplate.update(sqlDialect.isPostgres() ? PG_UPSERT_TOTALS : H2_UPSERT_TOTALS, params);
+    }
+
+    @Override
+    public void upsertTotals(Long userId, Map<LocalDate, BalanceTotals> totalsByDate) {
+        MapSqlParameterSource[] batch = totalsByDate.entrySet().stream()
+                .map(e -> params(userId, e.getKey(), e.getValue()).addValue("verdict", e.getValue().verdict().name()))
+                .toArray(MapSqlParameterSource[]::new);
+        if (batch.length > 0) {
+            jdbcTemplate.batchUpdate(sqlDialect.isPostgres() ? PG_UPSERT_TOTALS : H2_UPSERT_TOTALS, batch);
+        }
+    }
+
+    @Override
+    public Map<LocalDate, BalanceTotals> findTotals(Long userId, Collection<LocalDate> dates) {
+        Map<LocalDate, BalanceTotals> totals = new HashMap<>();
+        if (dates.isEmpty()) {
+            return totals;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("dates", dates);
+        jdbcTemplate.query(DAYS_TOTALS, params, rs -> {
+            totals.put(rs.getObject("balance_date", LocalDate.class), totals(rs, ""));
+        });
+        return totals;
+    }
+
+    @Override
+    public VersionedTotals findVersionedTotals(Long userId, LocalDate date) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("date", date);
+        List<VersionedTotals> rows = jdbcTemplate.query(DAY_VERSIONED_TOTALS, params,
+                (rs, i) -> new VersionedTotals(totals(rs, ""), rs.getLong("version")));
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    @Override
+    public Map<LocalDate, BalanceTotals> lockTotals(Long userId, Collection<LocalDate> dates) {
+        // Sorted, so that two transactions locking overlapping days take the locks in the same order
+        List<LocalDate> sorted = dates.stream().distinct().sorted().toList();
+        if (sorted.isEmpty()) {
+            return new HashMap<>();
+        }
+        MapSqlParameterSource[] batch = sorted.stream()
+                .map(date -> new MapSqlParameterSource()
+                        .addValue("userId", userId)
+                        .addValue("date", date)
+                        .addValue("verdict", BalanceTotals.EMPTY.verdict().name()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(sqlDialect.isPostgres() ? PG_CREATE_EMPTY : H2_CREATE_EMPTY, batch);
+
+        Map<LocalDate, BalanceTotals> totals = new HashMap<>();
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("dates", sorted);
+        jdbcTemplate.query(DAYS_TOTALS.strip() + " ORDER BY balance_date FOR UPDATE", params, rs -> {
+            totals.put(rs.getObject("balance_date", LocalDate.class), totals(rs, ""));
+        });
+        return totals;
+    }
+
+    @Override
+    public void lockUserRange(long fromUserId, long toUserId) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("fromUserId", fromUserId)
+                .addValue("toUserId", toUserId);
+        jdbcTemplate.query(LOCK_USERS, params, rs -> {
+        });
+        jdbcTemplate.query(LOCK_USER_BALANCES, params, rs -> {
+        });
+    }
+
+    @Override
+    public BalanceTotals recompute(Long userId, LocalDate date) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("date", date);
+        BalanceTotals totals = jdbcTemplate.queryForObject(DAY_TOTALS, params, (rs, i) -> totals(rs, ""));
+        upsertTotals(userId, date, totals);
+        return totals;
+    }
+
+    @Override
+    public List<Drift> findDrift(LocalDate from, LocalDate to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        return jdbcTemplate.query(FIND_DRIFT, params, (rs, i) -> new Drift(
+                rs.getLong("user_id"),
+                rs.getObject("balance_date", LocalDate.class),
+                totals(rs, "s_"),
+                totals(rs, "")));
+    }
+
+    @Override
+    public List<BalanceDTO> findHistoryPage(Long userId, LocalDate from, LocalDate before, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("from", from)
+                .addValue("before", before)
+                .addValue("limit", limit);
+        return jdbcTemplate.query(HISTORY_PAGE, params, (rs, i) -> balance(rs));
+    }
+
+    @Override
+    public void streamHistory(Long userId, LocalDate from, LocalDate to, int fetchSize, Consumer<BalanceDTO> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("from", from)
+                .addValue("to", to);
+        // Same connection and transaction, but a cursor instead of a fully buffered result set
+        JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getJdbcTemplate().getDataSource());
+        cursorTemplate.setFetchSize(fetchSize);
+        new NamedParameterJdbcTemplate(cursorTemplate).query(HISTORY_RANGE, params, rs -> {
+            consumer.accept(balance(rs));
+        });
+    }
+
+    @Override
+    public void exportDays(Long userId, boolean withRows, int fetchSize, Consumer<ExportedDay> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("withRows", withRows);
+        JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getJdbcTemplate().getDataSource());
+        cursorTemplate.setFetchSize(fetchSize);
+        // Rows come ordered by date: fold consecutive rows into one day
+        ExportedDay[] day = new ExportedDay[1];
+        new NamedParameterJdbcTemplate(cursorTemplate).query(EXPORT_DAYS, params, rs -> {
+            LocalDate date = rs.getObject("balance_date", LocalDate.class);
+            if (day[0] == null || !day[0].date().equals(date)) {
+                if (day[0] != null) {
+                    consumer.accept(day[0]);
+                }
+                day[0] = new ExportedDay(date, totals(rs, ""), new ArrayList<>(), rs.getBytes("checked_mask"));
+            }
+            long actionId = rs.getLong("action_id");
+            if (!rs.wasNull()) {
+                day[0].actionIds().add(actionId);
+            }
+        });
+        if (day[0] != null) {
+            consumer.accept(day[0]);
+        }
+    }
+
+    @Override
+    public void forEachBalance(long fromUserId, long toUserId, Consumer<DayTotals> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("fromUserId", fromUserId)
+                .addValue("toUserId", toUserId);
+        jdbcTemplate.query(USER_RANGE_BALANCES, params, rs -> {
+            consumer.accept(new DayTotals(rs.getLong("user_id"), rs.getObject("balance_date", LocalDate.class),
+                    totals(rs, "")));
+        });
+    }
+
+    @Override
+    public void forEachBalanceBetween(LocalDate from, LocalDate to, Consumer<DayTotals> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        jdbcTemplate.query(DATE_RANGE_BALANCES, params, rs -> {
+            consumer.accept(new DayTotals(rs.getLong("user_id"), rs.getObject("balance_date", LocalDate.class),
+                    totals(rs, "")));
+        });
+    }
+
+    @Override
+    public List<BalanceTotals> findFrequentTotals(LocalDate since, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("since", since)
+                .addValue("limit", limit);
+        return jdbcTemplate.query(FREQUENT_TOTALS, params, (rs, i) -> totals(rs, ""));
+    }
+
+    private static MapSqlParameterSource params(Long userId, LocalDate date, BalanceTotals totals) {
+        return new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("date", date)
+                .addValue("goodCount", totals.goodCount())
+                .addValue("badCount", totals.badCount())
+                .addValue("goodWeight", totals.goodWeight())
+                .addValue("badWeight", totals.badWeight());
+    }
+
+    private static BalanceTotals totals(ResultSet rs, String prefix) throws SQLException {
+        return new BalanceTotals(
+                rs.getInt(prefix + "good_count"),
+                rs.getInt(prefix + "bad_count"),
+                rs.getInt(prefix + "good_weight"),
+                rs.getInt(prefix + "bad_weight"));
+    }
+
+    private static BalanceDTO balance(ResultSet rs) throws SQLException {
+        return totals(rs, "").toDto(rs.getObject("balance_date", LocalDate.class));
+    }
+
+    private static String verdictCase(String goodWeight, String badWeight) {
+        return "CASE WHEN %1$s > %2$s THEN 'POSITIVE' WHEN %2$s > %1$s THEN 'NEGATIVE' ELSE 'NEUTRAL' END"
+                .formatted(goodWeight, badWeight);
+    }
+}
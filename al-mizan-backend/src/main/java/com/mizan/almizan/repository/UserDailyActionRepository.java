@@ -1,19 +1,39 @@
 package com.mizan.almizan.repository;
 
+import com.mizan.almizan.entity.Action;
 import com.mizan.almizan.entity.UserDailyAction;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface UserDailyActionRepository extends JpaRepository<UserDailyAction, Long> {
+public interface UserDailyActionRepository extends JpaRepository<UserDailyAction, Long>, UserDailyActionRepositoryCustom {
 
     List<UserDailyAction> findByUserIdAndActionDate(Long userId, LocalDate date);
 
+    @Query("SELECT uda.actionDate, uda.action.id FROM UserDailyAction uda WHERE uda.user.id = :userId " +
+           "AND uda.actionDate IN :dates AND uda.checked = true")
+    List<Object[]> findCheckedActionIds(@Param("userId") Long userId, @Param("dates") Collection<LocalDate> dates);
+
     Optional<UserDailyAction> findByUserIdAndActionIdAndActionDate(Long userId, Long actionId, LocalDate date);
 
+    /**
+     * Rows of a day as projections: no entity is hydrated, dirty-tracked or eagerly joined to its action.
+     */
+    @Query("SELECT new com.mizan.almizan.repository.UserDailyActionRepository$DayAction(a.id, a.type, a.weight, uda.checked) " +
+           "FROM UserDailyAction uda JOIN uda.action a WHERE uda.user.id = :userId AND uda.actionDate = :date")
+    List<DayAction> findDayActions(@Param("userId") Long userId, @Param("date") LocalDate date);
+
+    @Query("SELECT new com.mizan.almizan.repository.UserDailyActionRepository$DayAction(a.id, a.type, a.weight, uda.checked) " +
+           "FROM UserDailyAction uda JOIN uda.action a " +
+           "WHERE uda.user.id = :userId AND a.id = :actionId AND uda.actionDate = :date")
+    Optional<DayAction> findDayAction(@Param("userId") Long userId,
+                                      @Param("actionId") Long actionId,
+                                      @Param("date") LocalDate date);
+
     @Query("SELECT COUNT(uda) FROM UserDailyAction uda WHERE uda.user.id = :userId " +
            "AND uda.actionDate = :date AND uda.action.type = :type AND uda.checked = true")
     Integer countByUserAndDateAndType(@Param("userId") Long userId,
@@ -27,4 +47,7 @@ public interface UserDailyActionRepository extends JpaRepository<UserDailyAction
                                                     @Param("endDate") LocalDate endDate);
 
     void deleteByUserIdAndActionIdAndActionDate(Long userId, Long actionId, LocalDate date);
+
+    record DayAction(Long actionId, Action.ActionType type, Integer weight, Boolean checked) {
+    }
 }
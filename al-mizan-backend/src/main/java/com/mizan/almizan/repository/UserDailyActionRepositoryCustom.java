@@ -0,0 +1,37 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * JDBC batch writes and scans on user_daily_actions (see {@link UserDailyActionRepositoryImpl}).
+ */
+public interface UserDailyActionRepositoryCustom {
+
+    /**
+     * Bring each (user, action, date) row to the given checked state: checked rows are
+     * inserted if missing, unchecked rows are deleted. Runs as two JDBC batches.
+     */
+    void applyStates(Collection<ActionState> states);
+
+    /**
+     * Pass the checked rows of the users whose id is in [fromUserId, toUserId] to the consumer,
+     * ordered by user and date.
+     */
+    void forEachChecked(long fromUserId, long toUserId, Consumer<ActionState> consumer);
+
+    /**
+     * Pass every checked row dated in [from, to] to the consumer, ordered by user and date.
+     */
+    void forEachCheckedBetween(LocalDate from, LocalDate to, Consumer<ActionState> consumer);
+
+    /**
+     * Counts and weights of the user's checked actions on a day, summed in one aggregate query.
+     */
+    BalanceTotals checkedTotals(Long userId, LocalDate date);
+
+    record ActionState(Long userId, Long actionId, LocalDate date, boolean checked) {
+    }
+}
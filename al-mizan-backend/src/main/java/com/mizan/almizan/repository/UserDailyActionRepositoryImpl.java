@@ -0,0 +1,99 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class UserDailyActionRepositoryImpl implements UserDailyActionRepositoryCustom {
+
+    private static final String PG_INSERT_CHECKED = """
+            INSERT INTO user_daily_actions (user_id, action_id, action_date, checked, created_at)
+            VALUES (?, ?, ?, TRUE, CURRENT_TIMESTAMP)
+            ON CONFLICT (user_id, action_id, action_date) DO UPDATE SET checked = TRUE
+            """;
+
+    private static final String H2_INSERT_CHECKED = """
+            MERGE INTO user_daily_actions uda
+            USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS DATE))) AS s (user_id, action_id, action_date)
+            ON uda.user_id = s.user_id AND uda.action_id = s.action_id AND uda.action_date = s.action_date
+            WHEN MATCHED THEN UPDATE SET checked = TRUE
+            WHEN NOT MATCHED THEN INSERT (user_id, action_id, action_date, checked, created_at)
+                VALUES (s.user_id, s.action_id, s.action_date, TRUE, CURRENT_TIMESTAMP)
+            """;
+
+    private static final String DELETE = """
+            DELETE FROM user_daily_actions WHERE user_id = ? AND action_id = ? AND action_date = ?
+            """;
+
+    private static final String CHECKED_IN_USER_RANGE = """
+            SELECT user_id, action_id, action_date FROM user_daily_actions
+            WHERE checked = TRUE AND user_id BETWEEN ? AND ?
+            ORDER BY user_id, action_date
+            """;
+
+    private static final String CHECKED_IN_DATE_RANGE = """
+            SELECT user_id, action_id, action_date FROM user_daily_actions
+            WHERE checked = TRUE AND action_date BETWEEN ? AND ?
+            ORDER BY user_id, action_date
+            """;
+
+    private static final String CHECKED_TOTALS = """
+            SELECT COALESCE(SUM(CASE WHEN a.type = 'GOOD' THEN 1 ELSE 0 END), 0),
+                   COALESCE(SUM(CASE WHEN a.type = 'BAD' THEN 1 ELSE 0 END), 0),
+                   COALESCE(SUM(CASE WHEN a.type = 'GOOD' THEN a.weight ELSE 0 END), 0),
+                   COALESCE(SUM(CASE WHEN a.type = 'BAD' THEN a.weight ELSE 0 END), 0)
+            FROM user_daily_actions uda
+            JOIN actions a ON a.id = uda.action_id
+            WHERE uda.user_id = ? AND uda.action_date = ? AND uda.checked = TRUE
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect sqlDialect;
+
+    public UserDailyActionRepositoryImpl(JdbcTemplate jdbcTemplate, SqlDialect sqlDialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sqlDialect = sqlDialect;
+    }
+
+    @Override
+    public void applyStates(Collection<ActionState> states) {
+        List<Object[]> checked = states.stream().filter(ActionState::checked).map(this::row).toList();
+        List<Object[]> unchecked = states.stream().filter(s -> !s.checked()).map(this::row).toList();
+        if (!checked.isEmpty()) {
+            jdbcTemplate.batchUpdate(sqlDialect.isPostgres() ? PG_INSERT_CHECKED : H2_INSERT_CHECKED, checked);
+        }
+        if (!unchecked.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE, unchecked);
+        }
+    }
+
+    @Override
+    public void forEachChecked(long fromUserId, long toUserId, Consumer<ActionState> consumer) {
+        jdbcTemplate.query(CHECKED_IN_USER_RANGE, rs -> {
+            consumer.accept(new ActionState(rs.getLong(1), rs.getLong(2), rs.getObject(3, LocalDate.class), true));
+        }, fromUserId, toUserId);
+    }
+
+    @Override
+    public void forEachCheckedBetween(LocalDate from, LocalDate to, Consumer<ActionState> consumer) {
+        jdbcTemplate.query(CHECKED_IN_DATE_RANGE, rs -> {
+            consumer.accept(new ActionState(rs.getLong(1), rs.getLong(2), rs.getObject(3, LocalDate.class), true));
+        }, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    @Override
+    public BalanceTotals checkedTotals(Long userId, LocalDate date) {
+        return jdbcTemplate.queryForObject(CHECKED_TOTALS,
+                (rs, i) -> new BalanceTotals(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4)),
+                userId, Date.valueOf(date));
+    }
+
+    private Object[] row(ActionState state) {
+        return new Object[]{state.userId(), state.actionId(), Date.valueOf(state.date())};
+    }
+}
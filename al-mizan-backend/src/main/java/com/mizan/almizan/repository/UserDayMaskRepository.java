@@ -0,0 +1,7 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.UserDayMask;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface UserDayMaskRepository extends JpaRepository<UserDayMask, UserDayMask.Key>, UserDayMaskRepositoryCustom {
+}
@@ -0,0 +1,101 @@
+package com.mizan.almizan.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access to user_day_masks (see {@link UserDayMaskRepositoryImpl}).
+ */
+public interface UserDayMaskRepositoryCustom {
+
+    /**
+     * The day's mask, or null if the user has no record for that day.
+     */
+    byte[] findMask(Long userId, LocalDate date);
+
+    /**
+     * Lock the day's mask row for update and return it. With {@code create}, an empty
+     * row is inserted first if missing; otherwise null is returned for a missing day.
+     */
+    byte[] lockMask(Long userId, LocalDate date, boolean create);
+
+    /**
+     * Masks of several days of one user by date, in one query (locked for update with {@code forUpdate}).
+     */
+    Map<LocalDate, byte[]> findMasks(Long userId, Collection<LocalDate> dates, boolean forUpdate);
+
+    /**
+     * Insert empty rows for the user's days that have none, as one JDBC batch.
+     */
+    void createMasks(Long userId, Collection<LocalDate> dates);
+
+    /**
+     * Overwrite existing rows with the given masks; empty masks delete their row. Runs as JDBC batches.
+     */
+    void writeMasks(Collection<DayMask> masks);
+
+    List<DayMask> findMasksBetween(LocalDate from, LocalDate to);
+
+    /**
+     * Pass the masks of the users whose id is in [fromUserId, toUserId] to the consumer.
+     */
+    void forEachMask(long fromUserId, long toUserId, Consumer<DayMask> consumer);
+
+    /**
+     * Last user id of the next conversion chunk after {@code afterUserId}: whole users holding about
+     * {@code rows} user_daily_actions rows. Null when no row is left.
+     */
+    Long findRowChunkEnd(long afterUserId, int rows);
+
+    /**
+     * Move the user_daily_actions rows of the users in (afterUserId, toUserId] into their masks:
+     * checked actions are OR-ed into the existing masks (locked first), then exactly the folded rows
+     * are deleted. Rows of actions without a bit index are left in place.
+     */
+    FoldedRows convertRows(long afterUserId, long toUserId);
+
+    /**
+     * The user's archive watermark: days before it are kept as masks, later days as rows
+     * (null: nothing archived). With {@code lock}, the user is locked against a running archive chunk.
+     */
+    LocalDate findArchivedBefore(Long userId, boolean lock);
+
+    /**
+     * Archive watermarks of the users whose id is in [fromUserId, toUserId] (users without one are absent).
+     */
+    Map<Long, LocalDate> findArchivedBefore(long fromUserId, long toUserId);
+
+    /**
+     * The highest archive watermark of all users, or null.
+     */
+    LocalDate findMaxArchivedBefore();
+
+    /**
+     * Last user id of the next archive chunk after {@code afterUserId}: whole users holding about
+     * {@code rows} rows dated before {@code before}. Null when no such row is left.
+     */
+    Long findArchiveChunkEnd(long afterUserId, LocalDate before, int rows);
+
+    /**
+     * Archive the users whose id is in (afterUserId, toUserId]: their rows dated before {@code before}
+     * are folded into masks and deleted, and their watermark raised to {@code before}. The users
+     * are locked first, so that writes on their old days wait for the chunk's transaction.
+     * Nothing is changed when checked rows of the chunk belong to actions without a bit index.
+     */
+    ArchivedChunk archiveRows(long afterUserId, long toUserId, LocalDate before);
+
+    record FoldedRows(int rows, int days, long maskBytes) {
+    }
+
+    /**
+     * Outcome of a chunk: nothing is archived when {@code unfoldableRows} is not 0.
+     */
+    record ArchivedChunk(int rows, int days, long maskBytes, int unfoldableRows) {
+    }
+
+    record DayMask(Long userId, LocalDate date, byte[] mask) {
+    }
+}
@@ -0,0 +1,398 @@
+package com.mizan.almizan.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+public class UserDayMaskRepositoryImpl implements UserDayMaskRepositoryCustom {
+
+    private static final String SELECT_MASK = """
+            SELECT checked_mask FROM user_day_masks WHERE user_id = ? AND mask_date = ?
+            """;
+
+    private static final String PG_INSERT_EMPTY = """
+            INSERT INTO user_day_masks (user_id, mask_date, checked_mask) VALUES (?, ?, ?)
+            ON CONFLICT (user_id, mask_date) DO NOTHING
+            """;
+
+    private static final String H2_INSERT_EMPTY = """
+            MERGE INTO user_day_masks m
+            USING (VALUES (CAST(? AS BIGINT), CAST(? AS DATE), CAST(? AS VARBINARY))) AS s (user_id, mask_date, checked_mask)
+            ON m.user_id = s.user_id AND m.mask_date = s.mask_date
+            WHEN NOT MATCHED THEN INSERT (user_id, mask_date, checked_mask) VALUES (s.user_id, s.mask_date, s.checked_mask)
+            """;
+
+    private static final String SELECT_MASKS = """
+            SELECT mask_date, checked_mask FROM user_day_masks WHERE user_id = ? AND mask_date IN (%s)
+            """;
+
+    private static final String UPDATE_MASK = """
+            UPDATE user_day_masks SET checked_mask = ? WHERE user_id = ? AND mask_date = ?
+            """;
+
+    private static final String DELETE_MASK = """
+            DELETE FROM user_day_masks WHERE user_id = ? AND mask_date = ?
+            """;
+
+    private static final String INSERT_MASK = """
+            INSERT INTO user_day_masks (user_id, mask_date, checked_mask) VALUES (?, ?, ?)
+            """;
+
+    // Rows of actions without a bit index are not selected: they are neither folded nor deleted
+    private static final String ROWS_TO_FOLD = """
+            SELECT uda.user_id, uda.action_id, uda.action_date, uda.checked, a.bit_index
+            FROM user_daily_actions uda
+            JOIN actions a ON a.id = uda.action_id
+            WHERE a.bit_index IS NOT NULL AND uda.user_id > ? AND uda.user_id <= ?
+            ORDER BY uda.user_id, uda.action_date
+            """;
+
+    private static final String MASKS_IN_USER_RANGE = """
+            SELECT user_id, mask_date, checked_mask FROM user_day_masks WHERE user_id > ? AND user_id <= ? FOR UPDATE
+            """;
+
+    private static final String DELETE_ROW = """
+            DELETE FROM user_daily_actions WHERE user_id = ? AND action_id = ? AND action_date = ?
+            """;
+
+    private static final String ROW_CHUNK_END = """
+            SELECT user_id FROM user_daily_actions WHERE user_id > ? ORDER BY user_id LIMIT 1 OFFSET ?
+            """;
+
+    private static final String ARCHIVED_CHECKED_BITS = """
+            SELECT uda.user_id, uda.action_date, a.bit_index
+            FROM user_daily_actions uda
+            JOIN actions a ON a.id = uda.action_id
+            WHERE uda.checked = TRUE AND a.bit_index IS NOT NULL
+              AND uda.user_id > ? AND uda.user_id <= ? AND uda.action_date < ?
+            ORDER BY uda.user_id, uda.action_date
+            """;
+
+    // Checked rows that cannot be folded: the chunk is left alone rather than losing them
+    private static final String UNFOLDABLE_ROWS = """
+            SELECT COUNT(*)
+            FROM user_daily_actions uda
+            JOIN actions a ON a.id = uda.action_id
+            WHERE uda.checked = TRUE AND a.bit_index IS NULL
+              AND uda.user_id > ? AND uda.user_id <= ? AND uda.action_date < ?
+            """;
+
+    // Masks left from a bitmask period on days that are still kept as rows: replaced by the archived rows
+    private static final String DELETE_UNARCHIVED_MASKS = """
+            DELETE FROM user_day_masks m
+            WHERE m.user_id > ? AND m.user_id <= ? AND m.mask_date < ?
+              AND EXISTS (SELECT 1 FROM app_users u WHERE u.id = m.user_id
+                          AND (u.actions_archived_before IS NULL OR m.mask_date >= u.actions_archived_before))
+            """;
+
+    private static final String DELETE_ARCHIVED_ROWS = """
+            DELETE FROM user_daily_actions WHERE user_id > ? AND user_id <= ? AND action_date < ?
+            """;
+
+    private static final String RAISE_ARCHIVED_BEFORE = """
+            UPDATE app_users SET actions_archived_before = ?
+            WHERE id > ? AND id <= ? AND (actions_archived_before IS NULL OR actions_archived_before < ?)
+            """;
+
+    private static final String ARCHIVE_CHUNK_END = """
+            SELECT user_id FROM user_daily_actions WHERE user_id > ? AND action_date < ?
+            ORDER BY user_id LIMIT 1 OFFSET ?
+            """;
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect sqlDialect;
+
+    public UserDayMaskRepositoryImpl(JdbcTemplate jdbcTemplate, SqlDialect sqlDialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sqlDialect = sqlDialect;
+    }
+
+    @Override
+    public byte[] findMask(Long userId, LocalDate date) {
+        List<byte[]> masks = jdbcTemplate.query(SELECT_MASK, (rs, i) -> rs.getBytes(1), userId, Date.valueOf(date));
+        return masks.isEmpty() ? null : masks.get(0);
+    }
+
+    @Override
+    public byte[] lockMask(Long userId, LocalDate date, boolean create) {
+        if (create) {
+            jdbcTemplate.update(sqlDialect.isPostgres() ? PG_INSERT_EMPTY : H2_INSERT_EMPTY,
+                    userId, Date.valueOf(date), new byte[0]);
+        }
+        List<byte[]> masks = jdbcTemplate.query(SELECT_MASK.strip() + " FOR UPDATE",
+                (rs, i) -> rs.getBytes(1), userId, Date.valueOf(date));
+        return masks.isEmpty() ? null : masks.get(0);
+    }
+
+    @Override
+    public Map<LocalDate, byte[]> findMasks(Long userId, Collection<LocalDate> dates, boolean forUpdate) {
+        Map<LocalDate, byte[]> masks = new HashMap<>();
+        if (dates.isEmpty()) {
+            return masks;
+        }
+        List<Object> args = new ArrayList<>(dates.size() + 1);
+        args.add(userId);
+        dates.forEach(date -> args.add(Date.valueOf(date)));
+        String sql = SELECT_MASKS.formatted(String.join(", ", Collections.nCopies(dates.size(), "?"))).strip();
+        jdbcTemplate.query(forUpdate ? sql + " FOR UPDATE" : sql, rs -> {
+            masks.put(rs.getObject(1, LocalDate.class), rs.getBytes(2));
+        }, args.toArray());
+        return masks;
+    }
+
+    @Override
+    public void createMasks(Long userId, Collection<LocalDate> dates) {
+        if (!dates.isEmpty()) {
+            jdbcTemplate.batchUpdate(sqlDialect.isPostgres() ? PG_INSERT_EMPTY : H2_INSERT_EMPTY,
+                    dates.stream().map(date -> new Object[]{userId, Date.valueOf(date), new byte[0]}).toList());
+        }
+    }
+
+    @Override
+    public void writeMasks(Collection<DayMask> masks) {
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (DayMask mask : masks) {
+            if (mask.mask().length == 0) {
+                deletes.add(new Object[]{mask.userId(), Date.valueOf(mask.date())});
+            } else {
+                updates.add(new Object[]{mask.mask(), mask.userId(), Date.valueOf(mask.date())});
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_MASK, updates);
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_MASK, deletes);
+        }
+    }
+
+    @Override
+    public List<DayMask> findMasksBetween(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(
+                "SELECT user_id, mask_date, checked_mask FROM user_day_masks WHERE mask_date BETWEEN ? AND ?",
+                (rs, i) -> new DayMask(rs.getLong(1), rs.getObject(2, LocalDate.class), rs.getBytes(3)),
+                Date.valueOf(from), Date.valueOf(to));
+    }
+
+    @Override
+    public void forEachMask(long fromUserId, long toUserId, Consumer<DayMask> consumer) {
+        jdbcTemplate.query(
+                "SELECT user_id, mask_date, checked_mask FROM user_day_masks WHERE user_id BETWEEN ? AND ?",
+                rs -> {
+                    consumer.accept(new DayMask(rs.getLong(1), rs.getObject(2, LocalDate.class), rs.getBytes(3)));
+                },
+                fromUserId, toUserId);
+    }
+
+    @Override
+    public Long findRowChunkEnd(long afterUserId, int rows) {
+        return rowChunkEnd(jdbcTemplate, afterUserId, rows);
+    }
+
+    @Override
+    public FoldedRows convertRows(long afterUserId, long toUserId) {
+        return convertRows(jdbcTemplate, sqlDialect.isPostgres(), afterUserId, toUserId, true);
+    }
+
+    /**
+     * Fold the user_daily_actions rows of every user into their day masks, chunk after chunk of
+     * about {@code chunkRows} rows (the V3 Flyway migration, which keeps the rows).
+     *
+     * @return the number of rows folded
+     */
+    public static long convertAllRows(JdbcTemplate jdbcTemplate, boolean postgres, int chunkRows, boolean deleteRows) {
+        long rows = 0;
+        long afterUserId = 0;
+        Long toUserId;
+        while ((toUserId = rowChunkEnd(jdbcTemplate, afterUserId, chunkRows)) != null) {
+            rows += convertRows(jdbcTemplate, postgres, afterUserId, toUserId, deleteRows).rows();
+            afterUserId = toUserId;
+        }
+        return rows;
+    }
+
+    private static Long rowChunkEnd(JdbcTemplate jdbcTemplate, long afterUserId, int rows) {
+        List<Long> ends = jdbcTemplate.queryForList(ROW_CHUNK_END, Long.class, afterUserId, Math.max(rows - 1, 0));
+        if (!ends.isEmpty()) {
+            return ends.get(0);
+        }
+        return jdbcTemplate.queryForObject("SELECT MAX(user_id) FROM user_daily_actions WHERE user_id > ?",
+                Long.class, afterUserId);
+    }
+
+    /**
+     * Fold the rows of the users in (afterUserId, toUserId] into their day masks. The checked actions
+     * are OR-ed into the existing masks, which are created empty if missing and locked first, so toggles
+     * made on the masks are kept. With {@code deleteRows}, exactly the folded rows are deleted.
+     */
+    private static FoldedRows convertRows(JdbcTemplate jdbcTemplate, boolean postgres,
+                                          long afterUserId, long toUserId, boolean deleteRows) {
+        Map<UserDay, BitSet> checked = new LinkedHashMap<>();
+        List<Object[]> folded = new ArrayList<>();
+        jdbcTemplate.query(ROWS_TO_FOLD, rs -> {
+            long userId = rs.getLong(1);
+            LocalDate date = rs.getObject(3, LocalDate.class);
+            if (rs.getBoolean(4)) {
+                checked.computeIfAbsent(new UserDay(userId, date), d -> new BitSet()).set(rs.getInt(5));
+            }
+            folded.add(new Object[]{userId, rs.getLong(2), Date.valueOf(date)});
+        }, afterUserId, toUserId);
+        if (folded.isEmpty()) {
+            return new FoldedRows(0, 0, 0);
+        }
+
+        List<Object[]> updates = new ArrayList<>(checked.size());
+        long[] bytes = new long[1];
+        if (!checked.isEmpty()) {
+            jdbcTemplate.batchUpdate(postgres ? PG_INSERT_EMPTY : H2_INSERT_EMPTY, checked.keySet().stream()
+                    .map(day -> new Object[]{day.userId(), Date.valueOf(day.date()), new byte[0]})
+                    .toList());
+            jdbcTemplate.query(MASKS_IN_USER_RANGE, rs -> {
+                BitSet bits = checked.get(new UserDay(rs.getLong(1), rs.getObject(2, LocalDate.class)));
+                if (bits != null) {
+                    bits.or(BitSet.valueOf(rs.getBytes(3)));
+                    byte[] mask = bits.toByteArray();
+                    updates.add(new Object[]{mask, rs.getLong(1), rs.getDate(2)});
+                    bytes[0] += mask.length;
+                }
+            }, afterUserId, toUserId);
+            jdbcTemplate.batchUpdate(UPDATE_MASK, updates);
+        }
+        if (deleteRows) {
+            jdbcTemplate.batchUpdate(DELETE_ROW, folded);
+        }
+        return new FoldedRows(folded.size(), updates.size(), bytes[0]);
+    }
+
+    @Override
+    public LocalDate findArchivedBefore(Long userId, boolean lock) {
+        String sql = "SELECT actions_archived_before FROM app_users WHERE id = ?";
+        List<LocalDate> dates = jdbcTemplate.query(lock ? sql + lockClause() : sql,
+                (rs, i) -> rs.getObject(1, LocalDate.class), userId);
+        return dates.isEmpty() ? null : dates.get(0);
+    }
+
+    @Override
+    public Map<Long, LocalDate> findArchivedBefore(long fromUserId, long toUserId) {
+        Map<Long, LocalDate> watermarks = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT id, actions_archived_before FROM app_users WHERE id BETWEEN ? AND ? AND actions_archived_before IS NOT NULL",
+                rs -> {
+                    watermarks.put(rs.getLong(1), rs.getObject(2, LocalDate.class));
+                },
+                fromUserId, toUserId);
+        return watermarks;
+    }
+
+    @Override
+    public LocalDate findMaxArchivedBefore() {
+        return jdbcTemplate.queryForObject("SELECT MAX(actions_archived_before) FROM app_users", LocalDate.class);
+    }
+
+    @Override
+    public Long findArchiveChunkEnd(long afterUserId, LocalDate before, int rows) {
+        List<Long> ends = jdbcTemplate.queryForList(ARCHIVE_CHUNK_END, Long.class,
+                afterUserId, Date.valueOf(before), Math.max(rows - 1, 0));
+        if (!ends.isEmpty()) {
+            return ends.get(0);
+        }
+        // Fewer rows than a chunk left: up to the last user holding some
+        return jdbcTemplate.queryForObject(
+                "SELECT MAX(user_id) FROM user_daily_actions WHERE user_id > ? AND action_date < ?",
+                Long.class, afterUserId, Date.valueOf(before));
+    }
+
+    @Override
+    public ArchivedChunk archiveRows(long afterUserId, long toUserId, LocalDate before) {
+        Date beforeDate = Date.valueOf(before);
+        jdbcTemplate.queryForList("SELECT id FROM app_users WHERE id > ? AND id <= ? ORDER BY id" + lockClause(),
+                Long.class, afterUserId, toUserId);
+        Integer unfoldable = jdbcTemplate.queryForObject(UNFOLDABLE_ROWS, Integer.class, afterUserId, toUserId, beforeDate);
+        if (unfoldable != null && unfoldable > 0) {
+            return new ArchivedChunk(0, 0, 0, unfoldable);
+        }
+        jdbcTemplate.update(DELETE_UNARCHIVED_MASKS, afterUserId, toUserId, beforeDate);
+        MaskCollector collector = new MaskCollector(jdbcTemplate);
+        jdbcTemplate.query(ARCHIVED_CHECKED_BITS, collector, afterUserId, toUserId, beforeDate);
+        collector.finish();
+        int rows = jdbcTemplate.update(DELETE_ARCHIVED_ROWS, afterUserId, toUserId, beforeDate);
+        jdbcTemplate.update(RAISE_ARCHIVED_BEFORE, beforeDate, afterUserId, toUserId, beforeDate);
+        return new ArchivedChunk(rows, collector.days, collector.bytes, 0);
+    }
+
+    private record UserDay(long userId, LocalDate date) {
+    }
+
+    /**
+     * Row lock of app_users that still lets other transactions insert rows referencing the user
+     * (PostgreSQL's foreign key checks take a key-share lock, which FOR UPDATE would block).
+     */
+    private String lockClause() {
+        return sqlDialect.isPostgres() ? " FOR NO KEY UPDATE" : " FOR UPDATE";
+    }
+
+    /**
+     * Folds consecutive (user, date) rows into one mask.
+     */
+    private static class MaskCollector implements RowCallbackHandler {
+
+        private final JdbcTemplate jdbcTemplate;
+        private final List<Object[]> batch = new ArrayList<>();
+        private Long userId;
+        private LocalDate date;
+        private BitSet mask;
+        private int days;
+        private long bytes;
+
+        MaskCollector(JdbcTemplate jdbcTemplate) {
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long rowUserId = rs.getLong(1);
+            LocalDate rowDate = rs.getObject(2, LocalDate.class);
+            if (mask == null || userId != rowUserId || !date.equals(rowDate)) {
+                add();
+                userId = rowUserId;
+                date = rowDate;
+                mask = new BitSet();
+            }
+            mask.set(rs.getInt(3));
+        }
+
+        void finish() {
+            add();
+            flushBatch();
+        }
+
+        private void add() {
+            if (mask == null || mask.isEmpty()) {
+                return;
+            }
+            byte[] bits = mask.toByteArray();
+            batch.add(new Object[]{userId, Date.valueOf(date), bits});
+            days++;
+            bytes += bits.length;
+            if (batch.size() >= BATCH_SIZE) {
+                flushBatch();
+            }
+        }
+
+        private void flushBatch() {
+            if (!batch.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_MASK, batch);
+                batch.clear();
+            }
+        }
+    }
+}
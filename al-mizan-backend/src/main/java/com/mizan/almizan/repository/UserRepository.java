@@ -2,6 +2,7 @@ package com.mizan.almizan.repository;
 
 import com.mizan.almizan.entity.AppUser;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<AppUser, Long> {
@@ -9,4 +10,7 @@ public interface UserRepository extends JpaRepository<AppUser, Long> {
     Optional<AppUser> findByEmail(String email);
     Boolean existsByUsername(String username);
     Boolean existsByEmail(String email);
+
+    @Query("SELECT COALESCE(MAX(u.id), 0) FROM AppUser u")
+    long findMaxId();
 }
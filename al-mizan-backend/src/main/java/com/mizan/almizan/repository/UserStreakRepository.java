@@ -0,0 +1,7 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.entity.UserStreak;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface UserStreakRepository extends JpaRepository<UserStreak, Long>, UserStreakRepositoryCustom {
+}
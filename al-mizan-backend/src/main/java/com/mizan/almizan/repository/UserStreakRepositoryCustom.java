@@ -0,0 +1,21 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.dto.StreakState;
+
+/**
+ * Native access to user_streaks (see {@link UserStreakRepositoryImpl}).
+ */
+public interface UserStreakRepositoryCustom {
+
+    /**
+     * Lock the user's streak row (FOR UPDATE) until the end of the transaction, creating an empty one if missing.
+     */
+    StreakState lockStreak(Long userId);
+
+    void updateStreak(Long userId, StreakState state);
+
+    /**
+     * Recompute the streak from the user's POSITIVE daily_balances rows.
+     */
+    StreakState computeStreak(Long userId);
+}
@@ -0,0 +1,144 @@
+package com.mizan.almizan.repository;
+
+import com.mizan.almizan.dto.StreakState;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserStreakRepositoryImpl implements UserStreakRepositoryCustom {
+
+    private static final String PG_INSERT_EMPTY = """
+            INSERT INTO user_streaks (user_id, run_length, best_length, earlier_best_length) VALUES (?, 0, 0, 0)
+            ON CONFLICT (user_id) DO NOTHING
+            """;
+
+    private static final String H2_INSERT_EMPTY = """
+            MERGE INTO user_streaks s
+            USING (VALUES (CAST(? AS BIGINT))) AS n (user_id)
+            ON s.user_id = n.user_id
+            WHEN NOT MATCHED THEN INSERT (user_id, run_length, best_length, earlier_best_length) VALUES (n.user_id, 0, 0, 0)
+            """;
+
+    private static final String LOCK_STREAK = """
+            SELECT run_length, last_positive_date, earlier_best_length FROM user_streaks WHERE user_id = ? FOR UPDATE
+            """;
+
+    private static final String UPDATE_STREAK = """
+            UPDATE user_streaks SET run_length = ?, last_positive_date = ?, best_length = ?, earlier_best_length = ?
+            WHERE user_id = ?
+            """;
+
+    private static final String INSERT_STREAK = """
+            INSERT INTO user_streaks (run_length, last_positive_date, best_length, earlier_best_length, user_id)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private static final String POSITIVE_DAYS = """
+            SELECT balance_date FROM daily_balances WHERE user_id = ? AND verdict = 'POSITIVE' ORDER BY balance_date
+            """;
+
+    private static final String ALL_POSITIVE_DAYS = """
+            SELECT user_id, balance_date FROM daily_balances WHERE verdict = 'POSITIVE' ORDER BY user_id, balance_date
+            """;
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect sqlDialect;
+
+    public UserStreakRepositoryImpl(JdbcTemplate jdbcTemplate, SqlDialect sqlDialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sqlDialect = sqlDialect;
+    }
+
+    @Override
+    public StreakState lockStreak(Long userId) {
+        jdbcTemplate.update(sqlDialect.isPostgres() ? PG_INSERT_EMPTY : H2_INSERT_EMPTY, userId);
+        return jdbcTemplate.queryForObject(LOCK_STREAK, (rs, i) ->
+                new StreakState(rs.getInt(1), rs.getObject(2, LocalDate.class), rs.getInt(3)), userId);
+    }
+
+    @Override
+    public void updateStreak(Long userId, StreakState state) {
+        jdbcTemplate.update(UPDATE_STREAK, args(userId, state));
+    }
+
+    @Override
+    public StreakState computeStreak(Long userId) {
+        StreakState[] state = {StreakState.NONE};
+        jdbcTemplate.query(POSITIVE_DAYS, rs -> {
+            state[0] = state[0].next(rs.getObject(1, LocalDate.class));
+        }, userId);
+        return state[0];
+    }
+
+    /**
+     * Compute the streak of every user from daily_balances (positive days streamed in (user, date) order)
+     * and insert the rows in batches. Used by the V10 Flyway migration, on an empty table.
+     *
+     * @return the number of users with a streak row
+     */
+    public static int rebuildAll(JdbcTemplate jdbcTemplate) {
+        StreakCollector collector = new StreakCollector(jdbcTemplate);
+        jdbcTemplate.query(ALL_POSITIVE_DAYS, collector);
+        collector.finish();
+        return collector.users;
+    }
+
+    private static Object[] args(Long userId, StreakState state) {
+        return new Object[]{state.length(), state.end() != null ? Date.valueOf(state.end()) : null,
+                state.best(), state.earlierBest(), userId};
+    }
+
+    /**
+     * Folds consecutive rows of a user into its streak.
+     */
+    private static class StreakCollector implements RowCallbackHandler {
+
+        private final JdbcTemplate jdbcTemplate;
+        private final List<Object[]> batch = new ArrayList<>();
+        private Long userId;
+        private StreakState state;
+        private int users;
+
+        StreakCollector(JdbcTemplate jdbcTemplate) {
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long rowUserId = rs.getLong(1);
+            if (userId == null || userId != rowUserId) {
+                add();
+                userId = rowUserId;
+                state = StreakState.NONE;
+            }
+            state = state.next(rs.getObject(2, LocalDate.class));
+        }
+
+        void finish() {
+            add();
+            if (!batch.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_STREAK, batch);
+            }
+        }
+
+        private void add() {
+            if (userId == null) {
+                return;
+            }
+            batch.add(args(userId, state));
+            users++;
+            if (batch.size() >= BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(INSERT_STREAK, batch);
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.mizan.almizan.security;
+
+import java.security.Principal;
+
+/**
+ * Authenticated principal built from the JWT claims, so controllers get
+ * the user id without looking the user up again.
+ */
+public record AuthenticatedUser(Long id, String username) implements Principal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
@@ -0,0 +1,116 @@
+package com.mizan.almizan.security;
+
+import com.mizan.almizan.exception.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs a CPU-bound password encoder (BCrypt) on a core-sized pool of platform threads with a
+ * bounded queue, so that register/login bursts cannot take every CPU from the other endpoints.
+ * When the queue is full the call fails at once with {@link ServiceBusyException} (503).
+ * Queue wait and hash time are timed separately.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder, AutoCloseable {
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final Duration retryAfter;
+    private final Timer encodeWaitTimer;
+    private final Timer encodeHashTimer;
+    private final Timer matchesWaitTimer;
+    private final Timer matchesHashTimer;
+    private final Counter rejectedCounter;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity,
+                                  Duration retryAfter, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.retryAfter = retryAfter;
+        // Platform threads even in virtual-thread mode: the point is to cap the CPU spent hashing
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("password-hash-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.encodeWaitTimer = waitTimer("encode", meterRegistry);
+        this.encodeHashTimer = hashTimer("encode", meterRegistry);
+        this.matchesWaitTimer = waitTimer("matches", meterRegistry);
+        this.matchesHashTimer = hashTimer("matches", meterRegistry);
+        this.rejectedCounter = Counter.builder("mizan.auth.hash.rejected")
+                .description("Password hashing tasks refused because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("mizan.auth.hash.queue", executor, e -> e.getQueue().size())
+                .description("Password hashing tasks waiting")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(encodeWaitTimer, encodeHashTimer, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(matchesWaitTimer, matchesHashTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(Timer waitTimer, Timer hashTimer, Supplier<T> hash) {
+        long submitted = System.nanoTime();
+        Future<T> task;
+        try {
+            task = executor.submit(() -> {
+                long started = System.nanoTime();
+                waitTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+                try {
+                    return hash.get();
+                } finally {
+                    hashTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new ServiceBusyException("Too many authentication requests, retry later", retryAfter);
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private static Timer waitTimer(String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("mizan.auth.hash.wait")
+                .description("Time password hashing tasks wait in the queue")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    private static Timer hashTimer(String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("mizan.auth.hash.time")
+                .description("Time spent hashing or verifying a password")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
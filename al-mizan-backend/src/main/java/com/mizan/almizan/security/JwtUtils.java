@@ -1,51 +1,131 @@
 package com.mizan.almizan.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtils {
 
-    @Value("${app.jwt.secret}")
-    private String jwtSecret;
+    /** Claim carrying the user id, so requests can be authenticated without a user lookup. */
+    public static final String USER_ID_CLAIM = "uid";
 
-    @Value("${app.jwt.expiration-ms:86400000}")
-    private long jwtExpirationMs;
+    private final long jwtExpirationMs;
+    private final SecretKey signingKey;
+    private final JwtParser parser;
+    private final Cache<String, VerifiedToken> verifiedTokens;
+    private final Counter cacheHitCounter;
+    private final Counter cacheMissCounter;
+    private final Counter rejectedCounter;
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+    public JwtUtils(@Value("${app.jwt.secret}") String jwtSecret,
+                    @Value("${app.jwt.expiration-ms:86400000}") long jwtExpirationMs,
+                    @Value("${app.jwt.verified-cache.max-size:10000}") long verifiedCacheMaxSize,
+                    MeterRegistry meterRegistry) {
+        this.jwtExpirationMs = jwtExpirationMs;
+        // Key and parser are immutable and thread-safe: build them once
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
+        // A max size of 0 disables the verified-token cache
+        this.verifiedTokens = verifiedCacheMaxSize > 0
+                ? Caffeine.newBuilder()
+                        .maximumSize(verifiedCacheMaxSize)
+                        .expireAfter(new TokenExpiry())
+                        .build()
+                : null;
+
+        this.cacheHitCounter = Counter.builder("mizan.jwt.verifications")
+                .description("Bearer token verifications")
+                .tag("result", "cache_hit")
+                .register(meterRegistry);
+        this.cacheMissCounter = Counter.builder("mizan.jwt.verifications")
+                .description("Bearer token verifications")
+                .tag("result", "cache_miss")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("mizan.jwt.verifications")
+                .description("Bearer token verifications")
+                .tag("result", "rejected")
+                .register(meterRegistry);
     }
 
-    public String generateToken(String username) {
+    public String generateToken(Long userId, String username) {
         return Jwts.builder()
                 .subject(username)
+                .claim(USER_ID_CLAIM, userId)
                 .issuedAt(new Date())
                 .expiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
-    public String getUsernameFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
-    }
+    /**
+     * Verify the token and return its claims, or null if it is invalid or expired.
+     * Tokens verified before are served from a bounded cache until they expire,
+     * skipping the HMAC check and JSON decoding.
+     */
+    public VerifiedToken verify(String token) {
+        VerifiedToken cached = verifiedTokens != null ? verifiedTokens.getIfPresent(token) : null;
+        if (cached != null && !cached.isExpired()) {
+            cacheHitCounter.increment();
+            return cached;
+        }
 
-    public boolean validateToken(String token) {
+        cacheMissCounter.increment();
         try {
-            Jwts.parser().verifyWith(getSigningKey()).build().parseSignedClaims(token);
-            return true;
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            Number userId = claims.get(USER_ID_CLAIM, Number.class);
+            Date expiration = claims.getExpiration();
+            VerifiedToken verified = new VerifiedToken(
+                    userId != null ? userId.longValue() : null,
+                    claims.getSubject(),
+                    expiration != null ? expiration.getTime() : System.currentTimeMillis() + jwtExpirationMs);
+            if (verifiedTokens != null) {
+                verifiedTokens.put(token, verified);
+            }
+            return verified;
         } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            rejectedCounter.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Claims of a verified token. The user id is null for tokens issued before the claim existed.
+     */
+    public record VerifiedToken(Long userId, String username, long expiresAtMillis) {
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAtMillis;
+        }
+    }
+
+    private static class TokenExpiry implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String token, VerifiedToken verified, long currentTime) {
+            long remainingMs = verified.expiresAtMillis() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMs, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+            return expireAfterCreate(token, verified, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+            return currentDuration;
         }
     }
 }
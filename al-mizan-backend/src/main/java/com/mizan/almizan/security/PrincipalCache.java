@@ -0,0 +1,52 @@
+package com.mizan.almizan.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mizan.almizan.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded, TTL-based cache of principals resolved from the database.
+ * Only used for tokens that do not carry the user id claim (issued before it existed).
+ */
+@Component
+public class PrincipalCache {
+
+    private final UserRepository userRepository;
+    private final Cache<String, AuthenticatedUser> cache;
+    private final boolean enabled;
+
+    public PrincipalCache(UserRepository userRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.auth.principal-cache.enabled:true}") boolean enabled,
+                          @Value("${app.auth.principal-cache.max-size:10000}") long maxSize,
+                          @Value("${app.auth.principal-cache.ttl:10m}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "mizan.auth.principals");
+    }
+
+    public AuthenticatedUser get(String username) {
+        if (!enabled) {
+            return load(username);
+        }
+        return cache.get(username, this::load);
+    }
+
+    private AuthenticatedUser load(String username) {
+        return userRepository.findByUsername(username)
+                .map(user -> new AuthenticatedUser(user.getId(), user.getUsername()))
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    }
+}
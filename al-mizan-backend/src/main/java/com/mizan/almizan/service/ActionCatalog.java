@@ -0,0 +1,267 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.ActionDTO;
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.repository.ActionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory, versioned snapshot of the {@code actions} table.
+ * The catalog is seed data, so it is loaded once and swapped atomically
+ * when a refresh detects a change (the version is bumped on every swap and a
+ * {@link CatalogChangedEvent} published).
+ */
+@Component
+@Slf4j
+public class ActionCatalog {
+
+    private final ActionRepository actionRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private static final long MISS_RELOAD_INTERVAL_MS = 1000;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    // Not a monitor: refresh() queries the database, which would pin a virtual thread
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile long lastLoadedAt;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public ActionCatalog(ActionRepository actionRepository, ApplicationEventPublisher eventPublisher,
+                         MeterRegistry meterRegistry) {
+        this.actionRepository = actionRepository;
+        this.eventPublisher = eventPublisher;
+
+        this.hitCounter = Counter.builder("mizan.catalog.lookups")
+                .description("Action lookups served by the in-memory catalog")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("mizan.catalog.lookups")
+                .description("Action lookups served by the in-memory catalog")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("mizan.catalog.version", current, ref -> ref.get() != null ? ref.get().version() : 0)
+                .description("Version of the action catalog snapshot")
+                .register(meterRegistry);
+        Gauge.builder("mizan.catalog.size", current, ref -> ref.get() != null ? ref.get().ids().length : 0)
+                .description("Number of actions in the catalog snapshot")
+                .register(meterRegistry);
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = current.get();
+        return snapshot != null ? snapshot : refresh();
+    }
+
+    /**
+     * Find an action by id. An unknown id triggers a reload (at most once per second),
+     * so actions added behind our back are picked up without waiting for the schedule.
+     */
+    public Optional<Action> find(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        Action action = snapshot().action(id);
+        if (action != null) {
+            hitCounter.increment();
+            return Optional.of(action);
+        }
+        missCounter.increment();
+        if (System.currentTimeMillis() - lastLoadedAt < MISS_RELOAD_INTERVAL_MS) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(refresh().action(id));
+    }
+
+    @Scheduled(fixedDelayString = "${app.catalog.refresh-interval-ms:300000}",
+               initialDelayString = "${app.catalog.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    /**
+     * Reload the catalog from the database and swap the snapshot if its content changed.
+     */
+    public Snapshot refresh() {
+        refreshLock.lock();
+        try {
+            List<Action> actions = actionRepository.findAll(Sort.by("id"));
+            assignBitIndexes(actions);
+            lastLoadedAt = System.currentTimeMillis();
+            int fingerprint = fingerprint(actions);
+
+            Snapshot previous = current.get();
+            if (previous != null && previous.fingerprint() == fingerprint) {
+                return previous;
+            }
+
+            Snapshot next = Snapshot.of(previous != null ? previous.version() + 1 : 1, fingerprint, actions);
+            current.set(next);
+            log.info("Action catalog loaded: version {}, {} actions", next.version(), next.ids().length);
+            if (previous != null) {
+                eventPublisher.publishEvent(new CatalogChangedEvent(previous, next));
+            }
+            return next;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Give actions added since the last load the next free bits (bits are never reused).
+     */
+    private void assignBitIndexes(List<Action> actions) {
+        int next = actions.stream()
+                .map(Action::getBitIndex)
+                .filter(Objects::nonNull)
+                .max(Integer::compare)
+                .orElse(-1) + 1;
+        for (Action action : actions) {
+            if (action.getBitIndex() != null) {
+                continue;
+            }
+            try {
+                if (actionRepository.assignBitIndex(action.getId(), next) == 1) {
+                    action.setBitIndex(next++);
+                }
+            } catch (DataAccessException e) {
+                // Another instance took the bit first: picked up on the next refresh
+                log.warn("Could not assign bit {} to action {}: {}", next, action.getId(), e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private static int fingerprint(List<Action> actions) {
+        int hash = 1;
+        for (Action a : actions) {
+            hash = 31 * hash + Objects.hash(a.getId(), a.getNameAr(), a.getNameFr(), a.getNameEn(),
+                    a.getType(), a.getWeight(), a.getCategory(), a.getIcon(), a.getActive(), a.getBitIndex());
+        }
+        return hash;
+    }
+
+    /**
+     * Immutable view of the catalog. Actions are kept in arrays sorted by id
+     * and looked up by binary search; DTO lists are pre-built and must not be mutated.
+     */
+    public record Snapshot(long version,
+                           int fingerprint,
+                           long[] ids,
+                           Action[] actions,
+                           List<ActionDTO> activeDtos,
+                           Map<Action.ActionType, Action[]> activeByType,
+                           Map<Action.ActionType, List<ActionDTO>> activeDtosByType,
+                           ActionMasks masks) {
+
+        static Snapshot of(long version, int fingerprint, List<Action> sortedById) {
+            long[] ids = new long[sortedById.size()];
+            Action[] actions = new Action[sortedById.size()];
+            List<ActionDTO> activeDtos = new ArrayList<>();
+            Map<Action.ActionType, List<Action>> byType = new EnumMap<>(Action.ActionType.class);
+            Map<Action.ActionType, List<ActionDTO>> dtosByType = new EnumMap<>(Action.ActionType.class);
+            for (Action.ActionType type : Action.ActionType.values()) {
+                byType.put(type, new ArrayList<>());
+                dtosByType.put(type, new ArrayList<>());
+            }
+
+            for (int i = 0; i < actions.length; i++) {
+                Action action = sortedById.get(i);
+                ids[i] = action.getId();
+                actions[i] = action;
+                if (Boolean.TRUE.equals(action.getActive())) {
+                    ActionDTO dto = ActionDTO.from(action);
+                    activeDtos.add(dto);
+                    byType.get(action.getType()).add(action);
+                    dtosByType.get(action.getType()).add(dto);
+                }
+            }
+
+            Map<Action.ActionType, Action[]> activeByType = new EnumMap<>(Action.ActionType.class);
+            Map<Action.ActionType, List<ActionDTO>> activeDtosByType = new EnumMap<>(Action.ActionType.class);
+            for (Action.ActionType type : Action.ActionType.values()) {
+                activeByType.put(type, byType.get(type).toArray(Action[]::new));
+                activeDtosByType.put(type, List.copyOf(dtosByType.get(type)));
+            }
+
+            return new Snapshot(version, fingerprint, ids, actions, List.copyOf(activeDtos),
+                    Collections.unmodifiableMap(activeByType), Collections.unmodifiableMap(activeDtosByType),
+                    ActionMasks.of(actions));
+        }
+
+        public Action action(long id) {
+            int index = Arrays.binarySearch(ids, id);
+            return index >= 0 ? actions[index] : null;
+        }
+
+        public List<ActionDTO> activeDtos(Action.ActionType type) {
+            return activeDtosByType.get(type);
+        }
+
+        /**
+         * Totals of a set of checked actions, weighted from the catalog (unknown ids are ignored).
+         */
+        public BalanceTotals totalsOf(Collection<Long> checkedActionIds) {
+            int goodCount = 0, badCount = 0, goodWeight = 0, badWeight = 0;
+            for (Long actionId : checkedActionIds) {
+                Action action = action(actionId);
+                if (action == null) {
+                    continue;
+                }
+                if (action.getType() == Action.ActionType.GOOD) {
+                    goodCount++;
+                    goodWeight += action.getWeight();
+                } else {
+                    badCount++;
+                    badWeight += action.getWeight();
+                }
+            }
+            return new BalanceTotals(goodCount, badCount, goodWeight, badWeight);
+        }
+
+        /**
+         * Per-category change between two sets of checked actions; unchanged categories are left out.
+         */
+        public Map<String, BalanceTotals> categoryChanges(Collection<Long> before, Collection<Long> after) {
+            Map<String, BalanceTotals> changes = new TreeMap<>();
+            for (Long actionId : after) {
+                if (!before.contains(actionId)) {
+                    addChange(changes, actionId, 1);
+                }
+            }
+            for (Long actionId : before) {
+                if (!after.contains(actionId)) {
+                    addChange(changes, actionId, -1);
+                }
+            }
+            changes.values().removeIf(BalanceTotals.EMPTY::equals);
+            return changes;
+        }
+
+        private void addChange(Map<String, BalanceTotals> changes, Long actionId, int sign) {
+            Action action = action(actionId);
+            if (action != null) {
+                changes.merge(categoryOf(action), BalanceTotals.of(action, sign), BalanceTotals::plus);
+            }
+        }
+    }
+
+    /**
+     * Rollup category of an action; actions without a category are grouped under OTHER.
+     */
+    public static String categoryOf(Action action) {
+        return action.getCategory() != null ? action.getCategory() : "OTHER";
+    }
+}
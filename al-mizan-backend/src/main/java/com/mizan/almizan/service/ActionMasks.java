@@ -0,0 +1,92 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.Action;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Bit layout of the catalog for day masks: each action owns the bit at its {@code bit_index},
+ * so masks grow with the catalog (one long word per 64 actions).
+ * Totals of a mask are popcounts against the per-type masks, and weights are summed per
+ * weight bit plane (plane k holds the actions whose weight has bit k set), so a day is
+ * evaluated in a few word operations instead of a loop over its actions.
+ */
+public record ActionMasks(Long[] actionIdByBit,
+                          long[] good,
+                          long[] bad,
+                          long[][] goodWeightPlanes,
+                          long[][] badWeightPlanes) {
+
+    static ActionMasks of(Action[] actions) {
+        int maxBit = -1, maxWeight = 0;
+        for (Action action : actions) {
+            if (action.getBitIndex() != null) {
+                maxBit = Math.max(maxBit, action.getBitIndex());
+                maxWeight = Math.max(maxWeight, action.getWeight());
+            }
+        }
+        int words = (maxBit >> 6) + 1;
+        int planes = 32 - Integer.numberOfLeadingZeros(maxWeight);
+
+        Long[] actionIdByBit = new Long[maxBit + 1];
+        long[] good = new long[words];
+        long[] bad = new long[words];
+        long[][] goodWeightPlanes = new long[planes][words];
+        long[][] badWeightPlanes = new long[planes][words];
+        for (Action action : actions) {
+            Integer bit = action.getBitIndex();
+            if (bit == null) {
+                continue;
+            }
+            actionIdByBit[bit] = action.getId();
+            boolean isGood = action.getType() == Action.ActionType.GOOD;
+            int word = bit >> 6;
+            long mask = 1L << bit;
+            (isGood ? good : bad)[word] |= mask;
+            for (int k = 0; k < planes; k++) {
+                if ((action.getWeight() >> k & 1) != 0) {
+                    (isGood ? goodWeightPlanes : badWeightPlanes)[k][word] |= mask;
+                }
+            }
+        }
+        return new ActionMasks(actionIdByBit, good, bad, goodWeightPlanes, badWeightPlanes);
+    }
+
+    public BalanceTotals totals(long[] mask) {
+        int goodCount = 0, badCount = 0;
+        int words = Math.min(mask.length, good.length);
+        for (int w = 0; w < words; w++) {
+            goodCount += Long.bitCount(mask[w] & good[w]);
+            badCount += Long.bitCount(mask[w] & bad[w]);
+        }
+        return new BalanceTotals(goodCount, badCount,
+                weightOf(mask, goodWeightPlanes, words), weightOf(mask, badWeightPlanes, words));
+    }
+
+    public Set<Long> actionIds(long[] mask) {
+        Set<Long> ids = new HashSet<>();
+        for (int w = 0; w < mask.length; w++) {
+            for (long word = mask[w]; word != 0; word &= word - 1) {
+                int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                if (bit < actionIdByBit.length && actionIdByBit[bit] != null) {
+                    ids.add(actionIdByBit[bit]);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static int weightOf(long[] mask, long[][] planes, int words) {
+        int weight = 0;
+        for (int k = 0; k < planes.length; k++) {
+            int count = 0;
+            for (int w = 0; w < words; w++) {
+                count += Long.bitCount(mask[w] & planes[k][w]);
+            }
+            weight += count << k;
+        }
+        return weight;
+    }
+}
@@ -1,55 +1,93 @@
 package com.mizan.almizan.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mizan.almizan.dto.ActionDTO;
+import com.mizan.almizan.dto.LocalizedActionDTO;
 import com.mizan.almizan.entity.Action;
-import com.mizan.almizan.entity.UserDailyAction;
-import com.mizan.almizan.repository.ActionRepository;
-import com.mizan.almizan.repository.UserDailyActionRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ActionService {
 
-    private final ActionRepository actionRepository;
-    private final UserDailyActionRepository userDailyActionRepository;
+    private final ActionCatalog actionCatalog;
+    private final CheckedActionStore checkedActionStore;
+    private final ToggleBuffer toggleBuffer;
+    private final ObjectMapper objectMapper;
+    private final AtomicReference<RenderedCatalog> rendered = new AtomicReference<>();
 
-    public List<ActionDTO> getAllActions() {
-        return actionRepository.findByActiveTrue().stream()
-                .map(ActionDTO::from)
-                .collect(Collectors.toList());
-    }
-
-    public List<ActionDTO> getActionsByType(Action.ActionType type) {
-        return actionRepository.findByTypeAndActiveTrue(type).stream()
-                .map(ActionDTO::from)
-                .collect(Collectors.toList());
+    /**
+     * Serialized catalog response for a language (null: every name) and a type (null: all).
+     * Rendered once per catalog snapshot, with its gzip variant; a refresh that swaps the snapshot
+     * drops every rendered body.
+     */
+    public CatalogBody getCatalogBody(String lang, Action.ActionType type) {
+        ActionCatalog.Snapshot snapshot = actionCatalog.snapshot();
+        RenderedCatalog current = rendered.updateAndGet(r ->
+                r != null && r.snapshot() == snapshot ? r : new RenderedCatalog(snapshot, new ConcurrentHashMap<>()));
+        String key = lang + "/" + type;
+        return current.bodies().computeIfAbsent(key, k -> render(snapshot, lang, type));
     }
 
     /**
      * Get all actions with checked status for a given user and date
      */
     public List<ActionDTO> getActionsForUserAndDate(Long userId, LocalDate date) {
-        List<Action> allActions = actionRepository.findByActiveTrue();
-        List<UserDailyAction> userActions = userDailyActionRepository.findByUserIdAndActionDate(userId, date);
-
-        Set<Long> checkedActionIds = userActions.stream()
-                .filter(UserDailyAction::getChecked)
-                .map(uda -> uda.getAction().getId())
-                .collect(Collectors.toSet());
-
-        return allActions.stream()
-                .map(action -> {
-                    ActionDTO dto = ActionDTO.from(action);
-                    dto.setChecked(checkedActionIds.contains(action.getId()));
-                    return dto;
-                })
+        Set<Long> persistedIds = checkedActionStore.checkedActionIds(userId, date);
+        // Include toggles still waiting in the write-behind buffer
+        Set<Long> checkedActionIds = toggleBuffer.applyPending(userId, date, persistedIds);
+
+        return actionCatalog.snapshot().activeDtos().stream()
+                .map(dto -> dto.withChecked(checkedActionIds.contains(dto.getId())))
                 .collect(Collectors.toList());
     }
+
+    private CatalogBody render(ActionCatalog.Snapshot snapshot, String lang, Action.ActionType type) {
+        List<ActionDTO> actions = type != null ? snapshot.activeDtos(type) : snapshot.activeDtos();
+        Object body = lang != null ? actions.stream().map(dto -> LocalizedActionDTO.from(dto, lang)).toList() : actions;
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            String tag = Integer.toHexString(snapshot.fingerprint()) + "-" + (lang != null ? lang : "all")
+                    + "-" + (type != null ? type : "ALL");
+            log.debug("Catalog response {} rendered: {} bytes", tag, json.length);
+            return new CatalogBody(json, gzip(json), "\"" + tag + "\"", "\"" + tag + "-gz\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Catalog serialization failed", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Immutable JSON body and its gzip variant, each with its strong ETag.
+     */
+    public record CatalogBody(byte[] json, byte[] gzip, String eTag, String gzipETag) {
+    }
+
+    private record RenderedCatalog(ActionCatalog.Snapshot snapshot, Map<String, CatalogBody> bodies) {
+    }
 }
@@ -0,0 +1,132 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.config.AppThreads;
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fills the AI advice corpus ahead of requests: the empty day, each single active action,
+ * and the most frequent day totals of recent history, in every language. Generation runs on
+ * its own small pool, so it never takes slots of the advice executor serving live requests.
+ */
+@Component
+@Slf4j
+public class AdvicePregeneration {
+
+    private static final List<String> LANGS = List.of("fr", "en", "ar");
+
+    private final AiAdviceService aiAdviceService;
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final ActionCatalog actionCatalog;
+    private final AppThreads appThreads;
+    private final boolean onStartup;
+    private final int lookbackDays;
+    private final int topTotals;
+    private final int parallelism;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public AdvicePregeneration(AiAdviceService aiAdviceService,
+                               DailyBalanceRepository dailyBalanceRepository,
+                               ActionCatalog actionCatalog,
+                               AppThreads appThreads,
+                               @Value("${app.ai.pregenerate.on-startup:false}") boolean onStartup,
+                               @Value("${app.ai.pregenerate.lookback-days:90}") int lookbackDays,
+                               @Value("${app.ai.pregenerate.top-totals:200}") int topTotals,
+                               @Value("${app.ai.pregenerate.parallelism:2}") int parallelism) {
+        this.aiAdviceService = aiAdviceService;
+        this.dailyBalanceRepository = dailyBalanceRepository;
+        this.actionCatalog = actionCatalog;
+        this.appThreads = appThreads;
+        this.onStartup = onStartup;
+        this.lookbackDays = lookbackDays;
+        this.topTotals = topTotals;
+        this.parallelism = parallelism;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void pregenerateOnStartup() {
+        if (onStartup) {
+            appThreads.daemonFactory("advice-pregenerate").newThread(this::scheduledPregenerate).start();
+        }
+    }
+
+    @Scheduled(cron = "${app.ai.pregenerate.cron:-}")
+    public void scheduledPregenerate() {
+        try {
+            pregenerate();
+        } catch (RuntimeException e) {
+            log.error("AI advice pre-generation failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Generate the missing corpus variants of every input combination (skipped if a run is in progress).
+     * Inputs whose generation fails are counted and skipped.
+     *
+     * @return the number of model calls made
+     */
+    public int pregenerate() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+        long started = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, appThreads.factory("advice-pregenerate-"));
+        try {
+            Set<BalanceTotals> space = inputSpace();
+            List<Future<Integer>> tasks = new ArrayList<>();
+            for (BalanceTotals totals : space) {
+                for (String lang : LANGS) {
+                    tasks.add(executor.submit(() -> aiAdviceService.pregenerate(totals.toDto(LocalDate.now()), lang)));
+                }
+            }
+            // A failed input is counted and skipped; the next run retries its missing variants
+            int calls = 0;
+            int failed = 0;
+            for (Future<Integer> task : tasks) {
+                try {
+                    calls += task.get();
+                } catch (ExecutionException e) {
+                    if (failed++ == 0) {
+                        log.warn("AI advice pre-generation of an input failed: {}", e.getCause().toString());
+                    }
+                }
+            }
+            log.info("AI advice pre-generation: {} input(s), {} failed, {} model call(s) in {} ms",
+                    tasks.size(), failed, calls, System.currentTimeMillis() - started);
+            return calls;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("AI advice pre-generation interrupted", e);
+        } finally {
+            executor.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    private Set<BalanceTotals> inputSpace() {
+        Set<BalanceTotals> space = new LinkedHashSet<>();
+        space.add(BalanceTotals.EMPTY);
+        for (Action[] actions : actionCatalog.snapshot().activeByType().values()) {
+            for (Action action : actions) {
+                space.add(BalanceTotals.of(action, 1));
+            }
+        }
+        space.addAll(dailyBalanceRepository.findFrequentTotals(LocalDate.now().minusDays(lookbackDays), topTotals));
+        return space;
+    }
+}
@@ -0,0 +1,72 @@
+package com.mizan.almizan.service;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Incrementally decodes the value of the "advice" field of a streamed JSON answer,
+ * so the advice text can be shown while the rest of the JSON is still being generated.
+ * Not thread-safe: one instance per stream.
+ */
+class AdviceTextExtractor {
+
+    private static final Pattern ADVICE_START = Pattern.compile("\"advice\"\\s*:\\s*\"");
+
+    private final StringBuilder buffer = new StringBuilder();
+    private int position = -1;   // next undecoded character of the value, -1 until the value starts
+    private boolean complete;
+
+    /**
+     * Append a chunk of the answer and return the advice text it completes (possibly empty).
+     */
+    String append(String chunk) {
+        buffer.append(chunk);
+        if (complete) {
+            return "";
+        }
+        if (position < 0) {
+            Matcher matcher = ADVICE_START.matcher(buffer);
+            if (!matcher.find()) {
+                return "";
+            }
+            position = matcher.end();
+        }
+
+        StringBuilder text = new StringBuilder();
+        while (position < buffer.length()) {
+            char c = buffer.charAt(position);
+            if (c == '"') {
+                complete = true;
+                break;
+            }
+            if (c != '\\') {
+                text.append(c);
+                position++;
+                continue;
+            }
+            // Escape sequence: wait for the next chunk if it is cut
+            if (position + 1 >= buffer.length()) {
+                break;
+            }
+            char escaped = buffer.charAt(position + 1);
+            if (escaped == 'u') {
+                if (position + 6 > buffer.length()) {
+                    break;
+                }
+                text.append((char) Integer.parseInt(buffer.substring(position + 2, position + 6), 16));
+                position += 6;
+            } else {
+                text.append(switch (escaped) {
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    case 't' -> '\t';
+                    case 'b' -> '\b';
+                    case 'f' -> '\f';
+                    default -> escaped;
+                });
+                position += 2;
+            }
+        }
+        return text.toString();
+    }
+}
@@ -1,45 +1,329 @@
 package com.mizan.almizan.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mizan.almizan.config.AppThreads;
 import com.mizan.almizan.dto.AiAdviceDTO;
 import com.mizan.almizan.dto.BalanceDTO;
+import com.mizan.almizan.entity.AdviceCorpusEntry;
+import com.mizan.almizan.repository.AdviceCorpusRepository;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
 public class AiAdviceService {
 
     private final ChatClient chatClient;
-    private final Timer aiResponseTimer;
+    private final AdviceCorpusRepository adviceCorpusRepository;
+    private final Cache<AdviceKey, Variants> adviceCache;
+    private final boolean cacheEnabled;
+    private final long maxSize;
+    private final boolean corpusEnabled;
+    private final ExecutorService corpusWriter;
+    private final int variantsPerKey;
+    private final Duration deadline;
+    private final ThreadPoolExecutor adviceExecutor;
+    private final ConcurrentHashMap<AdviceKey, CompletableFuture<AiAdviceDTO>> inFlight = new ConcurrentHashMap<>();
+    private final Timer modelTimer;
+    private final Timer cacheTimer;
+    private final Timer fallbackTimer;
+    private final Timer savedTimer;
+    private final Counter sharedCounter;
+    private final Timer firstTokenTimer;
+    private final Timer streamTimer;
 
-    public AiAdviceService(ChatClient.Builder chatClientBuilder, MeterRegistry meterRegistry) {
+    public AiAdviceService(ChatClient.Builder chatClientBuilder,
+                           AdviceCorpusRepository adviceCorpusRepository,
+                           AppThreads appThreads,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.ai.advice-cache.enabled:true}") boolean cacheEnabled,
+                           @Value("${app.ai.advice-cache.max-size:1000}") long maxSize,
+                           @Value("${app.ai.advice-cache.ttl:12h}") Duration ttl,
+                           @Value("${app.ai.advice-cache.variants:3}") int variantsPerKey,
+                           @Value("${app.ai.executor.max-concurrent:8}") int maxConcurrent,
+                           @Value("${app.ai.executor.queue-capacity:100}") int queueCapacity,
+                           @Value("${app.ai.executor.deadline:5s}") Duration deadline,
+                           @Value("${app.ai.corpus.enabled:true}") boolean corpusEnabled) {
         this.chatClient = chatClientBuilder.build();
-        this.aiResponseTimer = Timer.builder("mizan.ai.response.time")
-                .description("Time taken for AI advice generation")
+        this.adviceCorpusRepository = adviceCorpusRepository;
+        this.cacheEnabled = cacheEnabled;
+        this.maxSize = maxSize;
+        this.corpusEnabled = cacheEnabled && corpusEnabled;
+        this.corpusWriter = Executors.newSingleThreadExecutor(appThreads.daemonFactory("advice-corpus"));
+        this.variantsPerKey = Math.max(variantsPerKey, 1);
+        this.deadline = deadline;
+        this.adviceCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, adviceCache, "mizan.ai.advice");
+
+        // Bulkhead: model calls never run on servlet threads, and at most queue-capacity wait for a slot
+        this.adviceExecutor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), appThreads.factory("ai-advice-"));
+        this.adviceExecutor.allowCoreThreadTimeOut(true);
+        ExecutorServiceMetrics.monitor(meterRegistry, adviceExecutor, "mizan.ai.executor");
+
+        // source=model|cache|fallback: the cache hit ratio is cache / (model + cache + fallback)
+        this.modelTimer = responseTimer(meterRegistry, "model");
+        this.cacheTimer = responseTimer(meterRegistry, "cache");
+        this.fallbackTimer = responseTimer(meterRegistry, "fallback");
+        this.savedTimer = Timer.builder("mizan.ai.response.time.saved")
+                .description("Model latency avoided by serving cached advice")
+                .register(meterRegistry);
+        this.sharedCounter = Counter.builder("mizan.ai.singleflight.shared")
+                .description("Advice requests that joined an identical in-flight model call")
+                .register(meterRegistry);
+        this.firstTokenTimer = Timer.builder("mizan.ai.stream.first-token")
+                .description("Time until the first streamed token of AI advice")
+                .register(meterRegistry);
+        this.streamTimer = Timer.builder("mizan.ai.stream.duration")
+                .description("Total duration of streamed AI advice")
                 .register(meterRegistry);
     }
 
-    public AiAdviceDTO generateAdvice(BalanceDTO balance, String lang) {
-        return aiResponseTimer.record(() -> {
-            String prompt = buildPrompt(balance, lang);
+    /**
+     * The prompt depends only on the day's totals, verdict and language, so advice is cached
+     * on that tuple. Up to {@code variants} answers are generated per key, then served in rotation.
+     * On a miss, concurrent requests for the same key share one model call on the advice executor;
+     * each caller gets the fallback if the call fails, is rejected, misses the deadline or returns
+     * an unparseable answer. Fallback answers are never cached. Generated answers are also stored in the advice corpus,
+     * which refills the cache on a miss and after a restart.
+     */
+    public CompletableFuture<AiAdviceDTO> generateAdvice(BalanceDTO balance, String lang) {
+        long start = System.nanoTime();
+        AdviceKey key = AdviceKey.of(balance, lang);
+        Variants variants = cacheEnabled ? adviceCache.get(key, this::loadVariants) : null;
+
+        if (variants != null && variants.size() >= variantsPerKey) {
+            Variant cached = variants.next();
+            cacheTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            savedTimer.record(cached.generationNanos(), TimeUnit.NANOSECONDS);
+            return CompletableFuture.completedFuture(cached.advice());
+        }
 
+        CompletableFuture<AiAdviceDTO> created = new CompletableFuture<>();
+        CompletableFuture<AiAdviceDTO> call = inFlight.putIfAbsent(key, created);
+        if (call == null) {
+            call = created;
+            submit(key, balance, variants, created);
+        } else {
+            sharedCounter.increment();
+        }
+        // copy(): a caller's deadline must not complete the call shared with the others
+        return call.copy()
+                .orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> fallback(key, start, e));
+    }
+
+    /**
+     * Streaming variant: {@link AdviceEvent#delta} events carry the advice text as it is generated,
+     * then one final event carries the parsed advice. Cached advice is served as the final event alone.
+     * The fallback becomes the final event if the model fails, stays silent for the deadline or
+     * answers something that does not parse; clients replace the streamed text with the final event.
+     */
+    public Flux<AdviceEvent> streamAdvice(BalanceDTO balance, String lang) {
+        AdviceKey key = AdviceKey.of(balance, lang);
+        Variants variants = cacheEnabled ? adviceCache.get(key, this::loadVariants) : null;
+        if (variants != null && variants.size() >= variantsPerKey) {
+            Variant cached = variants.next();
+            savedTimer.record(cached.generationNanos(), TimeUnit.NANOSECONDS);
+            return Flux.just(AdviceEvent.complete(cached.advice()));
+        }
+
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean(true);
+            StringBuilder response = new StringBuilder();
+            AdviceTextExtractor extractor = new AdviceTextExtractor();
+
+            Flux<AdviceEvent> deltas = chatClient.prompt()
+                    .user(buildPrompt(balance, key.lang()))
+                    .stream()
+                    .content()
+                    .timeout(deadline)
+                    .doOnNext(chunk -> {
+                        if (firstToken.getAndSet(false)) {
+                            firstTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                        response.append(chunk);
+                    })
+                    .map(extractor::append)
+                    .filter(text -> !text.isEmpty())
+                    .map(AdviceEvent::delta);
+
+            Mono<AdviceEvent> complete = Mono.fromSupplier(() -> {
+                AiAdviceDTO advice = parseResponse(response.toString());
+                long elapsed = System.nanoTime() - start;
+                streamTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                if (variants != null) {
+                    store(key, variants, new Variant(advice, elapsed));
+                }
+                return AdviceEvent.complete(advice);
+            });
+
+            return deltas.concatWith(complete).onErrorResume(e -> {
+                log.error("Error streaming OpenAI advice: {}", e.toString());
+                fallbackTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return Flux.just(AdviceEvent.complete(getFallback(key.lang())));
+            });
+        });
+    }
+
+    private void submit(AdviceKey key, BalanceDTO balance, Variants variants, CompletableFuture<AiAdviceDTO> call) {
+        try {
+            adviceExecutor.execute(() -> {
+                AiAdviceDTO advice;
+                try {
+                    advice = callModel(key, balance, variants);
+                } catch (Exception e) {
+                    log.error("Error calling OpenAI API: {}", e.getMessage());
+                    inFlight.remove(key, call);
+                    call.completeExceptionally(e);
+                    return;
+                }
+                // Leave the map first: later requests must see the cache, not a finished call
+                inFlight.remove(key, call);
+                call.complete(advice);
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, call);
+            call.completeExceptionally(e);
+        }
+    }
+
+    private AiAdviceDTO callModel(AdviceKey key, BalanceDTO balance, Variants variants) {
+        long start = System.nanoTime();
+        String response = chatClient.prompt()
+                .user(buildPrompt(balance, key.lang()))
+                .call()
+                .content();
+        AiAdviceDTO advice = parseResponse(response);
+        long elapsed = System.nanoTime() - start;
+        modelTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        if (variants != null) {
+            // Cached even if the callers already timed out: the next request gets it
+            store(key, variants, new Variant(advice, elapsed));
+        }
+        return advice;
+    }
+
+    /**
+     * Generate the missing variants of the inputs on the calling thread, for the pre-generation job.
+     *
+     * @return the number of model calls made
+     */
+    public int pregenerate(BalanceDTO balance, String lang) {
+        if (!corpusEnabled) {
+            return 0;
+        }
+        AdviceKey key = AdviceKey.of(balance, lang);
+        Variants variants = adviceCache.get(key, this::loadVariants);
+        int calls = 0;
+        while (variants.size() < variantsPerKey) {
+            callModel(key, balance, variants);
+            calls++;
+        }
+        return calls;
+    }
+
+    /**
+     * Warm start: the most recent corpus entries, up to the cache size, are loaded into the cache.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadCorpus() {
+        if (!corpusEnabled) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        int limit = (int) Math.min(maxSize * variantsPerKey, Integer.MAX_VALUE);
+        Map<AdviceKey, Variants> loaded = new LinkedHashMap<>();
+        for (AdviceCorpusEntry entry : adviceCorpusRepository.findByOrderByCreatedAtDesc(PageRequest.of(0, limit))) {
+            loaded.computeIfAbsent(AdviceKey.of(entry), k -> new Variants()).add(Variant.of(entry), variantsPerKey);
+        }
+        loaded.entrySet().stream().limit(maxSize)
+                .forEach(e -> adviceCache.asMap().putIfAbsent(e.getKey(), e.getValue()));
+        log.info("AI advice corpus: {} key(s) loaded in {} ms", loaded.size(), System.currentTimeMillis() - started);
+    }
+
+    private Variants loadVariants(AdviceKey key) {
+        Variants variants = new Variants();
+        if (corpusEnabled) {
+            try {
+                adviceCorpusRepository.findByGoodCountAndGoodWeightAndBadCountAndBadWeightAndVerdictAndLangOrderByVariant(
+                                key.goodCount(), key.goodWeight(), key.badCount(), key.badWeight(), key.verdict(), key.lang())
+                        .forEach(entry -> variants.add(Variant.of(entry), variantsPerKey));
+            } catch (RuntimeException e) {
+                log.warn("Could not read the AI advice corpus: {}", e.getMessage());
+            }
+        }
+        return variants;
+    }
+
+    private void store(AdviceKey key, Variants variants, Variant variant) {
+        int index = variants.add(variant, variantsPerKey);
+        if (index < 0 || !corpusEnabled) {
+            return;
+        }
+        // Off the request path; a lost write only costs one more model call after a restart
+        corpusWriter.execute(() -> {
             try {
-                String response = chatClient.prompt()
-                        .user(prompt)
-                        .call()
-                        .content();
-
-                return parseResponse(response);
-            } catch (Exception e) {
-                log.error("Error calling OpenAI API: {}", e.getMessage());
-                return getFallback(lang);
+                adviceCorpusRepository.insertIfAbsent(variant.toEntry(key, index));
+            } catch (RuntimeException e) {
+                log.warn("Could not store AI advice in the corpus: {}", e.getMessage());
             }
         });
     }
 
+    private AiAdviceDTO fallback(AdviceKey key, long start, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            log.warn("AI advice deadline of {} exceeded, serving fallback", deadline);
+        } else if (cause instanceof RejectedExecutionException) {
+            log.warn("AI advice executor saturated, serving fallback");
+        }
+        fallbackTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return getFallback(key.lang());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        adviceExecutor.shutdownNow();
+        corpusWriter.shutdown();
+        corpusWriter.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static Timer responseTimer(MeterRegistry meterRegistry, String source) {
+        return Timer.builder("mizan.ai.response.time")
+                .description("Time taken for AI advice generation")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
     private String buildPrompt(BalanceDTO balance, String lang) {
         String langInstruction = switch (lang) {
             case "en" -> "Give your advice in English";
@@ -86,18 +370,113 @@ public class AiAdviceService {
         };
     }
 
+    /**
+     * A response that is not the requested JSON counts as a failed model call: the caller serves
+     * the fallback and nothing is cached or stored.
+     */
     private AiAdviceDTO parseResponse(String response) {
+        AiAdviceDTO advice;
         try {
             String cleaned = response.replaceAll("```json|```", "").trim();
             var mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            return mapper.readValue(cleaned, AiAdviceDTO.class);
+            advice = mapper.readValue(cleaned, AiAdviceDTO.class);
         } catch (Exception e) {
-            log.warn("Could not parse AI response, returning raw: {}", e.getMessage());
-            return AiAdviceDTO.builder()
-                    .advice(response)
-                    .encouragement("")
-                    .hadithReference("")
+            log.warn("Could not parse AI response: {}", e.getMessage());
+            throw new RuntimeException("Unparseable AI response", e);
+        }
+        if (advice == null || advice.getAdvice() == null || advice.getAdvice().isBlank()) {
+            log.warn("AI response has no advice");
+            throw new RuntimeException("AI response has no advice");
+        }
+        return advice;
+    }
+
+    /**
+     * Normalized prompt inputs; unknown languages fall back to French like the prompt does.
+     */
+    private record AdviceKey(int goodCount, int goodWeight, int badCount, int badWeight, String verdict, String lang) {
+
+        static AdviceKey of(BalanceDTO balance, String lang) {
+            return new AdviceKey(
+                    valueOf(balance.getGoodCount()), valueOf(balance.getGoodWeight()),
+                    valueOf(balance.getBadCount()), valueOf(balance.getBadWeight()),
+                    balance.getVerdict(),
+                    "en".equals(lang) || "ar".equals(lang) ? lang : "fr");
+        }
+
+        static AdviceKey of(AdviceCorpusEntry entry) {
+            return new AdviceKey(entry.getGoodCount(), entry.getGoodWeight(),
+                    entry.getBadCount(), entry.getBadWeight(), entry.getVerdict(), entry.getLang());
+        }
+
+        private static int valueOf(Integer value) {
+            return value != null ? value : 0;
+        }
+    }
+
+    /**
+     * One event of a streamed advice: a piece of advice text, or the final parsed advice.
+     */
+    public record AdviceEvent(String delta, AiAdviceDTO advice) {
+
+        static AdviceEvent delta(String text) {
+            return new AdviceEvent(text, null);
+        }
+
+        static AdviceEvent complete(AiAdviceDTO advice) {
+            return new AdviceEvent(null, advice);
+        }
+    }
+
+    private record Variant(AiAdviceDTO advice, long generationNanos) {
+
+        static Variant of(AdviceCorpusEntry entry) {
+            AiAdviceDTO advice = AiAdviceDTO.builder()
+                    .advice(entry.getAdvice())
+                    .encouragement(entry.getEncouragement())
+                    .hadithReference(entry.getHadithReference())
+                    .build();
+            return new Variant(advice, TimeUnit.MILLISECONDS.toNanos(entry.getGenerationMs()));
+        }
+
+        AdviceCorpusEntry toEntry(AdviceKey key, int index) {
+            return AdviceCorpusEntry.builder()
+                    .goodCount(key.goodCount())
+                    .goodWeight(key.goodWeight())
+                    .badCount(key.badCount())
+                    .badWeight(key.badWeight())
+                    .verdict(key.verdict())
+                    .lang(key.lang())
+                    .variant(index)
+                    .advice(Objects.requireNonNullElse(advice.getAdvice(), ""))
+                    .encouragement(Objects.requireNonNullElse(advice.getEncouragement(), ""))
+                    .hadithReference(Objects.requireNonNullElse(advice.getHadithReference(), ""))
+                    .generationMs((int) TimeUnit.NANOSECONDS.toMillis(generationNanos))
                     .build();
         }
     }
-}
\ No newline at end of file
+
+    private static class Variants {
+        private final List<Variant> variants = new CopyOnWriteArrayList<>();
+        private final AtomicInteger served = new AtomicInteger();
+
+        int size() {
+            return variants.size();
+        }
+
+        /**
+         * @return the index of the added variant, or -1 if there were already {@code max}
+         */
+        synchronized int add(Variant variant, int max) {
+            if (variants.size() >= max) {
+                return -1;
+            }
+            variants.add(variant);
+            return variants.size() - 1;
+        }
+
+        Variant next() {
+            return variants.get(Math.floorMod(served.getAndIncrement(), variants.size()));
+        }
+    }
+}
@@ -6,11 +6,14 @@ import com.mizan.almizan.repository.UserRepository;
 import com.mizan.almizan.security.JwtUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.Locale;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -21,24 +24,24 @@ public class AuthService {
     private final JwtUtils jwtUtils;
     private final AuthenticationManager authenticationManager;
 
+    /**
+     * One INSERT: duplicates are reported by the unique constraints rather than checked beforehand.
+     */
     public AuthDTO.AuthResponse register(AuthDTO.RegisterRequest request) {
-        if (userRepository.existsByUsername(request.getUsername())) {
-            throw new RuntimeException("Username already exists");
-        }
-        if (userRepository.existsByEmail(request.getEmail())) {
-            throw new RuntimeException("Email already exists");
-        }
-
         AppUser user = AppUser.builder()
                 .username(request.getUsername())
                 .email(request.getEmail())
                 .password(passwordEncoder.encode(request.getPassword()))
                 .build();
 
-        userRepository.save(user);
+        try {
+            user = userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            throw duplicateUser(e);
+        }
         log.info("New user registered: {}", user.getUsername());
 
-        String token = jwtUtils.generateToken(user.getUsername());
+        String token = jwtUtils.generateToken(user.getId(), user.getUsername());
         return AuthDTO.AuthResponse.builder()
                 .token(token)
                 .username(user.getUsername())
@@ -46,6 +49,21 @@ public class AuthService {
                 .build();
     }
 
+    /**
+     * Map a unique violation on app_users to the message of the violated column. Matches the
+     * PostgreSQL constraint name (app_users_username_key) or the H2 index definition (APP_USERS(USERNAME ...).
+     */
+    private static RuntimeException duplicateUser(DataIntegrityViolationException e) {
+        String message = String.valueOf(e.getMostSpecificCause().getMessage()).toLowerCase(Locale.ROOT);
+        if (message.contains("app_users_username_key") || message.contains("app_users(username")) {
+            return new RuntimeException("Username already exists");
+        }
+        if (message.contains("app_users_email_key") || message.contains("app_users(email")) {
+            return new RuntimeException("Email already exists");
+        }
+        return e;
+    }
+
     public AuthDTO.AuthResponse login(AuthDTO.LoginRequest request) {
         authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword()));
@@ -53,7 +71,7 @@ public class AuthService {
         AppUser user = userRepository.findByUsername(request.getUsername())
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        String token = jwtUtils.generateToken(user.getUsername());
+        String token = jwtUtils.generateToken(user.getId(), user.getUsername());
         return AuthDTO.AuthResponse.builder()
                 .token(token)
                 .username(user.getUsername())
@@ -0,0 +1,32 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceTotals;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Published whenever a day's stored balance changes (toggle, write-behind flush, reconciliation).
+ * {@code categoryChanges} holds the signed change per action category when checked actions changed
+ * and {@code actionChanges} +1 per action that became checked, -1 per action that was unchecked (both
+ * empty when only the stored totals were repaired). In-memory listeners should react after commit.
+ */
+public record BalanceChangedEvent(Long userId, LocalDate date, BalanceTotals previous, BalanceTotals current,
+                                  Map<String, BalanceTotals> categoryChanges, Map<Long, Integer> actionChanges) {
+
+    public BalanceChangedEvent(Long userId, LocalDate date, BalanceTotals previous, BalanceTotals current) {
+        this(userId, date, previous, current, Map.of(), Map.of());
+    }
+
+    /**
+     * Signed change per action between two sets of checked actions; unchanged actions are left out.
+     */
+    public static Map<Long, Integer> actionChanges(Collection<Long> before, Collection<Long> after) {
+        Map<Long, Integer> changes = new HashMap<>();
+        after.stream().filter(actionId -> !before.contains(actionId)).forEach(actionId -> changes.put(actionId, 1));
+        before.stream().filter(actionId -> !after.contains(actionId)).forEach(actionId -> changes.put(actionId, -1));
+        return changes;
+    }
+}
@@ -0,0 +1,233 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.config.AppThreads;
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.BalanceRollup.PeriodType;
+import com.mizan.almizan.repository.BalanceRollupRepository;
+import com.mizan.almizan.repository.BalanceRollupRepositoryCustom.CategoryDelta;
+import com.mizan.almizan.repository.CategoryRollupRepository;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import com.mizan.almizan.repository.DailyBalanceRepositoryCustom.Drift;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that the delta-maintained daily_balances still match a full recompute
+ * of the checked actions, and repairs the days that drifted along with their
+ * weekly and monthly category rollups.
+ * <p>
+ * Stored days are weighted with the catalog of their last write. When a catalog refresh changes an
+ * action's type or weight, every stored day is re-derived with the new catalog, off the request path.
+ */
+@Component
+@Slf4j
+public class BalanceReconciler {
+
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final BalanceRollupRepository balanceRollupRepository;
+    private final CategoryRollupRepository categoryRollupRepository;
+    private final CheckedActionStore checkedActionStore;
+    private final ActionCatalog actionCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int lookbackDays;
+    private final Counter driftCounter;
+    private final ExecutorService rederiveExecutor;
+
+    public BalanceReconciler(DailyBalanceRepository dailyBalanceRepository,
+                             BalanceRollupRepository balanceRollupRepository,
+                             CategoryRollupRepository categoryRollupRepository,
+                             CheckedActionStore checkedActionStore,
+                             ActionCatalog actionCatalog,
+                             ApplicationEventPublisher eventPublisher,
+                             TransactionTemplate transactionTemplate,
+                             AppThreads appThreads,
+                             @Value("${app.balance.reconcile.lookback-days:7}") int lookbackDays,
+                             MeterRegistry meterRegistry) {
+        this.dailyBalanceRepository = dailyBalanceRepository;
+        this.balanceRollupRepository = balanceRollupRepository;
+        this.categoryRollupRepository = categoryRollupRepository;
+        this.checkedActionStore = checkedActionStore;
+        this.actionCatalog = actionCatalog;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.lookbackDays = lookbackDays;
+        this.driftCounter = Counter.builder("mizan.balance.reconcile.drift")
+                .description("Daily balances repaired by the reconciliation job")
+                .register(meterRegistry);
+        this.rederiveExecutor = Executors.newSingleThreadExecutor(appThreads.daemonFactory("balance-rederive"));
+    }
+
+    @Scheduled(cron = "${app.balance.reconcile.cron:0 30 3 * * *}")
+    public void reconcileRecent() {
+        LocalDate today = LocalDate.now();
+        reconcile(today.minusDays(lookbackDays), today);
+    }
+
+    /**
+     * Recompute the days in the range and overwrite those that drifted. The repair events bring the
+     * balance rollups, caches and streaks in line; the category rollups are recomputed directly.
+     *
+     * @return the number of repaired days
+     */
+    @Transactional
+    public int reconcile(LocalDate from, LocalDate to) {
+        int repaired = repair(from, to, true);
+        driftCounter.increment(repaired);
+        log.info("Balance reconciliation {}..{}: {} day(s) repaired", from, to, repaired);
+        return repaired;
+    }
+
+    @EventListener
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (event.totalsChanged()) {
+            // Runs are queued: a change made during a run gets a run of its own
+            rederiveExecutor.execute(() -> {
+                try {
+                    rederive();
+                } catch (RuntimeException e) {
+                    log.error("Re-deriving balances after a catalog change failed: {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Re-derive every stored day with the current catalog. Each month is scanned without locks,
+     * then its stale days are locked and rewritten user by user, one short transaction per user,
+     * so that toggles only wait for the days being rewritten.
+     *
+     * @return the number of rewritten days
+     */
+    public int rederive() {
+        LocalDate oldest = dailyBalanceRepository.findMinBalanceDate();
+        if (oldest == null) {
+            return 0;
+        }
+        long started = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        int rewritten = 0;
+        for (LocalDate from = oldest; !from.isAfter(today); from = from.plusMonths(1)) {
+            Map<Long, List<LocalDate>> suspects = findSuspects(from, from.plusMonths(1).minusDays(1));
+            for (Map.Entry<Long, List<LocalDate>> user : suspects.entrySet()) {
+                rewritten += transactionTemplate.execute(status -> {
+                    List<Drift> drifts = repairUser(user.getKey(), user.getValue(), actionCatalog.snapshot(), false);
+                    repairCategoryRollups(drifts);
+                    return drifts.size();
+                });
+            }
+        }
+        log.info("Balances re-derived with catalog version {} since {}: {} day(s) rewritten in {} ms",
+                actionCatalog.snapshot().version(), oldest, rewritten, System.currentTimeMillis() - started);
+        return rewritten;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rederiveExecutor.shutdownNow();
+    }
+
+    private int repair(LocalDate from, LocalDate to, boolean unexpected) {
+        ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+        List<Drift> drifts = new ArrayList<>();
+        findSuspects(from, to).forEach((userId, dates) -> drifts.addAll(repairUser(userId, dates, catalog, unexpected)));
+        repairCategoryRollups(drifts);
+        return drifts.size();
+    }
+
+    /**
+     * Days in the range that drifted, by user in id order. The scan reads without locks: a day may
+     * have been written since, see {@link #repairUser}.
+     */
+    private Map<Long, List<LocalDate>> findSuspects(LocalDate from, LocalDate to) {
+        Map<Long, List<LocalDate>> suspects = new TreeMap<>();
+        for (Drift drift : checkedActionStore.findDrift(from, to)) {
+            suspects.computeIfAbsent(drift.userId(), userId -> new ArrayList<>()).add(drift.date());
+        }
+        return suspects;
+    }
+
+    /**
+     * Lock the user's suspect days (in date order, like the toggles), read them again and overwrite
+     * those that still differ, so a toggle committed since the scan is not lost and the repair events
+     * carry the totals that were actually replaced. A toggle still in flight waits for the lock and
+     * then applies its delta on top of the repaired day.
+     */
+    private List<Drift> repairUser(Long userId, List<LocalDate> dates, ActionCatalog.Snapshot catalog,
+                                   boolean unexpected) {
+        Map<LocalDate, BalanceTotals> stored = dailyBalanceRepository.lockTotals(userId, dates);
+        Map<LocalDate, Set<Long>> checked = checkedActionStore.checkedActionIds(userId, dates);
+        List<Drift> drifts = new ArrayList<>();
+        for (LocalDate date : dates) {
+            BalanceTotals current = stored.getOrDefault(date, BalanceTotals.EMPTY);
+            BalanceTotals expected = catalog.totalsOf(checked.getOrDefault(date, Set.of()));
+            if (current.equals(expected)) {
+                continue;
+            }
+            if (unexpected) {
+                log.warn("Balance drift for user {} on {}: stored {} expected {}", userId, date, current, expected);
+            }
+            dailyBalanceRepository.upsertTotals(userId, date, expected);
+            eventPublisher.publishEvent(new BalanceChangedEvent(userId, date, current, expected));
+            drifts.add(new Drift(userId, date, current, expected));
+        }
+        return drifts;
+    }
+
+    /**
+     * The category rollups went through the same missed or doubled changes as the drifted days, but
+     * their share of each day is not stored: the categories of every affected week and month are
+     * recomputed from the checked actions, and the difference with the stored rows added to them.
+     */
+    private void repairCategoryRollups(List<Drift> drifts) {
+        Set<Period> periods = new LinkedHashSet<>();
+        for (Drift drift : drifts) {
+            for (PeriodType periodType : PeriodType.values()) {
+                periods.add(new Period(drift.userId(), periodType, periodType.startOf(drift.date())));
+            }
+        }
+        ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+        List<CategoryDelta> deltas = new ArrayList<>();
+        for (Period period : periods) {
+            LocalDate end = period.periodType().endOf(period.start());
+            Map<String, BalanceTotals> expected = new HashMap<>();
+            checkedActionStore.checkedActionIds(period.userId(), period.start().datesUntil(end.plusDays(1)).toList())
+                    .values().forEach(actionIds -> catalog.categoryChanges(Set.of(), actionIds)
+                            .forEach((category, totals) -> expected.merge(category, totals, BalanceTotals::plus)));
+
+            Map<String, BalanceTotals> stored = new HashMap<>();
+            categoryRollupRepository.findByUserIdAndPeriodTypeAndPeriodStartBetween(
+                            period.userId(), period.periodType(), period.start(), period.start())
+                    .forEach(rollup -> stored.put(rollup.getCategory(), new BalanceTotals(rollup.getGoodCount(),
+                            rollup.getBadCount(), rollup.getGoodWeight(), rollup.getBadWeight())));
+
+            Set<String> categories = new TreeSet<>(expected.keySet());
+            categories.addAll(stored.keySet());
+            for (String category : categories) {
+                BalanceTotals change = expected.getOrDefault(category, BalanceTotals.EMPTY)
+                        .minus(stored.getOrDefault(category, BalanceTotals.EMPTY));
+                if (!change.equals(BalanceTotals.EMPTY)) {
+                    deltas.add(new CategoryDelta(period.userId(), period.periodType(), period.start(), category, change));
+                }
+            }
+        }
+        balanceRollupRepository.addRollups(List.of(), deltas);
+    }
+
+    private record Period(Long userId, PeriodType periodType, LocalDate start) {
+    }
+}
@@ -0,0 +1,59 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.BalanceRollup.PeriodType;
+import com.mizan.almizan.entity.DailyBalance;
+import com.mizan.almizan.repository.BalanceRollupRepository;
+import com.mizan.almizan.repository.BalanceRollupRepositoryCustom.CategoryDelta;
+import com.mizan.almizan.repository.BalanceRollupRepositoryCustom.RollupDelta;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the weekly and monthly rollups in step with daily_balances: each balance change
+ * is added as a signed delta to the day's week and month, in the transaction of the change.
+ */
+@Component
+@RequiredArgsConstructor
+public class BalanceRollups {
+
+    private final BalanceRollupRepository balanceRollupRepository;
+
+    @EventListener
+    public void onBalanceChanged(BalanceChangedEvent event) {
+        BalanceTotals change = event.current().minus(event.previous());
+        int[] days = new int[DailyBalance.BalanceVerdict.values().length];
+        // Only days with at least one checked action count as positive, negative or neutral
+        if (!event.previous().equals(BalanceTotals.EMPTY)) {
+            days[event.previous().verdict().ordinal()]--;
+        }
+        if (!event.current().equals(BalanceTotals.EMPTY)) {
+            days[event.current().verdict().ordinal()]++;
+        }
+        boolean daysChanged = Arrays.stream(days).anyMatch(d -> d != 0);
+        if (change.equals(BalanceTotals.EMPTY) && !daysChanged && event.categoryChanges().isEmpty()) {
+            return;
+        }
+
+        List<RollupDelta> deltas = new ArrayList<>();
+        List<CategoryDelta> categoryDeltas = new ArrayList<>();
+        for (PeriodType periodType : PeriodType.values()) {
+            var periodStart = periodType.startOf(event.date());
+            deltas.add(new RollupDelta(event.userId(), periodType, periodStart, change,
+                    days[DailyBalance.BalanceVerdict.POSITIVE.ordinal()],
+                    days[DailyBalance.BalanceVerdict.NEGATIVE.ordinal()],
+                    days[DailyBalance.BalanceVerdict.NEUTRAL.ordinal()]));
+            for (Map.Entry<String, BalanceTotals> category : event.categoryChanges().entrySet()) {
+                categoryDeltas.add(new CategoryDelta(event.userId(), periodType, periodStart,
+                        category.getKey(), category.getValue()));
+            }
+        }
+        balanceRollupRepository.addRollups(deltas, categoryDeltas);
+    }
+}
@@ -1,39 +1,64 @@
 package com.mizan.almizan.service;
 
 import com.mizan.almizan.dto.BalanceDTO;
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.dto.BulkToggleRequest;
 import com.mizan.almizan.dto.CheckActionRequest;
-import com.mizan.almizan.entity.*;
-import com.mizan.almizan.repository.*;
+import com.mizan.almizan.dto.HistoryPageDTO;
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import com.mizan.almizan.repository.UserDailyActionRepositoryCustom.ActionState;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
-import java.util.List;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class BalanceService {
 
-    private final UserDailyActionRepository userDailyActionRepository;
-    private final ActionRepository actionRepository;
-    private final UserRepository userRepository;
+    private final CheckedActionStore checkedActionStore;
     private final DailyBalanceRepository dailyBalanceRepository;
+    private final ActionCatalog actionCatalog;
+    private final ToggleBuffer toggleBuffer;
+    private final DayStateCache dayStateCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int historyPageSize;
+    private final int historyMaxPageSize;
+    private final int historyFetchSize;
+    private final int bulkMaxItems;
     private final Counter goodActionCounter;
     private final Counter badActionCounter;
 
-    public BalanceService(UserDailyActionRepository userDailyActionRepository,
-                          ActionRepository actionRepository,
-                          UserRepository userRepository,
+    public BalanceService(CheckedActionStore checkedActionStore,
                           DailyBalanceRepository dailyBalanceRepository,
-                          MeterRegistry meterRegistry) {
-        this.userDailyActionRepository = userDailyActionRepository;
-        this.actionRepository = actionRepository;
-        this.userRepository = userRepository;
+                          ActionCatalog actionCatalog,
+                          ToggleBuffer toggleBuffer,
+                          DayStateCache dayStateCache,
+                          ApplicationEventPublisher eventPublisher,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.balance.history.page-size:30}") int historyPageSize,
+                          @Value("${app.balance.history.max-page-size:366}") int historyMaxPageSize,
+                          @Value("${app.balance.history.fetch-size:500}") int historyFetchSize,
+                          @Value("${app.balance.bulk.max-items:500}") int bulkMaxItems) {
+        this.checkedActionStore = checkedActionStore;
         this.dailyBalanceRepository = dailyBalanceRepository;
+        this.actionCatalog = actionCatalog;
+        this.toggleBuffer = toggleBuffer;
+        this.dayStateCache = dayStateCache;
+        this.eventPublisher = eventPublisher;
+        this.historyPageSize = historyPageSize;
+        this.historyMaxPageSize = historyMaxPageSize;
+        this.historyFetchSize = historyFetchSize;
+        this.bulkMaxItems = bulkMaxItems;
 
         // Custom Prometheus metrics
         this.goodActionCounter = Counter.builder("mizan.actions.good")
@@ -47,49 +72,163 @@ public class BalanceService {
     @Transactional
     public BalanceDTO toggleAction(Long userId, CheckActionRequest request) {
         LocalDate date = request.getDate() != null ? request.getDate() : LocalDate.now();
+        if (toggleBuffer.isEnabled()) {
+            return bufferToggle(userId, date, request);
+        }
 
-        AppUser user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        Action action = actionRepository.findById(request.getActionId())
+        Action action = actionCatalog.find(request.getActionId())
                 .orElseThrow(() -> new RuntimeException("Action not found"));
+        boolean checked = Boolean.TRUE.equals(request.getChecked());
 
-        var existing = userDailyActionRepository
-                .findByUserIdAndActionIdAndActionDate(userId, request.getActionId(), date);
-
-        if (existing.isPresent()) {
-            if (Boolean.FALSE.equals(request.getChecked())) {
-                userDailyActionRepository.delete(existing.get());
-                log.info("User {} unchecked action {} on {}", userId, action.getNameFr(), date);
-            } else {
-                existing.get().setChecked(request.getChecked());
-                userDailyActionRepository.save(existing.get());
-            }
-        } else if (Boolean.TRUE.equals(request.getChecked())) {
-            UserDailyAction uda = UserDailyAction.builder()
-                    .user(user)
-                    .action(action)
-                    .actionDate(date)
-                    .checked(true)
-                    .build();
-            userDailyActionRepository.save(uda);
+        // +1 when the action becomes checked, -1 when it is unchecked, 0 when nothing changes
+        int delta = checkedActionStore.setChecked(userId, action, date, checked);
+        if (delta > 0) {
             log.info("User {} checked action {} on {}", userId, action.getNameFr(), date);
+            countChecked(action);
+        } else if (delta < 0) {
+            log.info("User {} unchecked action {} on {}", userId, action.getNameFr(), date);
+        }
+
+        if (delta == 0) {
+            return getBalance(userId, date);
+        }
+        // O(1): one atomic upsert of the signed delta instead of a full recompute
+        BalanceTotals change = BalanceTotals.of(action, delta);
+        BalanceTotals updated = dailyBalanceRepository.applyDelta(userId, date, change);
+        eventPublisher.publishEvent(new BalanceChangedEvent(userId, date, updated.minus(change), updated,
+                Map.of(ActionCatalog.categoryOf(action), change), Map.of(action.getId(), delta)));
+        return updated.toDto(date);
+    }
+
+    /**
+     * Apply many toggles in one transaction: the affected days are read in one query, the changes
+     * written as JDBC batches and each day's balance computed once from the catalog and stored in one batch.
+     * The days stay locked (their daily_balances rows, and masks in the bitmask format) from the read of
+     * their checked actions to the commit, so concurrent toggles of the same days are neither lost nor double-counted.
+     *
+     * @return the resulting balance of each affected day, oldest first
+     */
+    @Transactional
+    public List<BalanceDTO> toggleActions(Long userId, BulkToggleRequest request) {
+        List<CheckActionRequest> items = request.getItems();
+        if (items == null || items.isEmpty()) {
+            throw new RuntimeException("items must not be empty");
+        }
+        if (items.size() > bulkMaxItems) {
+            throw new RuntimeException("At most " + bulkMaxItems + " items per request");
+        }
+
+        // Final state of each (action, date), grouped by date
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, Map<Long, Boolean>> changes = new TreeMap<>();
+        for (CheckActionRequest item : items) {
+            Action action = Optional.ofNullable(item.getActionId())
+                    .flatMap(actionCatalog::find)
+                    .orElseThrow(() -> new RuntimeException("Action not found"));
+            LocalDate date = item.getDate() != null ? item.getDate() : today;
+            changes.computeIfAbsent(date, d -> new LinkedHashMap<>()).put(action.getId(), Boolean.TRUE.equals(item.getChecked()));
+        }
+        List<ActionState> states = new ArrayList<>();
+        changes.forEach((date, dayChanges) -> dayChanges.forEach((actionId, checked) ->
+                states.add(new ActionState(userId, actionId, date, checked))));
 
-            // Increment Prometheus counter
-            if (action.getType() == Action.ActionType.GOOD) {
-                goodActionCounter.increment();
-            } else {
-                badActionCounter.increment();
+        Map<LocalDate, Set<Long>> before;
+        if (toggleBuffer.isEnabled()) {
+            Map<LocalDate, Set<Long>> persisted = checkedActionStore.checkedActionIds(userId, changes.keySet());
+            before = new HashMap<>();
+            for (LocalDate date : changes.keySet()) {
+                before.put(date, toggleBuffer.applyPending(userId, date, persisted.getOrDefault(date, Set.of())));
             }
+            toggleBuffer.enqueue(userId, states);
+        } else {
+            before = checkedActionStore.applyUserStates(userId, states);
         }
 
-        return calculateBalance(userId, date);
+        ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+        Map<LocalDate, Set<Long>> after = new TreeMap<>();
+        Map<LocalDate, BalanceTotals> current = new TreeMap<>();
+        changes.forEach((date, dayChanges) -> {
+            Set<Long> checked = new HashSet<>(before.getOrDefault(date, Set.of()));
+            dayChanges.forEach((actionId, state) -> {
+                boolean changed = state ? checked.add(actionId) : checked.remove(actionId);
+                if (changed && state) {
+                    countChecked(catalog.action(actionId));
+                }
+            });
+            after.put(date, checked);
+            current.put(date, catalog.totalsOf(checked));
+        });
+
+        if (!toggleBuffer.isEnabled()) {
+            // Read under the store's day locks: these totals match the checked actions it read
+            Map<LocalDate, BalanceTotals> previous = dailyBalanceRepository.findTotals(userId, changes.keySet());
+            // Every day whose checked actions changed is rewritten, which also bumps its version
+            Map<LocalDate, BalanceTotals> updated = new TreeMap<>(current);
+            updated.keySet().removeIf(date -> after.get(date).equals(before.getOrDefault(date, Set.of())));
+            dailyBalanceRepository.upsertTotals(userId, updated);
+            current.forEach((date, totals) -> {
+                BalanceTotals was = previous.getOrDefault(date, BalanceTotals.EMPTY);
+                Set<Long> checkedBefore = before.getOrDefault(date, Set.of());
+                Map<String, BalanceTotals> categoryChanges = catalog.categoryChanges(checkedBefore, after.get(date));
+                if (!totals.equals(was) || !categoryChanges.isEmpty()) {
+                    eventPublisher.publishEvent(new BalanceChangedEvent(userId, date, was, totals, categoryChanges,
+                            BalanceChangedEvent.actionChanges(checkedBefore, after.get(date))));
+                }
+            });
+        }
+        log.info("User {} applied {} toggle(s) over {} day(s)", userId, states.size(), changes.size());
+        return current.entrySet().stream().map(e -> e.getValue().toDto(e.getKey())).toList();
     }
 
+    /**
+     * Write-behind toggle: the final state is queued and flushed in batches by {@link ToggleBuffer}.
+     * The returned balance already includes the user's pending toggles.
+     */
+    private BalanceDTO bufferToggle(Long userId, LocalDate date, CheckActionRequest request) {
+        Action action = actionCatalog.find(request.getActionId())
+                .orElseThrow(() -> new RuntimeException("Action not found"));
+        boolean checked = Boolean.TRUE.equals(request.getChecked());
+
+        Set<Long> before = toggleBuffer.applyPending(userId, date, checkedActionStore.checkedActionIds(userId, date));
+        toggleBuffer.enqueue(userId, List.of(new ActionState(userId, action.getId(), date, checked)));
+
+        Set<Long> after = new HashSet<>(before);
+        if (checked) {
+            after.add(action.getId());
+            if (!before.contains(action.getId())) {
+                countChecked(action);
+            }
+        } else {
+            after.remove(action.getId());
+        }
+        return actionCatalog.snapshot().totalsOf(after).toDto(date);
+    }
+
+    /**
+     * Read-only: serves the stored daily balance, or computes it in memory when the
+     * day has never been written. Only mutations persist daily_balances rows.
+     */
+    @Transactional(readOnly = true)
     public BalanceDTO getBalance(Long userId, LocalDate date) {
-        return calculateBalance(userId, date != null ? date : LocalDate.now());
+        LocalDate day = date != null ? date : LocalDate.now();
+        if (toggleBuffer.hasPending(userId, day)) {
+            // Read-your-writes: the stored row does not include toggles still in the buffer
+            Set<Long> checked = toggleBuffer.applyPending(userId, day, checkedActionStore.checkedActionIds(userId, day));
+            return actionCatalog.snapshot().totalsOf(checked).toDto(day);
+        }
+        // Every toggle rewrites the day's row, and a catalog change re-derives the stored rows
+        // in the background (BalanceReconciler): until then a row keeps its previous weights
+        return dailyBalanceRepository.findByUserIdAndBalanceDate(userId, day)
+                .map(BalanceDTO::from)
+                .orElseGet(() -> calculateBalance(userId, day).toDto(day));
     }
 
+    @Transactional(readOnly = true)
     public List<BalanceDTO> getHistory(Long userId, LocalDate startDate, LocalDate endDate) {
+        List<BalanceDTO> cached = dayStateCache.history(userId, startDate, endDate);
+        if (cached != null) {
+            return cached;
+        }
         return dailyBalanceRepository
                 .findByUserIdAndBalanceDateBetweenOrderByBalanceDateDesc(userId, startDate, endDate)
                 .stream()
@@ -97,63 +236,66 @@ public class BalanceService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Keyset pagination on balance_date (newest first): each page is one index range scan,
+     * however deep the client pages.
+     */
+    @Transactional(readOnly = true)
+    public HistoryPageDTO getHistoryPage(Long userId, LocalDate startDate, LocalDate endDate,
+                                         LocalDate before, Integer limit) {
+        checkHistoryRange(startDate, endDate);
+        int size = limit != null ? Math.min(Math.max(limit, 1), historyMaxPageSize) : historyPageSize;
+        LocalDate upper = before != null && before.isBefore(endDate.plusDays(1)) ? before : endDate.plusDays(1);
+
+        List<BalanceDTO> rows = dailyBalanceRepository.findHistoryPage(userId, startDate, upper, size + 1);
+        boolean hasMore = rows.size() > size;
+        List<BalanceDTO> items = hasMore ? rows.subList(0, size) : rows;
+        return HistoryPageDTO.builder()
+                .items(items)
+                .nextCursor(hasMore ? items.get(size - 1).getDate() : null)
+                .build();
+    }
+
+    /**
+     * Pass every balance of the range to the consumer, newest first, straight from a JDBC cursor.
+     */
+    @Transactional(readOnly = true)
+    public void streamHistory(Long userId, LocalDate startDate, LocalDate endDate, Consumer<BalanceDTO> consumer) {
+        checkHistoryRange(startDate, endDate);
+        dailyBalanceRepository.streamHistory(userId, startDate, endDate, historyFetchSize, consumer);
+    }
+
+    public void checkHistoryRange(LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new RuntimeException("startDate must not be after endDate");
+        }
+    }
+
+    @Transactional(readOnly = true)
     public List<BalanceDTO> getRecentHistory(Long userId) {
+        List<BalanceDTO> cached = dayStateCache.recent(userId, 30);
+        if (cached != null) {
+            return cached;
+        }
         return dailyBalanceRepository.findTop30ByUserIdOrderByBalanceDateDesc(userId)
                 .stream()
                 .map(BalanceDTO::from)
                 .collect(Collectors.toList());
     }
 
-    private BalanceDTO calculateBalance(Long userId, LocalDate date) {
-        List<UserDailyAction> actions = userDailyActionRepository.findByUserIdAndActionDate(userId, date);
-
-        int goodCount = 0, badCount = 0, goodWeight = 0, badWeight = 0;
-
-        for (UserDailyAction uda : actions) {
-            if (uda.getChecked()) {
-                if (uda.getAction().getType() == Action.ActionType.GOOD) {
-                    goodCount++;
-                    goodWeight += uda.getAction().getWeight();
-                } else {
-                    badCount++;
-                    badWeight += uda.getAction().getWeight();
-                }
-            }
-        }
+    /**
+     * Full recompute of the day from its checked actions (used for never-written days).
+     */
+    BalanceTotals calculateBalance(Long userId, LocalDate date) {
+        return checkedActionStore.totals(userId, date);
+    }
 
-        String verdict;
-        DailyBalance.BalanceVerdict verdictEnum;
-        if (goodWeight > badWeight) {
-            verdict = "POSITIVE";
-            verdictEnum = DailyBalance.BalanceVerdict.POSITIVE;
-        } else if (badWeight > goodWeight) {
-            verdict = "NEGATIVE";
-            verdictEnum = DailyBalance.BalanceVerdict.NEGATIVE;
+    private void countChecked(Action action) {
+        // Increment Prometheus counter
+        if (action.getType() == Action.ActionType.GOOD) {
+            goodActionCounter.increment();
         } else {
-            verdict = "NEUTRAL";
-            verdictEnum = DailyBalance.BalanceVerdict.NEUTRAL;
+            badActionCounter.increment();
         }
-
-        // Persist daily balance
-        DailyBalance balance = dailyBalanceRepository.findByUserIdAndBalanceDate(userId, date)
-                .orElse(DailyBalance.builder()
-                        .user(userRepository.getReferenceById(userId))
-                        .balanceDate(date)
-                        .build());
-        balance.setGoodCount(goodCount);
-        balance.setBadCount(badCount);
-        balance.setGoodWeight(goodWeight);
-        balance.setBadWeight(badWeight);
-        balance.setVerdict(verdictEnum);
-        dailyBalanceRepository.save(balance);
-
-        return BalanceDTO.builder()
-                .date(date)
-                .goodCount(goodCount)
-                .badCount(badCount)
-                .goodWeight(goodWeight)
-                .badWeight(badWeight)
-                .verdict(verdict)
-                .build();
     }
 }
@@ -0,0 +1,27 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.entity.Action;
+
+import java.util.Objects;
+
+/**
+ * Published when a refresh swaps the action catalog for a changed one (not on the first load).
+ */
+public record CatalogChangedEvent(ActionCatalog.Snapshot previous, ActionCatalog.Snapshot current) {
+
+    /**
+     * Whether a day's totals may differ under the new catalog: an action changed type or weight,
+     * or was removed.
+     */
+    public boolean totalsChanged() {
+        for (long id : previous.ids()) {
+            Action before = previous.action(id);
+            Action after = current.action(id);
+            if (after == null || before.getType() != after.getType()
+                    || !Objects.equals(before.getWeight(), after.getWeight())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
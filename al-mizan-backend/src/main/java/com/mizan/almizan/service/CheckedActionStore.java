@@ -0,0 +1,77 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.repository.DailyBalanceRepositoryCustom.Drift;
+import com.mizan.almizan.repository.UserDailyActionRepositoryCustom.ActionState;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Day-record format of the checked actions (app.balance.day-format):
+ * {@code rows} keeps one user_daily_actions row per checked action ({@link RowCheckedActionStore}),
+ * {@code bitmask} one user_day_masks row per user and day ({@link MaskCheckedActionStore}).
+ */
+public interface CheckedActionStore {
+
+    Set<Long> checkedActionIds(Long userId, LocalDate date);
+
+    /**
+     * Checked action ids of several days of one user, read in one query; days without any are absent.
+     */
+    Map<LocalDate, Set<Long>> checkedActionIds(Long userId, Collection<LocalDate> dates);
+
+    /**
+     * Set the checked state of one action.
+     *
+     * @return +1 if the action became checked, -1 if it became unchecked, 0 if nothing changed
+     */
+    int setChecked(Long userId, Action action, LocalDate date, boolean checked);
+
+    /**
+     * Bring many (user, action, date) entries to their final state in batches (write-behind flush).
+     */
+    void applyStates(Collection<ActionState> states);
+
+    /**
+     * Bring one user's (action, date) entries to their final state: the affected days are locked
+     * (their masks, or their daily_balances rows in the rows format) and read in one query,
+     * then written as JDBC batches.
+     *
+     * @return the checked action ids of each affected day before the changes (days without any are absent)
+     */
+    Map<LocalDate, Set<Long>> applyUserStates(Long userId, Collection<ActionState> states);
+
+    /**
+     * Full recompute of the day from its checked actions.
+     */
+    BalanceTotals totals(Long userId, LocalDate date);
+
+    /**
+     * Recompute the day and store it in daily_balances.
+     */
+    BalanceTotals recomputeBalance(Long userId, LocalDate date);
+
+    /**
+     * Days in the range whose stored balance differs from a full recompute.
+     */
+    List<Drift> findDrift(LocalDate from, LocalDate to);
+
+    /**
+     * Pass every day with checked actions of the users whose id is in [fromUserId, toUserId] to the consumer.
+     */
+    void forEachCheckedDay(long fromUserId, long toUserId, Consumer<CheckedDay> consumer);
+
+    /**
+     * Pass every user's day with checked actions dated in [from, to] to the consumer.
+     */
+    void forEachCheckedDayBetween(LocalDate from, LocalDate to, Consumer<CheckedDay> consumer);
+
+    record CheckedDay(Long userId, LocalDate date, Set<Long> actionIds) {
+    }
+}
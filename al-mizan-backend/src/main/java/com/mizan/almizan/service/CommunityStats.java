@@ -0,0 +1,342 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.dto.CommunityStatsDTO;
+import com.mizan.almizan.dto.CommunityStatsDTO.ActionCount;
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.entity.CommunityActionStats;
+import com.mizan.almizan.entity.CommunityDayStats;
+import com.mizan.almizan.entity.DailyBalance.BalanceVerdict;
+import com.mizan.almizan.repository.CommunityActionStatsRepository;
+import com.mizan.almizan.repository.CommunityDayStatsRepository;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Live community statistics of the last {@code days} days (app.community): users per day verdict
+ * and users per checked action, kept in {@link LongAdder}s updated from committed
+ * {@link BalanceChangedEvent}s. Reads only sum the counters of one day, never query the database.
+ * <p>
+ * The counters are written to community_day_stats / community_action_stats every
+ * {@code snapshot-interval-ms} and on shutdown, and reloaded on startup. Snapshots hold absolute
+ * values of this instance's counters: run it on a single instance.
+ * <p>
+ * {@link #reconcile()} recomputes the window from daily_balances and the checked actions and
+ * corrects counters that drifted (lost events, crash between snapshots). It runs on startup when
+ * no snapshot was loaded and every night ({@code reconcile-cron}).
+ */
+@Component
+@Slf4j
+public class CommunityStats {
+
+    private final CommunityDayStatsRepository dayStatsRepository;
+    private final CommunityActionStatsRepository actionStatsRepository;
+    private final ActionCatalog actionCatalog;
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final CheckedActionStore checkedActionStore;
+    private final int days;
+    private final int topK;
+    private final Map<LocalDate, DayCounters> counters = new ConcurrentHashMap<>();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final ReentrantLock reconcileLock = new ReentrantLock();
+    private boolean snapshotLoaded;
+
+    public CommunityStats(CommunityDayStatsRepository dayStatsRepository,
+                          CommunityActionStatsRepository actionStatsRepository,
+                          ActionCatalog actionCatalog,
+                          DailyBalanceRepository dailyBalanceRepository,
+                          CheckedActionStore checkedActionStore,
+                          @Value("${app.community.days:7}") int days,
+                          @Value("${app.community.top-k:5}") int topK) {
+        this.dayStatsRepository = dayStatsRepository;
+        this.actionStatsRepository = actionStatsRepository;
+        this.actionCatalog = actionCatalog;
+        this.dailyBalanceRepository = dailyBalanceRepository;
+        this.checkedActionStore = checkedActionStore;
+        this.days = days;
+        this.topK = topK;
+    }
+
+    @PostConstruct
+    void load() {
+        LocalDate first = firstDay();
+        for (CommunityDayStats stats : dayStatsRepository.findByStatDateGreaterThanEqual(first)) {
+            DayCounters day = counters.computeIfAbsent(stats.getStatDate(), d -> new DayCounters());
+            day.verdicts[BalanceVerdict.POSITIVE.ordinal()].add(stats.getPositiveUsers());
+            day.verdicts[BalanceVerdict.NEGATIVE.ordinal()].add(stats.getNegativeUsers());
+            day.verdicts[BalanceVerdict.NEUTRAL.ordinal()].add(stats.getNeutralUsers());
+        }
+        for (CommunityActionStats stats : actionStatsRepository.findByStatDateGreaterThanEqual(first)) {
+            counters.computeIfAbsent(stats.getStatDate(), d -> new DayCounters())
+                    .action(stats.getActionId()).add(stats.getCheckedCount());
+        }
+        snapshotLoaded = !counters.isEmpty();
+        log.info("Community stats: {} day(s) loaded", counters.size());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileIfNoSnapshot() {
+        if (!snapshotLoaded) {
+            scheduledReconcile();
+        }
+    }
+
+    @Scheduled(cron = "${app.community.reconcile-cron:0 45 3 * * *}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.error("Community stats reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recompute the counters of the kept window from the stored balances and checked actions, in one
+     * pass over each, and correct the days that differ. A day that receives events while it is read
+     * is left to the next run.
+     *
+     * @return the number of corrected days
+     */
+    public int reconcile() {
+        if (!reconcileLock.tryLock()) {
+            return 0;
+        }
+        try {
+            LocalDate first = firstDay();
+            LocalDate today = LocalDate.now();
+            Map<LocalDate, DayCounters> window = new TreeMap<>();
+            Map<LocalDate, Long> changes = new HashMap<>();
+            Map<LocalDate, long[]> sampledVerdicts = new HashMap<>();
+            Map<LocalDate, Map<Long, Long>> sampledActions = new HashMap<>();
+            for (LocalDate date = first; !date.isAfter(today); date = date.plusDays(1)) {
+                DayCounters day = counters.computeIfAbsent(date, d -> new DayCounters());
+                window.put(date, day);
+                changes.put(date, day.changes.get());
+                sampledVerdicts.put(date, day.verdictSums());
+                sampledActions.put(date, day.actionSums());
+            }
+
+            Map<LocalDate, long[]> verdicts = new HashMap<>();
+            Map<LocalDate, Map<Long, Long>> actions = new HashMap<>();
+            dailyBalanceRepository.forEachBalanceBetween(first, today, balance -> {
+                if (!balance.totals().equals(BalanceTotals.EMPTY)) {
+                    verdicts.computeIfAbsent(balance.date(), d -> new long[BalanceVerdict.values().length])
+                            [balance.totals().verdict().ordinal()]++;
+                }
+            });
+            checkedActionStore.forEachCheckedDayBetween(first, today, checked -> {
+                Map<Long, Long> dayActions = actions.computeIfAbsent(checked.date(), d -> new HashMap<>());
+                checked.actionIds().forEach(actionId -> dayActions.merge(actionId, 1L, Long::sum));
+            });
+
+            int corrected = 0;
+            for (Map.Entry<LocalDate, DayCounters> entry : window.entrySet()) {
+                LocalDate date = entry.getKey();
+                DayCounters day = entry.getValue();
+                if (day.changes.get() != changes.get(date)) {
+                    log.debug("Community stats of {} changed while reconciling, left to the next run", date);
+                    continue;
+                }
+                // Corrections are added to the sampled values, so events applied from now on are kept
+                boolean changed = false;
+                long[] expected = verdicts.getOrDefault(date, new long[BalanceVerdict.values().length]);
+                long[] sampled = sampledVerdicts.get(date);
+                for (int i = 0; i < expected.length; i++) {
+                    if (expected[i] != sampled[i]) {
+                        day.verdicts[i].add(expected[i] - sampled[i]);
+                        changed = true;
+                    }
+                }
+                Map<Long, Long> expectedActions = actions.getOrDefault(date, Map.of());
+                Set<Long> actionIds = new HashSet<>(expectedActions.keySet());
+                actionIds.addAll(sampledActions.get(date).keySet());
+                for (Long actionId : actionIds) {
+                    long delta = expectedActions.getOrDefault(actionId, 0L)
+                            - sampledActions.get(date).getOrDefault(actionId, 0L);
+                    if (delta != 0) {
+                        day.action(actionId).add(delta);
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    log.warn("Community stats of {} drifted, corrected from the stored balances", date);
+                    day.dirty.set(true);
+                    corrected++;
+                }
+            }
+            return corrected;
+        } finally {
+            reconcileLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBalanceChanged(BalanceChangedEvent event) {
+        LocalDate date = event.date();
+        if (date.isBefore(firstDay()) || date.isAfter(LocalDate.now())) {
+            return;
+        }
+        DayCounters day = counters.computeIfAbsent(date, d -> new DayCounters());
+        // Only days with at least one checked action count as positive, negative or neutral
+        if (!event.previous().equals(BalanceTotals.EMPTY)) {
+            day.verdicts[event.previous().verdict().ordinal()].decrement();
+        }
+        if (!event.current().equals(BalanceTotals.EMPTY)) {
+            day.verdicts[event.current().verdict().ordinal()].increment();
+        }
+        event.actionChanges().forEach((actionId, change) -> day.action(actionId).add(change));
+        day.changes.incrementAndGet();
+        day.dirty.set(true);
+    }
+
+    /**
+     * Community stats of a day of the kept window (today by default).
+     */
+    public CommunityStatsDTO getStats(LocalDate date) {
+        LocalDate day = date != null ? date : LocalDate.now();
+        if (day.isBefore(firstDay()) || day.isAfter(LocalDate.now())) {
+            throw new RuntimeException("Community stats cover the last " + days + " day(s)");
+        }
+        DayCounters counter = counters.getOrDefault(day, DayCounters.EMPTY);
+
+        List<ActionCount> ranked = new ArrayList<>();
+        Map<Long, String> categories = new HashMap<>();
+        ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+        counter.actions.forEach((actionId, adder) -> {
+            long users = adder.sum();
+            Action action = catalog.action(actionId);
+            if (users > 0 && action != null) {
+                ranked.add(new ActionCount(actionId, action.getType().name(), users));
+                categories.put(actionId, ActionCatalog.categoryOf(action));
+            }
+        });
+        ranked.sort(Comparator.comparing(ActionCount::getUsers).reversed().thenComparing(ActionCount::getActionId));
+
+        Map<String, List<ActionCount>> byCategory = new TreeMap<>();
+        for (ActionCount count : ranked) {
+            List<ActionCount> top = byCategory.computeIfAbsent(categories.get(count.getActionId()), c -> new ArrayList<>());
+            if (top.size() < topK) {
+                top.add(count);
+            }
+        }
+        return CommunityStatsDTO.builder()
+                .date(day)
+                .positiveUsers(counter.verdicts[BalanceVerdict.POSITIVE.ordinal()].sum())
+                .negativeUsers(counter.verdicts[BalanceVerdict.NEGATIVE.ordinal()].sum())
+                .neutralUsers(counter.verdicts[BalanceVerdict.NEUTRAL.ordinal()].sum())
+                .topActions(ranked.subList(0, Math.min(topK, ranked.size())))
+                .topActionsByCategory(byCategory)
+                .build();
+    }
+
+    @Scheduled(fixedDelayString = "${app.community.snapshot-interval-ms:60000}")
+    public void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.error("Community stats snapshot failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write the days changed since the last snapshot, then drop the days that left the window.
+     *
+     * @return the number of days written
+     */
+    public int snapshot() {
+        snapshotLock.lock();
+        try {
+            ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+            List<DayCounters> written = new ArrayList<>();
+            List<CommunityDayStats> dayStats = new ArrayList<>();
+            List<CommunityActionStats> actionStats = new ArrayList<>();
+            counters.forEach((date, day) -> {
+                if (!day.dirty.compareAndSet(true, false)) {
+                    return;
+                }
+                written.add(day);
+                dayStats.add(CommunityDayStats.builder()
+                        .statDate(date)
+                        .positiveUsers(day.verdicts[BalanceVerdict.POSITIVE.ordinal()].sum())
+                        .negativeUsers(day.verdicts[BalanceVerdict.NEGATIVE.ordinal()].sum())
+                        .neutralUsers(day.verdicts[BalanceVerdict.NEUTRAL.ordinal()].sum())
+                        .build());
+                day.actions.forEach((actionId, adder) -> {
+                    if (catalog.action(actionId) != null) {
+                        actionStats.add(new CommunityActionStats(date, actionId, adder.sum()));
+                    }
+                });
+            });
+            try {
+                dayStatsRepository.saveSnapshot(dayStats, actionStats);
+            } catch (RuntimeException e) {
+                written.forEach(day -> day.dirty.set(true));
+                throw e;
+            }
+            LocalDate first = firstDay();
+            counters.keySet().removeIf(date -> date.isBefore(first));
+            log.debug("Community stats snapshot: {} day(s) written", dayStats.size());
+            return dayStats.size();
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduledSnapshot();
+    }
+
+    private LocalDate firstDay() {
+        return LocalDate.now().minusDays(days - 1);
+    }
+
+    private static class DayCounters {
+        static final DayCounters EMPTY = new DayCounters();
+
+        final LongAdder[] verdicts = new LongAdder[BalanceVerdict.values().length];
+        final Map<Long, LongAdder> actions = new ConcurrentHashMap<>();
+        final AtomicBoolean dirty = new AtomicBoolean();
+        final AtomicLong changes = new AtomicLong();
+
+        DayCounters() {
+            for (int i = 0; i < verdicts.length; i++) {
+                verdicts[i] = new LongAdder();
+            }
+        }
+
+        LongAdder action(Long actionId) {
+            return actions.computeIfAbsent(actionId, id -> new LongAdder());
+        }
+
+        long[] verdictSums() {
+            long[] sums = new long[verdicts.length];
+            for (int i = 0; i < verdicts.length; i++) {
+                sums[i] = verdicts[i].sum();
+            }
+            return sums;
+        }
+
+        Map<Long, Long> actionSums() {
+            Map<Long, Long> sums = new HashMap<>();
+            actions.forEach((actionId, adder) -> sums.put(actionId, adder.sum()));
+            return sums;
+        }
+    }
+}
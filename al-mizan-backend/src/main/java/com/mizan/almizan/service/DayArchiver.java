@@ -0,0 +1,154 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.repository.UserDayMaskRepository;
+import com.mizan.almizan.repository.UserDayMaskRepositoryCustom.ArchivedChunk;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Archival of the rows format: user_daily_actions rows older than {@code horizon-days}
+ * (app.balance.archive) are folded into user_day_masks, one row per user and day, and deleted.
+ * Runs in chunks of whole users holding about {@code batch-rows} rows, each in its own transaction,
+ * so lock times stay short and an interrupted run resumes where it stopped.
+ * <p>
+ * Each user's watermark (app_users.actions_archived_before) tells {@link RowCheckedActionStore}
+ * which of their days are read and written as masks. The watermark is only looked up for days
+ * that {@link #mayBeArchived} - recent days never pay for it. The ceiling behind that check is
+ * kept in memory: run the job on a single instance. The scheduled run is off by default.
+ * <p>
+ * A chunk holding checked rows of an action without a bit index is refused and the run stops there;
+ * the chunks committed before it stay archived and the next run resumes after them.
+ */
+@Component
+@ConditionalOnProperty(name = "app.balance.day-format", havingValue = "rows", matchIfMissing = true)
+@Slf4j
+public class DayArchiver {
+
+    // Heap tuple and entries of the 3 indexes of a user_daily_actions row, and of a user_day_masks row
+    private static final long ROW_BYTES = 150;
+    private static final long MASK_ROW_BYTES = 64;
+
+    private final UserDayMaskRepository userDayMaskRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int horizonDays;
+    private final int batchRows;
+    private final Counter rowsCounter;
+    private final Counter daysCounter;
+    private final Counter bytesCounter;
+    private final ReentrantLock runLock = new ReentrantLock();
+    private volatile LocalDate ceiling;
+
+    public DayArchiver(UserDayMaskRepository userDayMaskRepository,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${app.balance.archive.enabled:false}") boolean enabled,
+                       @Value("${app.balance.archive.horizon-days:90}") int horizonDays,
+                       @Value("${app.balance.archive.batch-rows:5000}") int batchRows,
+                       MeterRegistry meterRegistry) {
+        this.userDayMaskRepository = userDayMaskRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.horizonDays = horizonDays;
+        this.batchRows = batchRows;
+        this.rowsCounter = Counter.builder("mizan.archive.rows")
+                .description("user_daily_actions rows folded into day masks")
+                .register(meterRegistry);
+        this.daysCounter = Counter.builder("mizan.archive.days")
+                .description("User days written as masks by the archival job")
+                .register(meterRegistry);
+        this.bytesCounter = Counter.builder("mizan.archive.bytes.reclaimed")
+                .description("Estimated table and index bytes freed by the archival job")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void loadCeiling() {
+        ceiling = userDayMaskRepository.findMaxArchivedBefore();
+    }
+
+    /**
+     * Whether some user may have the day archived. False means the day is kept as rows for everyone.
+     * With the scheduled run on, days up to the horizon itself answer true: a day reaching the
+     * horizon at midnight is already routed through the watermark before a run can archive it.
+     */
+    public boolean mayBeArchived(LocalDate date) {
+        LocalDate highest = ceiling;
+        return (highest != null && date.isBefore(highest))
+                || (enabled && !date.isAfter(LocalDate.now().minusDays(horizonDays)));
+    }
+
+    @Scheduled(cron = "${app.balance.archive.cron:0 0 4 * * *}")
+    public void scheduledArchive() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            archive();
+        } catch (RuntimeException e) {
+            log.error("Archival of user_daily_actions failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Archive the rows dated before today minus the horizon.
+     *
+     * @return the number of rows archived
+     */
+    public long archive() {
+        return archive(LocalDate.now().minusDays(horizonDays));
+    }
+
+    /**
+     * Archive the rows dated before {@code before}, chunk by chunk.
+     *
+     * @return the number of rows archived
+     * @throws IllegalStateException at the first chunk holding checked rows of an action without a bit index
+     */
+    public long archive(LocalDate before) {
+        runLock.lock();
+        try {
+            // Readers route the archived days before the first chunk commits
+            if (ceiling == null || ceiling.isBefore(before)) {
+                ceiling = before;
+            }
+            long rows = 0;
+            int days = 0;
+            int chunks = 0;
+            long afterUserId = 0;
+            Long toUserId;
+            while ((toUserId = userDayMaskRepository.findArchiveChunkEnd(afterUserId, before, batchRows)) != null) {
+                long from = afterUserId;
+                long to = toUserId;
+                ArchivedChunk chunk = transactionTemplate.execute(status ->
+                        userDayMaskRepository.archiveRows(from, to, before));
+                if (chunk.unfoldableRows() > 0) {
+                    throw new IllegalStateException(chunk.unfoldableRows() + " checked row(s) of users (" + from + ", "
+                            + to + "] belong to actions without a bit index: refresh the action catalog before archiving");
+                }
+                rowsCounter.increment(chunk.rows());
+                daysCounter.increment(chunk.days());
+                bytesCounter.increment(Math.max(0,
+                        chunk.rows() * ROW_BYTES - chunk.days() * MASK_ROW_BYTES - chunk.maskBytes()));
+                rows += chunk.rows();
+                days += chunk.days();
+                chunks++;
+                afterUserId = to;
+            }
+            log.info("Archived {} row(s) before {} into {} day mask(s), {} chunk(s)", rows, before, days, chunks);
+            return rows;
+        } finally {
+            runLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.repository.ActionRepository;
+import com.mizan.almizan.repository.UserDayMaskRepository;
+import com.mizan.almizan.repository.UserDayMaskRepositoryCustom.FoldedRows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bitmask format: moves the user_daily_actions rows written while running the rows format into
+ * the day masks (app.balance.convert-rows, opt-in). Users are converted in chunks holding about
+ * {@code batch-rows} rows, each in its own transaction; checked actions are OR-ed into the
+ * existing masks and only the folded rows are deleted.
+ */
+@Component
+@ConditionalOnProperty(name = "app.balance.day-format", havingValue = "bitmask")
+@Slf4j
+public class DayMaskConversion {
+
+    private final UserDayMaskRepository userDayMaskRepository;
+    private final ActionRepository actionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean onStartup;
+    private final int batchRows;
+
+    public DayMaskConversion(UserDayMaskRepository userDayMaskRepository,
+                             ActionRepository actionRepository,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${app.balance.convert-rows.on-startup:false}") boolean onStartup,
+                             @Value("${app.balance.convert-rows.batch-rows:5000}") int batchRows) {
+        this.userDayMaskRepository = userDayMaskRepository;
+        this.actionRepository = actionRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.onStartup = onStartup;
+        this.batchRows = batchRows;
+    }
+
+    /**
+     * First, so that startup jobs reading masks see the converted days.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void convertOnStartup() {
+        if (onStartup) {
+            convert();
+        } else if (userDayMaskRepository.findRowChunkEnd(0, 1) != null) {
+            log.warn("user_daily_actions holds rows that the bitmask format does not read: "
+                    + "set app.balance.convert-rows.on-startup=true to move them into masks");
+        }
+    }
+
+    /**
+     * Convert every row. Refuses to run while an action has no bit index, as its rows could not be folded.
+     *
+     * @return the number of rows converted
+     */
+    public long convert() {
+        long unassigned = actionRepository.countWithoutBitIndex();
+        if (unassigned > 0) {
+            throw new IllegalStateException(unassigned + " action(s) have no bit index: refresh the catalog before converting rows");
+        }
+        long rows = 0;
+        int days = 0;
+        long afterUserId = 0;
+        Long toUserId;
+        while ((toUserId = userDayMaskRepository.findRowChunkEnd(afterUserId, batchRows)) != null) {
+            long from = afterUserId;
+            long to = toUserId;
+            FoldedRows chunk = transactionTemplate.execute(status -> userDayMaskRepository.convertRows(from, to));
+            rows += chunk.rows();
+            days += chunk.days();
+            afterUserId = to;
+        }
+        log.info("Converted {} user_daily_actions row(s) into {} day mask(s)", rows, days);
+        return rows;
+    }
+}
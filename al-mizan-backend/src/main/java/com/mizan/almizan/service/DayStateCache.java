@@ -0,0 +1,521 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceDTO;
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.DailyBalance;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import com.mizan.almizan.repository.DailyBalanceRepositoryCustom.VersionedTotals;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Local cache of the last {@code days} daily balances of recently active users
+ * (app.balance.day-cache), kept in a memory-mapped file so it survives restarts.
+ * <p>
+ * Each user owns a fixed-width slot: a header and a ring of 24-byte day records indexed by
+ * {@code epochDay % days}. A slot is loaded from daily_balances on first access and then
+ * kept up to date from {@link BalanceChangedEvent}s, so history and recent-days reads are
+ * served from the mapped file without touching the database or allocating per-day entities.
+ * Records carry the version of their daily_balances row and are only replaced by a newer one,
+ * whatever the order in which loads and after-commit events reach them.
+ * Only balances written through this instance are seen: enable it on a single instance.
+ */
+@Component
+@Slf4j
+public class DayStateCache {
+
+    private static final int MAGIC = 0x4D5A4453; // "MZDS"
+    private static final int FORMAT_VERSION = 2;
+
+    // File header: magic, format, days, max users, clean-shutdown flag, database identity
+    private static final int HEADER_BYTES = 32;
+    private static final int H_MAGIC = 0, H_FORMAT = 4, H_DAYS = 8, H_MAX_USERS = 12, H_CLEAN = 16, H_IDENTITY = 24;
+
+    // Slot header: user id (0 while loading), first future day written (0 if none), older-rows flag
+    private static final int SLOT_HEADER_BYTES = 16;
+    private static final int S_USER = 0, S_FUTURE_FROM = 8, S_HAS_OLDER = 12;
+
+    // Day record: epoch day, good weight, bad weight, good count (ABSENT if no balance row), bad count, row version
+    private static final int RECORD_BYTES = 24;
+    private static final int R_DAY = 0, R_GOOD_WEIGHT = 4, R_BAD_WEIGHT = 8, R_GOOD_COUNT = 12, R_BAD_COUNT = 14,
+            R_VERSION = 16;
+    private static final short ABSENT = -1;
+    // Version of a cleared record: older than any row (rows predating V6 have version 0)
+    private static final long NO_VERSION = -1;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Path path;
+    private final int days;
+    private final int maxUsers;
+    private final int slotBytes;
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+    // Guarded by the slot's stripe: bumped by each load, which only installs its rows if still the latest
+    private final int[] loadTokens;
+
+    // Guarded by this
+    private final LongIntHashMap index;
+    private final long[] slotUsers;
+    private final boolean[] referenced;
+    private int clockHand;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter loadCounter;
+
+    public DayStateCache(DailyBalanceRepository dailyBalanceRepository,
+                         JdbcTemplate jdbcTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${app.balance.day-cache.enabled:false}") boolean enabled,
+                         @Value("${app.balance.day-cache.path:${java.io.tmpdir}/al-mizan/day-states.bin}") Path path,
+                         @Value("${app.balance.day-cache.days:365}") int days,
+                         @Value("${app.balance.day-cache.max-users:10000}") int maxUsers) {
+        this.dailyBalanceRepository = dailyBalanceRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.path = path;
+        this.days = days;
+        this.maxUsers = maxUsers;
+        this.slotBytes = SLOT_HEADER_BYTES + days * RECORD_BYTES;
+        if (enabled && HEADER_BYTES + (long) maxUsers * slotBytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Day-state cache too large: reduce app.balance.day-cache.max-users or days");
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.index = new LongIntHashMap(enabled ? maxUsers : 1);
+        this.slotUsers = new long[enabled ? maxUsers : 0];
+        this.referenced = new boolean[enabled ? maxUsers : 0];
+        this.loadTokens = new int[enabled ? maxUsers : 0];
+
+        this.hitCounter = Counter.builder("mizan.balance.daycache.requests")
+                .description("History reads served by the day-state cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("mizan.balance.daycache.requests")
+                .description("History reads served by the day-state cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.loadCounter = Counter.builder("mizan.balance.daycache.loads")
+                .description("User slots loaded from the database")
+                .register(meterRegistry);
+        Gauge.builder("mizan.balance.daycache.users", this, DayStateCache::cachedUsers)
+                .description("Users held in the day-state cache")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = HEADER_BYTES + (long) maxUsers * slotBytes;
+        long identity = databaseIdentity();
+
+        boolean reusable = channel.size() == size;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        reusable = reusable
+                && buffer.getInt(H_MAGIC) == MAGIC
+                && buffer.getInt(H_FORMAT) == FORMAT_VERSION
+                && buffer.getInt(H_DAYS) == days
+                && buffer.getInt(H_MAX_USERS) == maxUsers
+                && buffer.getInt(H_CLEAN) == 1
+                && identity != 0
+                && buffer.getLong(H_IDENTITY) == identity;
+
+        if (reusable) {
+            rebuildIndex();
+            log.info("Day-state cache reopened from {}: {} user(s)", path, index.size());
+        } else {
+            // Other layout, other database or unclean shutdown: start empty
+            for (long offset = 0; offset < size; offset += 8) {
+                buffer.putLong((int) offset, 0);
+            }
+            buffer.putInt(H_MAGIC, MAGIC);
+            buffer.putInt(H_FORMAT, FORMAT_VERSION);
+            buffer.putInt(H_DAYS, days);
+            buffer.putInt(H_MAX_USERS, maxUsers);
+            buffer.putLong(H_IDENTITY, identity);
+            log.info("Day-state cache created at {} ({} MB)", path, size >> 20);
+        }
+        buffer.putInt(H_CLEAN, 0);
+        buffer.force();
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        synchronized (this) {
+            buffer.force();
+            buffer.putInt(H_CLEAN, 1);
+            buffer.force();
+        }
+        channel.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Balances of the range, newest first, or null if the cache cannot answer it
+     * (the caller then reads the database).
+     */
+    public List<BalanceDTO> history(Long userId, LocalDate from, LocalDate to) {
+        if (!enabled || userId == null || from.isAfter(to)) {
+            return null;
+        }
+        int today = (int) LocalDate.now().toEpochDay();
+        int windowStart = today - days + 1;
+        int slot = slotFor(userId, today);
+        ReentrantLock stripe = stripe(slot);
+        stripe.lock();
+        try {
+            int base = slotOffset(slot);
+            if (!isUsable(base, userId, today)
+                    || (to.toEpochDay() > today && buffer.getInt(base + S_FUTURE_FROM) != 0)
+                    || (from.toEpochDay() < windowStart && hasOlder(base, windowStart))) {
+                missCounter.increment();
+                return null;
+            }
+            List<BalanceDTO> result = new ArrayList<>();
+            int last = (int) Math.min(to.toEpochDay(), today);
+            int first = (int) Math.max(from.toEpochDay(), windowStart);
+            for (int day = last; day >= first; day--) {
+                addIfPresent(base, day, result);
+            }
+            hitCounter.increment();
+            return result;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * The latest {@code limit} balances, newest first, or null if the cache cannot answer.
+     */
+    public List<BalanceDTO> recent(Long userId, int limit) {
+        if (!enabled || userId == null) {
+            return null;
+        }
+        int today = (int) LocalDate.now().toEpochDay();
+        int windowStart = today - days + 1;
+        int slot = slotFor(userId, today);
+        ReentrantLock stripe = stripe(slot);
+        stripe.lock();
+        try {
+            int base = slotOffset(slot);
+            if (!isUsable(base, userId, today) || buffer.getInt(base + S_FUTURE_FROM) != 0) {
+                missCounter.increment();
+                return null;
+            }
+            List<BalanceDTO> result = new ArrayList<>(limit);
+            for (int day = today; day >= windowStart && result.size() < limit; day--) {
+                addIfPresent(base, day, result);
+            }
+            if (result.size() < limit && hasOlder(base, windowStart)) {
+                missCounter.increment();
+                return null;
+            }
+            hitCounter.increment();
+            return result;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Write-through of committed balance changes into the slots of cached users, loaded or loading.
+     * After-commit listeners of concurrent changes may run in any order, so the day's row is read
+     * back with its version rather than trusting the event's totals.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBalanceChanged(BalanceChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        int slot;
+        synchronized (this) {
+            slot = index.get(event.userId());
+        }
+        if (slot < 0) {
+            return;
+        }
+        int today = (int) LocalDate.now().toEpochDay();
+        int day = (int) event.date().toEpochDay();
+        boolean inWindow = day <= today && day > today - days;
+        VersionedTotals stored = inWindow ? dailyBalanceRepository.findVersionedTotals(event.userId(), event.date()) : null;
+        ReentrantLock stripe = stripe(slot);
+        stripe.lock();
+        try {
+            if (!owns(slot, event.userId())) {
+                return;
+            }
+            int base = slotOffset(slot);
+            if (day > today) {
+                int futureFrom = buffer.getInt(base + S_FUTURE_FROM);
+                buffer.putInt(base + S_FUTURE_FROM, futureFrom == 0 ? day : Math.min(futureFrom, day));
+            } else if (!inWindow) {
+                buffer.putInt(base + S_HAS_OLDER, 1);
+            } else if (stored != null) {
+                writeIfNewer(base, day, stored, today - days + 1);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private int slotFor(long userId, int today) {
+        int slot;
+        boolean allocated = false;
+        synchronized (this) {
+            slot = index.get(userId);
+            if (slot >= 0) {
+                referenced[slot] = true;
+            } else {
+                slot = allocate();
+                slotUsers[slot] = userId;
+                index.put(userId, slot);
+                allocated = true;
+            }
+        }
+        if (allocated || hasBecomeCurrent(slot, userId, today)) {
+            load(slot, userId, today);
+        }
+        return slot;
+    }
+
+    private synchronized boolean owns(int slot, long userId) {
+        return slotUsers[slot] == userId;
+    }
+
+    /**
+     * Clock (second chance) eviction over the slots.
+     */
+    private int allocate() {
+        while (true) {
+            int slot = clockHand;
+            clockHand = (clockHand + 1) % maxUsers;
+            if (slotUsers[slot] == 0) {
+                return slot;
+            }
+            if (referenced[slot]) {
+                referenced[slot] = false;
+            } else {
+                index.remove(slotUsers[slot]);
+                slotUsers[slot] = 0;
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Fill the slot from daily_balances. The slot is cleared and marked incomplete, then queried
+     * without the stripe lock: events committed meanwhile keep writing their (newer) records,
+     * which the loaded rows do not overwrite. A load overtaken by another one drops its rows.
+     */
+    private void load(int slot, long userId, int today) {
+        int base = slotOffset(slot);
+        int windowStart = today - days + 1;
+        ReentrantLock stripe = stripe(slot);
+        int token;
+        stripe.lock();
+        try {
+            if (!owns(slot, userId)) {
+                return; // evicted while waiting
+            }
+            token = ++loadTokens[slot];
+            buffer.putLong(base + S_USER, 0);
+            for (int day = windowStart; day <= today; day++) {
+                writeRecord(base, day, null, NO_VERSION, windowStart);
+            }
+            buffer.putInt(base + S_FUTURE_FROM, 0);
+            buffer.putInt(base + S_HAS_OLDER, 0);
+        } finally {
+            stripe.unlock();
+        }
+
+        LocalDate start = LocalDate.ofEpochDay(windowStart);
+        List<DailyBalance> balances = dailyBalanceRepository.findByUserIdAndBalanceDateGreaterThanEqual(userId, start);
+        boolean hasOlder = dailyBalanceRepository.existsByUserIdAndBalanceDateBefore(userId, start);
+
+        stripe.lock();
+        try {
+            if (!owns(slot, userId) || loadTokens[slot] != token) {
+                return;
+            }
+            int futureFrom = buffer.getInt(base + S_FUTURE_FROM);
+            for (DailyBalance balance : balances) {
+                int day = (int) balance.getBalanceDate().toEpochDay();
+                if (day > today) {
+                    futureFrom = futureFrom == 0 ? day : Math.min(futureFrom, day);
+                } else {
+                    writeIfNewer(base, day, new VersionedTotals(BalanceTotals.of(balance), balance.getVersion()), windowStart);
+                }
+            }
+            buffer.putInt(base + S_FUTURE_FROM, futureFrom);
+            if (hasOlder) {
+                buffer.putInt(base + S_HAS_OLDER, 1);
+            }
+            buffer.putLong(base + S_USER, userId);
+            loadCounter.increment();
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * The slot holds future-dated balances that have become current: it must be reloaded.
+     */
+    private boolean hasBecomeCurrent(int slot, long userId, int today) {
+        ReentrantLock stripe = stripe(slot);
+        stripe.lock();
+        try {
+            int base = slotOffset(slot);
+            int futureFrom = buffer.getInt(base + S_FUTURE_FROM);
+            return buffer.getLong(base + S_USER) == userId && futureFrom != 0 && futureFrom <= today;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * The slot belongs to the user, is complete, and has no future-dated balance that became current.
+     */
+    private boolean isUsable(int base, long userId, int today) {
+        int futureFrom = buffer.getInt(base + S_FUTURE_FROM);
+        return buffer.getLong(base + S_USER) == userId && (futureFrom == 0 || futureFrom > today);
+    }
+
+    /**
+     * Balances exist before the window: flagged at load or on back-dated writes,
+     * or still present in ring records the window has moved past.
+     */
+    private boolean hasOlder(int base, int windowStart) {
+        if (buffer.getInt(base + S_HAS_OLDER) != 0) {
+            return true;
+        }
+        for (int i = 0; i < days; i++) {
+            int record = base + SLOT_HEADER_BYTES + i * RECORD_BYTES;
+            if (buffer.getShort(record + R_GOOD_COUNT) != ABSENT && buffer.getInt(record + R_DAY) < windowStart) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the day's record unless it already holds this version of the row or a newer one.
+     */
+    private void writeIfNewer(int base, int day, VersionedTotals stored, int windowStart) {
+        int record = recordOffset(base, day);
+        if (buffer.getInt(record + R_DAY) == day && buffer.getLong(record + R_VERSION) >= stored.version()) {
+            return;
+        }
+        writeRecord(base, day, stored.totals(), stored.version(), windowStart);
+    }
+
+    private void writeRecord(int base, int day, BalanceTotals totals, long version, int windowStart) {
+        int record = recordOffset(base, day);
+        int previousDay = buffer.getInt(record + R_DAY);
+        if (previousDay != day && previousDay < windowStart && buffer.getShort(record + R_GOOD_COUNT) != ABSENT
+                && buffer.getLong(base + S_USER) != 0) {
+            // The ring slot still holds a balance that has left the window
+            buffer.putInt(base + S_HAS_OLDER, 1);
+        }
+        buffer.putInt(record + R_DAY, day);
+        buffer.putInt(record + R_GOOD_WEIGHT, totals != null ? totals.goodWeight() : 0);
+        buffer.putInt(record + R_BAD_WEIGHT, totals != null ? totals.badWeight() : 0);
+        buffer.putShort(record + R_GOOD_COUNT, totals != null ? (short) totals.goodCount() : ABSENT);
+        buffer.putShort(record + R_BAD_COUNT, totals != null ? (short) totals.badCount() : 0);
+        buffer.putLong(record + R_VERSION, version);
+    }
+
+    private void addIfPresent(int base, int day, List<BalanceDTO> result) {
+        int record = recordOffset(base, day);
+        if (buffer.getInt(record + R_DAY) != day || buffer.getShort(record + R_GOOD_COUNT) == ABSENT) {
+            return;
+        }
+        result.add(new BalanceTotals(
+                buffer.getShort(record + R_GOOD_COUNT),
+                buffer.getShort(record + R_BAD_COUNT),
+                buffer.getInt(record + R_GOOD_WEIGHT),
+                buffer.getInt(record + R_BAD_WEIGHT)).toDto(LocalDate.ofEpochDay(day)));
+    }
+
+    private void rebuildIndex() {
+        for (int slot = 0; slot < maxUsers; slot++) {
+            long userId = buffer.getLong(slotOffset(slot) + S_USER);
+            if (userId != 0) {
+                slotUsers[slot] = userId;
+                index.put(userId, slot);
+            }
+        }
+    }
+
+    /**
+     * Identifies the database the file was filled from, so a file is never reused against
+     * another database or a recreated schema. Returns 0 (never reusable) for in-memory
+     * databases and schemas not managed by Flyway.
+     */
+    private long databaseIdentity() {
+        String url = jdbcTemplate.execute((Connection c) -> c.getMetaData().getURL());
+        if (url == null || url.startsWith("jdbc:h2:mem:")) {
+            return 0;
+        }
+        try {
+            Object installedOn = jdbcTemplate.queryForObject(
+                    "SELECT MIN(installed_on) FROM flyway_schema_history", Object.class);
+            return installedOn == null ? 0 : ((long) url.hashCode() << 32) ^ (installedOn.toString().hashCode() & 0xFFFFFFFFL);
+        } catch (DataAccessException e) {
+            return 0;
+        }
+    }
+
+    private synchronized int cachedUsers() {
+        return index.size();
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_BYTES + slot * slotBytes;
+    }
+
+    private int recordOffset(int base, int day) {
+        return base + SLOT_HEADER_BYTES + Math.floorMod(day, days) * RECORD_BYTES;
+    }
+
+    private ReentrantLock stripe(int slot) {
+        return stripes[slot % LOCK_STRIPES];
+    }
+}
@@ -0,0 +1,88 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.ActionDTO;
+import com.mizan.almizan.dto.DayViewDTO;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The day view: active actions with their checked state and the day's balance, in one response.
+ * Its ETag combines the user, the day's version in daily_balances and the catalog fingerprint,
+ * so a poll is answered from one indexed lookup while nothing has changed.
+ */
+@Service
+public class DayViewService {
+
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final CheckedActionStore checkedActionStore;
+    private final ActionCatalog actionCatalog;
+    private final ToggleBuffer toggleBuffer;
+    private final Counter notModifiedCounter;
+    private final Counter fullCounter;
+
+    public DayViewService(DailyBalanceRepository dailyBalanceRepository,
+                          CheckedActionStore checkedActionStore,
+                          ActionCatalog actionCatalog,
+                          ToggleBuffer toggleBuffer,
+                          MeterRegistry meterRegistry) {
+        this.dailyBalanceRepository = dailyBalanceRepository;
+        this.checkedActionStore = checkedActionStore;
+        this.actionCatalog = actionCatalog;
+        this.toggleBuffer = toggleBuffer;
+        this.notModifiedCounter = Counter.builder("mizan.dayview.requests")
+                .description("Day view requests, by response")
+                .tag("result", "not_modified")
+                .register(meterRegistry);
+        this.fullCounter = Counter.builder("mizan.dayview.requests")
+                .description("Day view requests, by response")
+                .tag("result", "full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Current ETag of the day, or null while write-behind toggles of the day are still pending
+     * (they are not reflected in the version yet). Read it before building the view: a concurrent
+     * toggle can then only make the content newer than its ETag (one extra full response), never older.
+     */
+    @Transactional(readOnly = true)
+    public String currentETag(Long userId, LocalDate date) {
+        if (toggleBuffer.hasPending(userId, date)) {
+            return null;
+        }
+        long version = dailyBalanceRepository.findVersion(userId, date).orElse(0L);
+        return eTag(userId, version, actionCatalog.snapshot().fingerprint());
+    }
+
+    /**
+     * Checked actions are read once; the balance is computed from them with the catalog weights.
+     */
+    @Transactional(readOnly = true)
+    public DayViewDTO getDayView(Long userId, LocalDate date) {
+        Set<Long> checked = toggleBuffer.applyPending(userId, date, checkedActionStore.checkedActionIds(userId, date));
+        ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+        List<ActionDTO> actions = catalog.activeDtos().stream()
+                .map(dto -> dto.withChecked(checked.contains(dto.getId())))
+                .toList();
+        fullCounter.increment();
+        return DayViewDTO.builder()
+                .date(date)
+                .balance(catalog.totalsOf(checked).toDto(date))
+                .actions(actions)
+                .build();
+    }
+
+    public void countNotModified() {
+        notModifiedCounter.increment();
+    }
+
+    private static String eTag(Long userId, long version, int catalogFingerprint) {
+        return "\"" + userId + "-" + version + "-" + Integer.toHexString(catalogFingerprint) + "\"";
+    }
+}
@@ -0,0 +1,119 @@
+package com.mizan.almizan.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.dto.DayExportDTO;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import com.mizan.almizan.repository.DailyBalanceRepositoryCustom.ExportedDay;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Full export of a user's history (balances and checked actions of every stored day), written
+ * to the output while the rows come off a JDBC cursor: memory stays flat whatever the history length.
+ */
+@Service
+public class HistoryExportService {
+
+    private static final String CSV_HEADER = "date,good_count,bad_count,good_weight,bad_weight,verdict,checked_action_ids";
+
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final ActionCatalog actionCatalog;
+    private final ObjectMapper objectMapper;
+    private final boolean rowsFormat;
+    private final int fetchSize;
+
+    public HistoryExportService(DailyBalanceRepository dailyBalanceRepository,
+                                ActionCatalog actionCatalog,
+                                ObjectMapper objectMapper,
+                                @Value("${app.balance.day-format:rows}") String dayFormat,
+                                @Value("${app.balance.history.fetch-size:500}") int fetchSize) {
+        this.dailyBalanceRepository = dailyBalanceRepository;
+        this.actionCatalog = actionCatalog;
+        this.objectMapper = objectMapper;
+        this.rowsFormat = !"bitmask".equals(dayFormat);
+        this.fetchSize = fetchSize;
+    }
+
+    public enum Format {
+        NDJSON, CSV;
+
+        public static Format of(String name) {
+            return Arrays.stream(values())
+                    .filter(format -> format.name().equalsIgnoreCase(name))
+                    .findFirst()
+                    .orElseThrow(() -> new RuntimeException("Unknown export format: " + name));
+        }
+    }
+
+    /**
+     * Write the user's days, oldest first: one JSON object per line, or CSV with a header line.
+     *
+     * @return the number of days written
+     */
+    @Transactional(readOnly = true)
+    public long export(Long userId, Format format, OutputStream out) throws IOException {
+        long[] days = new long[1];
+        if (format == Format.NDJSON) {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.setRootValueSeparator(null);  // lines are separated by '\n' only
+                forEachDay(userId, day -> {
+                    try {
+                        json.writeObject(day);
+                        json.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    days[0]++;
+                });
+            }
+        } else {
+            Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            csv.write(CSV_HEADER);
+            csv.write('\n');
+            forEachDay(userId, day -> {
+                try {
+                    csv.write(day.getDate() + "," + day.getGoodCount() + "," + day.getBadCount() + ","
+                            + day.getGoodWeight() + "," + day.getBadWeight() + "," + day.getVerdict() + ","
+                            + day.getCheckedActionIds().stream().map(String::valueOf).collect(Collectors.joining(";")));
+                    csv.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                days[0]++;
+            });
+            csv.flush();
+        }
+        return days[0];
+    }
+
+    private void forEachDay(Long userId, Consumer<DayExportDTO> consumer) {
+        ActionMasks catalogMasks = actionCatalog.snapshot().masks();
+        dailyBalanceRepository.exportDays(userId, rowsFormat, fetchSize, day -> consumer.accept(toDto(day, catalogMasks)));
+    }
+
+    private static DayExportDTO toDto(ExportedDay day, ActionMasks catalogMasks) {
+        Set<Long> actionIds = new TreeSet<>(day.actionIds());
+        if (day.mask() != null) {
+            actionIds.addAll(catalogMasks.actionIds(BitSet.valueOf(day.mask()).toLongArray()));
+        }
+        BalanceTotals totals = day.totals();
+        return DayExportDTO.builder()
+                .date(day.date())
+                .goodCount(totals.goodCount())
+                .badCount(totals.badCount())
+                .goodWeight(totals.goodWeight())
+                .badWeight(totals.badWeight())
+                .verdict(totals.verdict().name())
+                .checkedActionIds(new ArrayList<>(actionIds))
+                .build();
+    }
+}
@@ -0,0 +1,197 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.entity.DailyBalance;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import com.mizan.almizan.repository.DailyBalanceRepositoryCustom.Drift;
+import com.mizan.almizan.repository.UserDailyActionRepositoryCustom.ActionState;
+import com.mizan.almizan.repository.UserDayMaskRepository;
+import com.mizan.almizan.repository.UserDayMaskRepositoryCustom.DayMask;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Bitmask day-record format: one user_day_masks row per user and day, so a day is read
+ * in a single row and its totals come from popcounts over the catalog masks ({@link ActionMasks}).
+ * Rows written while running the rows format are moved into masks by {@link DayMaskConversion}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.balance.day-format", havingValue = "bitmask")
+@RequiredArgsConstructor
+public class MaskCheckedActionStore implements CheckedActionStore {
+
+    private final UserDayMaskRepository userDayMaskRepository;
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final ActionCatalog actionCatalog;
+
+    @Override
+    public Set<Long> checkedActionIds(Long userId, LocalDate date) {
+        byte[] mask = userDayMaskRepository.findMask(userId, date);
+        return mask != null ? actionCatalog.snapshot().masks().actionIds(words(mask)) : Set.of();
+    }
+
+    @Override
+    public Map<LocalDate, Set<Long>> checkedActionIds(Long userId, Collection<LocalDate> dates) {
+        return actionIds(userDayMaskRepository.findMasks(userId, dates, false));
+    }
+
+    @Override
+    public int setChecked(Long userId, Action action, LocalDate date, boolean checked) {
+        int bit = bitOf(action);
+        byte[] stored = userDayMaskRepository.lockMask(userId, date, checked);
+        if (stored == null) {
+            return 0;
+        }
+        BitSet mask = BitSet.valueOf(stored);
+        if (mask.get(bit) == checked) {
+            return 0;
+        }
+        mask.set(bit, checked);
+        userDayMaskRepository.writeMasks(List.of(new DayMask(userId, date, mask.toByteArray())));
+        return checked ? 1 : -1;
+    }
+
+    @Override
+    public void applyStates(Collection<ActionState> states) {
+        Map<UserDay, List<ActionState>> byDay = new LinkedHashMap<>();
+        for (ActionState state : states) {
+            byDay.computeIfAbsent(new UserDay(state.userId(), state.date()), k -> new ArrayList<>()).add(state);
+        }
+
+        ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+        List<DayMask> masks = new ArrayList<>(byDay.size());
+        byDay.forEach((day, dayStates) -> {
+            boolean anyChecked = dayStates.stream().anyMatch(ActionState::checked);
+            byte[] stored = userDayMaskRepository.lockMask(day.userId(), day.date(), anyChecked);
+            if (stored == null) {
+                return;
+            }
+            BitSet mask = BitSet.valueOf(stored);
+            for (ActionState state : dayStates) {
+                Action action = catalog.action(state.actionId());
+                if (action != null) {
+                    mask.set(bitOf(action), state.checked());
+                }
+            }
+            masks.add(new DayMask(day.userId(), day.date(), mask.toByteArray()));
+        });
+        userDayMaskRepository.writeMasks(masks);
+    }
+
+    @Override
+    public Map<LocalDate, Set<Long>> applyUserStates(Long userId, Collection<ActionState> states) {
+        Map<LocalDate, List<ActionState>> byDate = new LinkedHashMap<>();
+        for (ActionState state : states) {
+            byDate.computeIfAbsent(state.date(), d -> new ArrayList<>()).add(state);
+        }
+        userDayMaskRepository.createMasks(userId, byDate.entrySet().stream()
+                .filter(e -> e.getValue().stream().anyMatch(ActionState::checked))
+                .map(Map.Entry::getKey)
+                .toList());
+        Map<LocalDate, byte[]> stored = userDayMaskRepository.findMasks(userId, byDate.keySet(), true);
+
+        ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+        List<DayMask> masks = new ArrayList<>(stored.size());
+        stored.forEach((date, bytes) -> {
+            BitSet mask = BitSet.valueOf(bytes);
+            for (ActionState state : byDate.get(date)) {
+                Action action = catalog.action(state.actionId());
+                if (action != null) {
+                    mask.set(bitOf(action), state.checked());
+                }
+            }
+            masks.add(new DayMask(userId, date, mask.toByteArray()));
+        });
+        userDayMaskRepository.writeMasks(masks);
+        return actionIds(stored);
+    }
+
+    @Override
+    public BalanceTotals totals(Long userId, LocalDate date) {
+        byte[] mask = userDayMaskRepository.findMask(userId, date);
+        return mask != null ? actionCatalog.snapshot().masks().totals(words(mask)) : BalanceTotals.EMPTY;
+    }
+
+    @Override
+    public BalanceTotals recomputeBalance(Long userId, LocalDate date) {
+        BalanceTotals totals = totals(userId, date);
+        dailyBalanceRepository.upsertTotals(userId, date, totals);
+        return totals;
+    }
+
+    @Override
+    public List<Drift> findDrift(LocalDate from, LocalDate to) {
+        ActionMasks catalogMasks = actionCatalog.snapshot().masks();
+        Map<UserDay, BalanceTotals> expected = new HashMap<>();
+        for (DayMask mask : userDayMaskRepository.findMasksBetween(from, to)) {
+            expected.put(new UserDay(mask.userId(), mask.date()), catalogMasks.totals(words(mask.mask())));
+        }
+
+        List<Drift> drifts = new ArrayList<>();
+        for (DailyBalance balance : dailyBalanceRepository.findByBalanceDateBetween(from, to)) {
+            UserDay day = new UserDay(balance.getUser().getId(), balance.getBalanceDate());
+            BalanceTotals stored = BalanceTotals.of(balance);
+            BalanceTotals recomputed = Objects.requireNonNullElse(expected.remove(day), BalanceTotals.EMPTY);
+            if (!stored.equals(recomputed)) {
+                drifts.add(new Drift(day.userId(), day.date(), stored, recomputed));
+            }
+        }
+        // Days with checked actions but no stored balance
+        expected.forEach((day, recomputed) -> {
+            if (!recomputed.equals(BalanceTotals.EMPTY)) {
+                drifts.add(new Drift(day.userId(), day.date(), BalanceTotals.EMPTY, recomputed));
+            }
+        });
+        return drifts;
+    }
+
+    @Override
+    public void forEachCheckedDay(long fromUserId, long toUserId, Consumer<CheckedDay> consumer) {
+        ActionMasks catalogMasks = actionCatalog.snapshot().masks();
+        userDayMaskRepository.forEachMask(fromUserId, toUserId, mask -> consumer.accept(
+                new CheckedDay(mask.userId(), mask.date(), catalogMasks.actionIds(words(mask.mask())))));
+    }
+
+    @Override
+    public void forEachCheckedDayBetween(LocalDate from, LocalDate to, Consumer<CheckedDay> consumer) {
+        ActionMasks catalogMasks = actionCatalog.snapshot().masks();
+        for (DayMask mask : userDayMaskRepository.findMasksBetween(from, to)) {
+            Set<Long> actionIds = catalogMasks.actionIds(words(mask.mask()));
+            if (!actionIds.isEmpty()) {
+                consumer.accept(new CheckedDay(mask.userId(), mask.date(), actionIds));
+            }
+        }
+    }
+
+    private static int bitOf(Action action) {
+        if (action.getBitIndex() == null) {
+            throw new RuntimeException("Action has no bit index");
+        }
+        return action.getBitIndex();
+    }
+
+    private Map<LocalDate, Set<Long>> actionIds(Map<LocalDate, byte[]> masks) {
+        ActionMasks catalogMasks = actionCatalog.snapshot().masks();
+        Map<LocalDate, Set<Long>> checked = new HashMap<>();
+        masks.forEach((date, mask) -> {
+            Set<Long> ids = catalogMasks.actionIds(words(mask));
+            if (!ids.isEmpty()) {
+                checked.put(date, ids);
+            }
+        });
+        return checked;
+    }
+
+    private static long[] words(byte[] mask) {
+        return BitSet.valueOf(mask).toLongArray();
+    }
+
+    private record UserDay(Long userId, LocalDate date) {
+    }
+}
@@ -0,0 +1,176 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.config.AppThreads;
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.BalanceRollup.PeriodType;
+import com.mizan.almizan.repository.BalanceRollupRepository;
+import com.mizan.almizan.repository.BalanceRollupRepositoryCustom.CategoryDelta;
+import com.mizan.almizan.repository.BalanceRollupRepositoryCustom.RollupDelta;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import com.mizan.almizan.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the rollups from existing history: users are split into id ranges that are rebuilt
+ * in parallel, each range in its own transaction (its rollups deleted, then re-inserted as batches).
+ * Runs on startup when the rollup tables are empty and there is history to roll up.
+ * <p>
+ * Each range is rebuilt with its users and balances locked, so toggles of these users wait for the
+ * rebuild and then add their deltas on top of it. The rebuild of a range is idempotent: two
+ * instances backfilling at once take turns on each range and end with the same rollups.
+ */
+@Component
+@Slf4j
+public class RollupBackfill {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final BalanceRollupRepository balanceRollupRepository;
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final UserRepository userRepository;
+    private final CheckedActionStore checkedActionStore;
+    private final ActionCatalog actionCatalog;
+    private final TransactionTemplate transactionTemplate;
+    private final AppThreads appThreads;
+    private final boolean onStartup;
+    private final int chunkSize;
+    private final int parallelism;
+
+    public RollupBackfill(BalanceRollupRepository balanceRollupRepository,
+                          DailyBalanceRepository dailyBalanceRepository,
+                          UserRepository userRepository,
+                          CheckedActionStore checkedActionStore,
+                          ActionCatalog actionCatalog,
+                          TransactionTemplate transactionTemplate,
+                          AppThreads appThreads,
+                          @Value("${app.balance.rollups.backfill-on-startup:true}") boolean onStartup,
+                          @Value("${app.balance.rollups.backfill-chunk-size:200}") int chunkSize,
+                          @Value("${app.balance.rollups.backfill-parallelism:4}") int parallelism) {
+        this.balanceRollupRepository = balanceRollupRepository;
+        this.dailyBalanceRepository = dailyBalanceRepository;
+        this.userRepository = userRepository;
+        this.checkedActionStore = checkedActionStore;
+        this.actionCatalog = actionCatalog;
+        this.transactionTemplate = transactionTemplate;
+        this.appThreads = appThreads;
+        this.onStartup = onStartup;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (onStartup && balanceRollupRepository.count() == 0 && dailyBalanceRepository.count() > 0) {
+            backfill();
+        }
+    }
+
+    /**
+     * Rebuild the rollups of every user.
+     *
+     * @return the number of user ranges rebuilt
+     */
+    public int backfill() {
+        long maxUserId = userRepository.findMaxId();
+        long started = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, appThreads.factory("rollup-backfill-"));
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (long from = 1; from <= maxUserId; from += chunkSize) {
+                long fromUserId = from;
+                long toUserId = Math.min(from + chunkSize - 1, maxUserId);
+                chunks.add(executor.submit(() -> rebuildRange(fromUserId, toUserId)));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+            log.info("Rollup backfill: {} user range(s) rebuilt in {} ms",
+                    chunks.size(), System.currentTimeMillis() - started);
+            return chunks.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Rollup backfill interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Rollup backfill failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Rebuild the range in its own transaction, again if it lost a deadlock against toggles
+     * (a bulk toggle locks its days before the rows referencing the user).
+     */
+    private void rebuildRange(long fromUserId, long toUserId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> rebuild(fromUserId, toUserId));
+                return;
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Rollup backfill of users {}..{} hit a lock conflict, retrying: {}",
+                        fromUserId, toUserId, e.getMessage());
+            }
+        }
+    }
+
+    private void rebuild(long fromUserId, long toUserId) {
+        dailyBalanceRepository.lockUserRange(fromUserId, toUserId);
+        balanceRollupRepository.deleteRollups(fromUserId, toUserId);
+
+        // Totals and verdict days from the stored balances, as maintained by BalanceRollups
+        Map<PeriodKey, int[]> rollups = new HashMap<>();
+        dailyBalanceRepository.forEachBalance(fromUserId, toUserId, day -> {
+            if (day.totals().equals(BalanceTotals.EMPTY)) {
+                return;
+            }
+            for (PeriodType periodType : PeriodType.values()) {
+                int[] sums = rollups.computeIfAbsent(
+                        new PeriodKey(day.userId(), periodType, periodType.startOf(day.date()), null), k -> new int[7]);
+                sums[0] += day.totals().goodCount();
+                sums[1] += day.totals().badCount();
+                sums[2] += day.totals().goodWeight();
+                sums[3] += day.totals().badWeight();
+                sums[4 + day.totals().verdict().ordinal()]++;
+            }
+        });
+
+        // Category breakdown from the checked actions
+        ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+        Map<PeriodKey, BalanceTotals> categories = new HashMap<>();
+        checkedActionStore.forEachCheckedDay(fromUserId, toUserId, day -> {
+            catalog.categoryChanges(Set.of(), day.actionIds()).forEach((category, totals) -> {
+                for (PeriodType periodType : PeriodType.values()) {
+                    categories.merge(new PeriodKey(day.userId(), periodType, periodType.startOf(day.date()), category),
+                            totals, BalanceTotals::plus);
+                }
+            });
+        });
+
+        List<RollupDelta> rows = new ArrayList<>(rollups.size());
+        rollups.forEach((key, sums) -> rows.add(new RollupDelta(key.userId(), key.periodType(), key.periodStart(),
+                new BalanceTotals(sums[0], sums[1], sums[2], sums[3]), sums[4], sums[5], sums[6])));
+        List<CategoryDelta> categoryRows = new ArrayList<>(categories.size());
+        categories.forEach((key, totals) -> categoryRows.add(new CategoryDelta(key.userId(), key.periodType(),
+                key.periodStart(), key.category(), totals)));
+        balanceRollupRepository.addRollups(rows, categoryRows);
+    }
+
+    private record PeriodKey(Long userId, PeriodType periodType, LocalDate periodStart, String category) {
+    }
+}
@@ -0,0 +1,236 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.repository.*;
+import com.mizan.almizan.repository.DailyBalanceRepositoryCustom.Drift;
+import com.mizan.almizan.repository.UserDailyActionRepository.DayAction;
+import com.mizan.almizan.repository.UserDailyActionRepositoryCustom.ActionState;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Default day-record format: one user_daily_actions row per checked action.
+ * Days archived by {@link DayArchiver} (before the user's watermark) are kept as masks
+ * and served by a {@link MaskCheckedActionStore}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.balance.day-format", havingValue = "rows", matchIfMissing = true)
+public class RowCheckedActionStore implements CheckedActionStore {
+
+    private final UserDailyActionRepository userDailyActionRepository;
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final UserDayMaskRepository userDayMaskRepository;
+    private final DayArchiver dayArchiver;
+    private final MaskCheckedActionStore archive;
+
+    public RowCheckedActionStore(UserDailyActionRepository userDailyActionRepository,
+                                 DailyBalanceRepository dailyBalanceRepository,
+                                 UserDayMaskRepository userDayMaskRepository,
+                                 ActionCatalog actionCatalog,
+                                 DayArchiver dayArchiver) {
+        this.userDailyActionRepository = userDailyActionRepository;
+        this.dailyBalanceRepository = dailyBalanceRepository;
+        this.userDayMaskRepository = userDayMaskRepository;
+        this.dayArchiver = dayArchiver;
+        this.archive = new MaskCheckedActionStore(userDayMaskRepository, dailyBalanceRepository, actionCatalog);
+    }
+
+    @Override
+    public Set<Long> checkedActionIds(Long userId, LocalDate date) {
+        if (isArchived(userId, date, false)) {
+            return archive.checkedActionIds(userId, date);
+        }
+        return userDailyActionRepository.findDayActions(userId, date).stream()
+                .filter(row -> Boolean.TRUE.equals(row.checked()))
+                .map(DayAction::actionId)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public Map<LocalDate, Set<Long>> checkedActionIds(Long userId, Collection<LocalDate> dates) {
+        LocalDate archivedBefore = archivedBefore(userId, dates, false);
+        Map<Boolean, List<LocalDate>> archived = dates.stream()
+                .collect(Collectors.partitioningBy(date -> isBefore(date, archivedBefore)));
+        Map<LocalDate, Set<Long>> checked = rowCheckedActionIds(userId, archived.get(false));
+        if (!archived.get(true).isEmpty()) {
+            checked.putAll(archive.checkedActionIds(userId, archived.get(true)));
+        }
+        return checked;
+    }
+
+    @Override
+    public int setChecked(Long userId, Action action, LocalDate date, boolean checked) {
+        if (isArchived(userId, date, true)) {
+            return archive.setChecked(userId, action, date, checked);
+        }
+        boolean wasChecked = userDailyActionRepository.findDayAction(userId, action.getId(), date)
+                .map(row -> Boolean.TRUE.equals(row.checked()))
+                .orElse(false);
+        if (wasChecked == checked) {
+            return 0;
+        }
+        // Same single-row upsert / delete as the batched writes, without loading the entity
+        userDailyActionRepository.applyStates(List.of(new ActionState(userId, action.getId(), date, checked)));
+        return checked ? 1 : -1;
+    }
+
+    @Override
+    public void applyStates(Collection<ActionState> states) {
+        Map<Long, LocalDate> archivedBefore = new HashMap<>();
+        List<ActionState> rows = new ArrayList<>(states.size());
+        List<ActionState> archived = new ArrayList<>();
+        for (ActionState state : states) {
+            if (dayArchiver.mayBeArchived(state.date())) {
+                LocalDate watermark = archivedBefore.computeIfAbsent(state.userId(),
+                        userId -> Objects.requireNonNullElse(userDayMaskRepository.findArchivedBefore(userId, true), LocalDate.MIN));
+                if (isBefore(state.date(), watermark)) {
+                    archived.add(state);
+                    continue;
+                }
+            }
+            rows.add(state);
+        }
+        userDailyActionRepository.applyStates(rows);
+        if (!archived.isEmpty()) {
+            archive.applyStates(archived);
+        }
+    }
+
+    @Override
+    public Map<LocalDate, Set<Long>> applyUserStates(Long userId, Collection<ActionState> states) {
+        LocalDate archivedBefore = archivedBefore(userId, states.stream().map(ActionState::date).toList(), true);
+        Map<Boolean, List<ActionState>> archived = states.stream()
+                .collect(Collectors.partitioningBy(state -> isBefore(state.date(), archivedBefore)));
+        Set<LocalDate> dates = archived.get(false).stream().map(ActionState::date).collect(Collectors.toSet());
+        // Rows have no day-level lock: the balance rows serialise this with toggles of the same days
+        dailyBalanceRepository.lockTotals(userId, dates);
+        Map<LocalDate, Set<Long>> before = rowCheckedActionIds(userId, dates);
+        userDailyActionRepository.applyStates(archived.get(false));
+        if (!archived.get(true).isEmpty()) {
+            before.putAll(archive.applyUserStates(userId, archived.get(true)));
+        }
+        return before;
+    }
+
+    @Override
+    public BalanceTotals totals(Long userId, LocalDate date) {
+        if (isArchived(userId, date, false)) {
+            return archive.totals(userId, date);
+        }
+        return userDailyActionRepository.checkedTotals(userId, date);
+    }
+
+    @Override
+    public BalanceTotals recomputeBalance(Long userId, LocalDate date) {
+        if (isArchived(userId, date, false)) {
+            return archive.recomputeBalance(userId, date);
+        }
+        return dailyBalanceRepository.recompute(userId, date);
+    }
+
+    @Override
+    public List<Drift> findDrift(LocalDate from, LocalDate to) {
+        List<Drift> drifts = dailyBalanceRepository.findDrift(from, to);
+        if (!dayArchiver.mayBeArchived(from)) {
+            return drifts;
+        }
+        // Archived days have no rows left: check them against their masks instead
+        Map<Long, LocalDate> archivedBefore = userDayMaskRepository.findArchivedBefore(0, Long.MAX_VALUE);
+        List<Drift> checked = new ArrayList<>();
+        for (Drift drift : drifts) {
+            if (!isBefore(drift.date(), archivedBefore.get(drift.userId()))) {
+                checked.add(drift);
+            }
+        }
+        for (Drift drift : archive.findDrift(from, to)) {
+            if (isBefore(drift.date(), archivedBefore.get(drift.userId()))) {
+                checked.add(drift);
+            }
+        }
+        return checked;
+    }
+
+    @Override
+    public void forEachCheckedDay(long fromUserId, long toUserId, Consumer<CheckedDay> consumer) {
+        foldRows(rows -> userDailyActionRepository.forEachChecked(fromUserId, toUserId, rows), consumer);
+
+        Map<Long, LocalDate> archivedBefore = userDayMaskRepository.findArchivedBefore(fromUserId, toUserId);
+        if (!archivedBefore.isEmpty()) {
+            archive.forEachCheckedDay(fromUserId, toUserId, archived -> {
+                if (isBefore(archived.date(), archivedBefore.get(archived.userId())) && !archived.actionIds().isEmpty()) {
+                    consumer.accept(archived);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void forEachCheckedDayBetween(LocalDate from, LocalDate to, Consumer<CheckedDay> consumer) {
+        foldRows(rows -> userDailyActionRepository.forEachCheckedBetween(from, to, rows), consumer);
+        if (!dayArchiver.mayBeArchived(from)) {
+            return;
+        }
+        Map<Long, LocalDate> archivedBefore = userDayMaskRepository.findArchivedBefore(0, Long.MAX_VALUE);
+        archive.forEachCheckedDayBetween(from, to, archived -> {
+            if (isBefore(archived.date(), archivedBefore.get(archived.userId()))) {
+                consumer.accept(archived);
+            }
+        });
+    }
+
+    /**
+     * Rows come ordered by user and date: fold consecutive rows into one day.
+     */
+    private static void foldRows(Consumer<Consumer<ActionState>> source, Consumer<CheckedDay> consumer) {
+        CheckedDay[] day = new CheckedDay[1];
+        source.accept(row -> {
+            if (day[0] == null || !day[0].userId().equals(row.userId()) || !day[0].date().equals(row.date())) {
+                if (day[0] != null) {
+                    consumer.accept(day[0]);
+                }
+                day[0] = new CheckedDay(row.userId(), row.date(), new HashSet<>());
+            }
+            day[0].actionIds().add(row.actionId());
+        });
+        if (day[0] != null) {
+            consumer.accept(day[0]);
+        }
+    }
+
+    private Map<LocalDate, Set<Long>> rowCheckedActionIds(Long userId, Collection<LocalDate> dates) {
+        Map<LocalDate, Set<Long>> checked = new HashMap<>();
+        if (!dates.isEmpty()) {
+            for (Object[] row : userDailyActionRepository.findCheckedActionIds(userId, dates)) {
+                checked.computeIfAbsent((LocalDate) row[0], d -> new HashSet<>()).add((Long) row[1]);
+            }
+        }
+        return checked;
+    }
+
+    /**
+     * Whether the user's day is archived; the watermark is only read for days that may be.
+     * With {@code lock}, the user stays locked against an archive run until the end of the transaction.
+     */
+    private boolean isArchived(Long userId, LocalDate date, boolean lock) {
+        return dayArchiver.mayBeArchived(date) && isBefore(date, userDayMaskRepository.findArchivedBefore(userId, lock));
+    }
+
+    /**
+     * The user's watermark if one of the dates may be archived, otherwise null.
+     */
+    private LocalDate archivedBefore(Long userId, Collection<LocalDate> dates, boolean lock) {
+        return dates.stream().anyMatch(dayArchiver::mayBeArchived)
+                ? userDayMaskRepository.findArchivedBefore(userId, lock)
+                : null;
+    }
+
+    private static boolean isBefore(LocalDate date, LocalDate archivedBefore) {
+        return archivedBefore != null && date.isBefore(archivedBefore);
+    }
+}
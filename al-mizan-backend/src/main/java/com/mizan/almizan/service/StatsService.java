@@ -0,0 +1,151 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.dto.PeriodStatsDTO;
+import com.mizan.almizan.entity.BalanceRollup;
+import com.mizan.almizan.entity.BalanceRollup.PeriodType;
+import com.mizan.almizan.entity.CategoryRollup;
+import com.mizan.almizan.repository.BalanceRollupRepository;
+import com.mizan.almizan.repository.CategoryRollupRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Period statistics read from the weekly and monthly rollups (years are summed from months),
+ * so a query reads at most one rollup row per period plus one per period and category.
+ */
+@Service
+public class StatsService {
+
+    private final BalanceRollupRepository balanceRollupRepository;
+    private final CategoryRollupRepository categoryRollupRepository;
+    private final int maxPeriods;
+
+    public StatsService(BalanceRollupRepository balanceRollupRepository,
+                        CategoryRollupRepository categoryRollupRepository,
+                        @Value("${app.stats.max-periods:120}") int maxPeriods) {
+        this.balanceRollupRepository = balanceRollupRepository;
+        this.categoryRollupRepository = categoryRollupRepository;
+        this.maxPeriods = maxPeriods;
+    }
+
+    /**
+     * Stats of each WEEK, MONTH or YEAR overlapping [from, to], oldest first. Periods without
+     * any checked action are left out. Defaults to the last 12 weeks or months, or the last 5 years.
+     */
+    @Transactional(readOnly = true)
+    public List<PeriodStatsDTO> getStats(Long userId, String period, LocalDate from, LocalDate to) {
+        Granularity granularity = Granularity.parse(period);
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = granularity.startOf(from != null ? from : granularity.defaultFrom(end));
+        if (start.isAfter(end)) {
+            throw new RuntimeException("from must not be after to");
+        }
+        PeriodType stored = granularity.stored;
+        if (stored.unit().between(start, end) + 1 > maxPeriods) {
+            throw new RuntimeException("Range too long: at most " + maxPeriods + " " + stored.name().toLowerCase()
+                    + "s per query");
+        }
+
+        Map<LocalDate, Accumulator> periods = new TreeMap<>();
+        for (BalanceRollup rollup : balanceRollupRepository
+                .findByUserIdAndPeriodTypeAndPeriodStartBetweenOrderByPeriodStart(userId, stored, start, end)) {
+            periods.computeIfAbsent(granularity.startOf(rollup.getPeriodStart()), k -> new Accumulator()).add(rollup);
+        }
+        for (CategoryRollup rollup : categoryRollupRepository
+                .findByUserIdAndPeriodTypeAndPeriodStartBetween(userId, stored, start, end)) {
+            periods.computeIfAbsent(granularity.startOf(rollup.getPeriodStart()), k -> new Accumulator()).add(rollup);
+        }
+
+        List<PeriodStatsDTO> stats = new ArrayList<>();
+        periods.forEach((periodStart, accumulator) -> {
+            if (!accumulator.isEmpty()) {
+                stats.add(accumulator.toDto(granularity, periodStart));
+            }
+        });
+        return stats;
+    }
+
+    private enum Granularity {
+        WEEK(PeriodType.WEEK),
+        MONTH(PeriodType.MONTH),
+        YEAR(PeriodType.MONTH);
+
+        private final PeriodType stored;
+
+        Granularity(PeriodType stored) {
+            this.stored = stored;
+        }
+
+        static Granularity parse(String period) {
+            try {
+                return valueOf(period.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Unknown period: " + period + " (WEEK, MONTH or YEAR)");
+            }
+        }
+
+        LocalDate startOf(LocalDate date) {
+            return this == YEAR ? date.withDayOfYear(1) : stored.startOf(date);
+        }
+
+        LocalDate endOf(LocalDate periodStart) {
+            return this == YEAR ? periodStart.plusYears(1).minusDays(1) : stored.endOf(periodStart);
+        }
+
+        LocalDate defaultFrom(LocalDate to) {
+            return switch (this) {
+                case WEEK -> to.minusWeeks(11);
+                case MONTH -> to.minusMonths(11);
+                case YEAR -> to.minusYears(4);
+            };
+        }
+    }
+
+    private static class Accumulator {
+        private BalanceTotals totals = BalanceTotals.EMPTY;
+        private int positiveDays;
+        private int negativeDays;
+        private int neutralDays;
+        private final Map<String, BalanceTotals> categories = new TreeMap<>();
+
+        void add(BalanceRollup rollup) {
+            totals = totals.plus(new BalanceTotals(rollup.getGoodCount(), rollup.getBadCount(),
+                    rollup.getGoodWeight(), rollup.getBadWeight()));
+            positiveDays += rollup.getPositiveDays();
+            negativeDays += rollup.getNegativeDays();
+            neutralDays += rollup.getNeutralDays();
+        }
+
+        void add(CategoryRollup rollup) {
+            categories.merge(rollup.getCategory(), new BalanceTotals(rollup.getGoodCount(), rollup.getBadCount(),
+                    rollup.getGoodWeight(), rollup.getBadWeight()), BalanceTotals::plus);
+        }
+
+        boolean isEmpty() {
+            return positiveDays + negativeDays + neutralDays == 0 && totals.equals(BalanceTotals.EMPTY);
+        }
+
+        PeriodStatsDTO toDto(Granularity granularity, LocalDate periodStart) {
+            categories.values().removeIf(BalanceTotals.EMPTY::equals);
+            return PeriodStatsDTO.builder()
+                    .period(granularity.name())
+                    .startDate(periodStart)
+                    .endDate(granularity.endOf(periodStart))
+                    .goodCount(totals.goodCount())
+                    .badCount(totals.badCount())
+                    .goodWeight(totals.goodWeight())
+                    .badWeight(totals.badWeight())
+                    .verdict(totals.verdict().name())
+                    .positiveDays(positiveDays)
+                    .negativeDays(negativeDays)
+                    .neutralDays(neutralDays)
+                    .categories(categories)
+                    .build();
+        }
+    }
+}
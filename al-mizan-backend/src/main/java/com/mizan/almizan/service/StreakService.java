@@ -0,0 +1,85 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.StreakDTO;
+import com.mizan.almizan.dto.StreakState;
+import com.mizan.almizan.entity.DailyBalance.BalanceVerdict;
+import com.mizan.almizan.entity.UserStreak;
+import com.mizan.almizan.repository.UserStreakRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+/**
+ * Streaks of consecutive POSITIVE days, kept in user_streaks. A day that becomes or stops being
+ * positive is applied to the locked row in O(1) when it touches the latest run (extend, shorten,
+ * split, new run), in the transaction of the change. Edits of earlier runs, or of a one-day latest
+ * run, repair the row from the user's positive days instead.
+ */
+@Service
+@Slf4j
+public class StreakService {
+
+    private final UserStreakRepository userStreakRepository;
+    private final Counter incrementalCounter;
+    private final Counter repairCounter;
+
+    public StreakService(UserStreakRepository userStreakRepository, MeterRegistry meterRegistry) {
+        this.userStreakRepository = userStreakRepository;
+        this.incrementalCounter = Counter.builder("mizan.streaks.updates")
+                .description("Streak updates after a change of a day's verdict")
+                .tag("mode", "incremental")
+                .register(meterRegistry);
+        this.repairCounter = Counter.builder("mizan.streaks.updates")
+                .description("Streak updates after a change of a day's verdict")
+                .tag("mode", "repair")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onBalanceChanged(BalanceChangedEvent event) {
+        boolean wasPositive = event.previous().verdict() == BalanceVerdict.POSITIVE;
+        boolean positive = event.current().verdict() == BalanceVerdict.POSITIVE;
+        if (wasPositive == positive) {
+            return;
+        }
+        StreakState state = userStreakRepository.lockStreak(event.userId());
+        StreakState updated = (positive ? state.withPositive(event.date()) : state.withoutPositive(event.date()))
+                .orElse(null);
+        if (updated != null) {
+            incrementalCounter.increment();
+        } else {
+            log.debug("Streak of user {} repaired after a change on {}", event.userId(), event.date());
+            repairCounter.increment();
+            updated = userStreakRepository.computeStreak(event.userId());
+        }
+        userStreakRepository.updateStreak(event.userId(), updated);
+    }
+
+    /**
+     * Recompute the user's streak from its history, e.g. after daily_balances were changed outside the app.
+     */
+    @Transactional
+    public StreakState repair(Long userId) {
+        userStreakRepository.lockStreak(userId);
+        StreakState state = userStreakRepository.computeStreak(userId);
+        userStreakRepository.updateStreak(userId, state);
+        repairCounter.increment();
+        return state;
+    }
+
+    /**
+     * One primary-key read, whatever the length of the user's history.
+     */
+    @Transactional(readOnly = true)
+    public StreakDTO getStreak(Long userId) {
+        StreakState state = userStreakRepository.findById(userId)
+                .map(UserStreak::toState)
+                .orElse(StreakState.NONE);
+        return StreakDTO.from(state, LocalDate.now());
+    }
+}
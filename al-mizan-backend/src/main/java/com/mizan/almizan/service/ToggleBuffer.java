@@ -0,0 +1,324 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.config.AppThreads;
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.exception.ServiceBusyException;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import com.mizan.almizan.repository.UserDailyActionRepositoryCustom.ActionState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Optional write-behind mode for toggles (app.balance.write-behind.enabled).
+ * Toggles are coalesced per user into their final (action, date) state and flushed
+ * as JDBC batches on a short interval, when the buffer is half full, and on shutdown.
+ * Reads of a user's day apply the pending states on top of the database (read-your-writes).
+ * <p>
+ * The buffer holds at most {@code max-pending} states: beyond that, toggles are refused with a 503
+ * until a flush makes room. A failed batch is retried day by day; a day that still fails stays in
+ * the buffer and is retried with an exponential backoff (logged and counted), so an accepted toggle
+ * is never dropped and one bad day does not hold back the others.
+ */
+@Component
+@Slf4j
+public class ToggleBuffer {
+
+    private static final long MAX_BACKOFF_MS = 60_000;
+
+    private final CheckedActionStore checkedActionStore;
+    private final DailyBalanceRepository dailyBalanceRepository;
+    private final ActionCatalog actionCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int maxPending;
+    private final Duration retryAfter;
+    private final long flushIntervalMs;
+
+    // userId -> (actionId, date) -> final checked state
+    private final ConcurrentHashMap<Long, Map<PendingKey, Boolean>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    // Days whose last flush failed: not retried before their backoff ends (guarded by flushLock)
+    private final Map<UserDay, Backoff> backoffs = new HashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ExecutorService flushExecutor;
+
+    private final Counter toggleCounter;
+    private final Counter writeCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+    private final Timer flushTimer;
+
+    public ToggleBuffer(CheckedActionStore checkedActionStore,
+                        DailyBalanceRepository dailyBalanceRepository,
+                        ActionCatalog actionCatalog,
+                        ApplicationEventPublisher eventPublisher,
+                        TransactionTemplate transactionTemplate,
+                        AppThreads appThreads,
+                        MeterRegistry meterRegistry,
+                        @Value("${app.balance.write-behind.enabled:false}") boolean enabled,
+                        @Value("${app.balance.write-behind.max-pending:1000}") int maxPending,
+                        @Value("${app.balance.write-behind.flush-interval-ms:500}") long flushIntervalMs) {
+        this.checkedActionStore = checkedActionStore;
+        this.dailyBalanceRepository = dailyBalanceRepository;
+        this.actionCatalog = actionCatalog;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.retryAfter = Duration.ofMillis(flushIntervalMs);
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushExecutor = Executors.newSingleThreadExecutor(appThreads.daemonFactory("toggle-flush"));
+
+        this.toggleCounter = Counter.builder("mizan.balance.writebehind.toggles")
+                .description("Toggles accepted by the write-behind buffer")
+                .register(meterRegistry);
+        this.writeCounter = Counter.builder("mizan.balance.writebehind.writes")
+                .description("Rows written by write-behind flushes")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("mizan.balance.writebehind.failed")
+                .description("Days whose flush failed, kept in the buffer for a later retry")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("mizan.balance.writebehind.rejected")
+                .description("Toggles refused because the write-behind buffer was full")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("mizan.balance.writebehind.flush")
+                .description("Duration of a write-behind flush")
+                .register(meterRegistry);
+        Gauge.builder("mizan.balance.writebehind.depth", depth, AtomicInteger::get)
+                .description("Pending toggles in the write-behind buffer")
+                .register(meterRegistry);
+        Gauge.builder("mizan.balance.writebehind.coalescing.ratio", this,
+                        b -> b.writeCounter.count() > 0 ? b.toggleCounter.count() / b.writeCounter.count() : 0)
+                .description("Toggles received per row written")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue the final states of the user's toggles, all or none.
+     *
+     * @throws ServiceBusyException when the new states do not fit in the buffer
+     */
+    public void enqueue(Long userId, Collection<ActionState> states) {
+        Map<PendingKey, Boolean> userPending = pending.get(userId);
+        int added = (int) states.stream()
+                .map(state -> new PendingKey(state.actionId(), state.date()))
+                .distinct()
+                .filter(key -> userPending == null || !userPending.containsKey(key))
+                .count();
+        // Reserve the room first, so concurrent toggles cannot all pass the check
+        if (added > 0 && depth.addAndGet(added) > maxPending) {
+            depth.addAndGet(-added);
+            rejectedCounter.increment(states.size());
+            flushExecutor.execute(this::flush);
+            throw new ServiceBusyException("Too many pending toggles, retry later", retryAfter);
+        }
+        toggleCounter.increment(states.size());
+        int[] inserted = new int[1];
+        pending.compute(userId, (id, current) -> {
+            Map<PendingKey, Boolean> userStates = current != null ? current : new ConcurrentHashMap<>();
+            for (ActionState state : states) {
+                if (userStates.put(new PendingKey(state.actionId(), state.date()), state.checked()) == null) {
+                    inserted[0]++;
+                }
+            }
+            return userStates;
+        });
+        // The user's entries may have changed since they were counted
+        if (inserted[0] != added) {
+            depth.addAndGet(inserted[0] - added);
+        }
+        if (depth.get() >= maxPending / 2) {
+            flushExecutor.execute(this::flush);
+        }
+    }
+
+    public boolean hasPending(Long userId, LocalDate date) {
+        Map<PendingKey, Boolean> userPending = pending.get(userId);
+        return userPending != null && userPending.keySet().stream().anyMatch(key -> key.date().equals(date));
+    }
+
+    /**
+     * Apply the user's pending states for the date on top of the persisted checked action ids.
+     */
+    public Set<Long> applyPending(Long userId, LocalDate date, Set<Long> persistedChecked) {
+        Map<PendingKey, Boolean> userPending = pending.get(userId);
+        if (userPending == null) {
+            return persistedChecked;
+        }
+        Set<Long> checked = new HashSet<>(persistedChecked);
+        userPending.forEach((key, state) -> {
+            if (key.date().equals(date)) {
+                if (state) {
+                    checked.add(key.actionId());
+                } else {
+                    checked.remove(key.actionId());
+                }
+            }
+        });
+        return checked;
+    }
+
+    @Scheduled(fixedDelayString = "${app.balance.write-behind.flush-interval-ms:500}")
+    public void scheduledFlush() {
+        if (enabled) {
+            flush();
+        }
+    }
+
+    /**
+     * Write all pending states in one transaction: the day records as JDBC batches, then one
+     * recompute per affected day. Entries are dropped from the buffer only after commit,
+     * and only if they were not toggled again in the meantime. If the batch fails, each day
+     * is retried in its own transaction. Days still in their backoff wait for a later flush.
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    private void flush(boolean ignoreBackoff) {
+        if (pending.isEmpty() || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            Map<UserDay, List<ActionState>> byDay = new LinkedHashMap<>();
+            pending.forEach((userId, userPending) -> userPending.forEach((key, checked) -> {
+                UserDay userDay = new UserDay(userId, key.date());
+                Backoff backoff = backoffs.get(userDay);
+                if (ignoreBackoff || backoff == null || backoff.retryAt() <= now) {
+                    byDay.computeIfAbsent(userDay, day -> new ArrayList<>())
+                            .add(new ActionState(userId, key.actionId(), key.date(), checked));
+                }
+            }));
+            if (byDay.isEmpty()) {
+                return;
+            }
+            try {
+                flushTimer.record(() -> write(byDay));
+            } catch (RuntimeException e) {
+                log.warn("Write-behind batch of {} day(s) failed, retrying day by day: {}", byDay.size(), e.getMessage());
+                flushDayByDay(byDay);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Failed days stay in the buffer and back off (interval x 2^failures, at most a minute), so a
+     * transient failure is retried and a persistent one does not slow down every flush.
+     */
+    private void flushDayByDay(Map<UserDay, List<ActionState>> byDay) {
+        long now = System.currentTimeMillis();
+        byDay.forEach((day, dayStates) -> {
+            try {
+                write(Map.of(day, dayStates));
+            } catch (RuntimeException e) {
+                Backoff previous = backoffs.get(day);
+                int failures = previous != null ? previous.failures() + 1 : 1;
+                long delay = Math.min(flushIntervalMs << Math.min(failures, 16), MAX_BACKOFF_MS);
+                backoffs.put(day, new Backoff(failures, now + delay));
+                failedCounter.increment();
+                log.error("Write-behind flush of user {} on {} failed ({} time(s)), keeping {} toggle(s), retry in {} ms: {}",
+                        day.userId(), day.date(), failures, dayStates.size(), delay, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Write the days in one transaction, then remove their states from the buffer.
+     */
+    private void write(Map<UserDay, List<ActionState>> byDay) {
+        List<ActionState> states = byDay.values().stream().flatMap(List::stream).toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            // Checked actions before the flush, for the per-category changes of each day
+            Map<UserDay, Set<Long>> before = new HashMap<>();
+            byDay.keySet().forEach(day -> before.put(day, checkedActionStore.checkedActionIds(day.userId(), day.date())));
+            checkedActionStore.applyStates(states);
+            byDay.forEach((day, dayStates) -> recompute(day, before.get(day), dayStates));
+        });
+        writeCounter.increment(states.size());
+        backoffs.keySet().removeAll(byDay.keySet());
+        remove(states);
+        log.debug("Write-behind flush: {} row state(s) written", states.size());
+    }
+
+    /**
+     * Remove the states from the buffer, unless they were toggled again in the meantime.
+     */
+    private void remove(List<ActionState> states) {
+        for (ActionState state : states) {
+            pending.computeIfPresent(state.userId(), (id, userPending) -> {
+                if (userPending.remove(new PendingKey(state.actionId(), state.date()), state.checked())) {
+                    depth.decrementAndGet();
+                }
+                return userPending.isEmpty() ? null : userPending;
+            });
+        }
+    }
+
+    private void recompute(UserDay day, Set<Long> checkedBefore, List<ActionState> dayStates) {
+        BalanceTotals previous = dailyBalanceRepository.findByUserIdAndBalanceDate(day.userId(), day.date())
+                .map(BalanceTotals::of)
+                .orElse(BalanceTotals.EMPTY);
+        BalanceTotals current = checkedActionStore.recomputeBalance(day.userId(), day.date());
+
+        Set<Long> checkedAfter = new HashSet<>(checkedBefore);
+        for (ActionState state : dayStates) {
+            if (state.checked()) {
+                checkedAfter.add(state.actionId());
+            } else {
+                checkedAfter.remove(state.actionId());
+            }
+        }
+        Map<String, BalanceTotals> categoryChanges = actionCatalog.snapshot().categoryChanges(checkedBefore, checkedAfter);
+        if (!current.equals(previous) || !categoryChanges.isEmpty()) {
+            eventPublisher.publishEvent(
+                    new BalanceChangedEvent(day.userId(), day.date(), previous, current, categoryChanges,
+                            BalanceChangedEvent.actionChanges(checkedBefore, checkedAfter)));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        if (enabled) {
+            // Graceful shutdown: nothing accepted by the buffer may be lost
+            flushLock.lock();
+            flushLock.unlock();
+            flush(true);
+        }
+    }
+
+    private record PendingKey(Long actionId, LocalDate date) {
+    }
+
+    private record UserDay(Long userId, LocalDate date) {
+    }
+
+    private record Backoff(int failures, long retryAt) {
+    }
+}
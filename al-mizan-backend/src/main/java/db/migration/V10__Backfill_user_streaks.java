@@ -0,0 +1,19 @@
+package db.migration;
+
+import com.mizan.almizan.repository.UserStreakRepositoryImpl;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Computes the streak of every user with positive days from the existing daily_balances rows.
+ */
+public class V10__Backfill_user_streaks extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        UserStreakRepositoryImpl.rebuildAll(jdbcTemplate);
+    }
+}
@@ -0,0 +1,24 @@
+package db.migration;
+
+import com.mizan.almizan.repository.UserDayMaskRepositoryImpl;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.SQLException;
+
+/**
+ * Copies the existing user_daily_actions rows into user_day_masks (the rows are kept,
+ * the default day format still reads them).
+ */
+public class V3__Convert_daily_actions_to_masks extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        boolean postgres = context.getConnection().getMetaData().getDatabaseProductName()
+                .toLowerCase().contains("postgres");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        UserDayMaskRepositoryImpl.convertAllRows(jdbcTemplate, postgres, 5000, false);
+    }
+}
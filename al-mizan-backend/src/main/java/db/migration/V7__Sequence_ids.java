@@ -0,0 +1,44 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.SQLException;
+
+/**
+ * Moves the BIGSERIAL identifiers to sequences incremented by the entities' allocation size, so
+ * Hibernate takes ids from a pool and can batch inserts. Each sequence starts after the current
+ * max id and stays the column default, for the inserts written in SQL.
+ * <p>
+ * An insert written in SQL takes one value of the shared sequence, which is the bottom of a pool of
+ * 50 ids (pooled-lo): it uses that id and the 49 above it are never handed out. This inflation is
+ * accepted. A separate increment-1 sequence would hand out ids inside the pools Hibernate draws, and
+ * a bigint still allows about 1.8e17 such inserts per table.
+ */
+public class V7__Sequence_ids extends BaseJavaMigration {
+
+    private static final String[] TABLES = {"app_users", "actions", "user_daily_actions", "daily_balances"};
+    private static final int ALLOCATION_SIZE = 50;
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        boolean postgres = context.getConnection().getMetaData().getDatabaseProductName()
+                .toLowerCase().contains("postgres");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        for (String table : TABLES) {
+            String sequence = table + "_seq";
+            long start = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table, Long.class);
+            jdbcTemplate.execute("CREATE SEQUENCE " + sequence + " START WITH " + start + " INCREMENT BY " + ALLOCATION_SIZE);
+            if (postgres) {
+                jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id SET DEFAULT nextval('" + sequence + "')");
+                jdbcTemplate.execute("DROP SEQUENCE IF EXISTS " + table + "_id_seq");
+                jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " OWNED BY " + table + ".id");
+            } else {
+                jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id DROP IDENTITY");
+                jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id SET DEFAULT NEXT VALUE FOR " + sequence);
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+-- =====================================================
+-- Archival of old user_daily_actions rows into user_day_masks
+-- =====================================================
+
+-- Days of the user before this date are archived: read and written as user_day_masks, never as rows
+ALTER TABLE app_users ADD COLUMN actions_archived_before DATE;
@@ -0,0 +1,15 @@
+-- =====================================================
+-- Compact day records: one bitmask row per user and day
+-- =====================================================
+
+-- Stable bit of each action in day masks (never reused)
+ALTER TABLE actions ADD COLUMN bit_index INTEGER;
+UPDATE actions a SET bit_index = (SELECT COUNT(*) FROM actions b WHERE b.id < a.id);
+CREATE UNIQUE INDEX idx_actions_bit_index ON actions(bit_index);
+
+CREATE TABLE user_day_masks (
+    user_id BIGINT NOT NULL REFERENCES app_users(id) ON DELETE CASCADE,
+    mask_date DATE NOT NULL,
+    checked_mask BYTEA NOT NULL,
+    PRIMARY KEY (user_id, mask_date)
+);
@@ -0,0 +1,30 @@
+-- =====================================================
+-- Weekly / monthly rollups of daily balances, maintained incrementally
+-- =====================================================
+
+-- period_type: WEEK (period_start = ISO Monday) or MONTH (period_start = 1st of the month)
+CREATE TABLE balance_rollups (
+    user_id BIGINT NOT NULL REFERENCES app_users(id) ON DELETE CASCADE,
+    period_type VARCHAR(10) NOT NULL,
+    period_start DATE NOT NULL,
+    good_count INTEGER NOT NULL DEFAULT 0,
+    bad_count INTEGER NOT NULL DEFAULT 0,
+    good_weight INTEGER NOT NULL DEFAULT 0,
+    bad_weight INTEGER NOT NULL DEFAULT 0,
+    positive_days INTEGER NOT NULL DEFAULT 0,
+    negative_days INTEGER NOT NULL DEFAULT 0,
+    neutral_days INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, period_type, period_start)
+);
+
+CREATE TABLE category_rollups (
+    user_id BIGINT NOT NULL REFERENCES app_users(id) ON DELETE CASCADE,
+    period_type VARCHAR(10) NOT NULL,
+    period_start DATE NOT NULL,
+    category VARCHAR(100) NOT NULL,
+    good_count INTEGER NOT NULL DEFAULT 0,
+    bad_count INTEGER NOT NULL DEFAULT 0,
+    good_weight INTEGER NOT NULL DEFAULT 0,
+    bad_weight INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, period_type, period_start, category)
+);
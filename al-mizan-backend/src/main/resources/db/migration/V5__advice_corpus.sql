@@ -0,0 +1,22 @@
+-- =====================================================
+-- AI advice corpus: generated advice persisted per prompt inputs, loaded on startup
+-- =====================================================
+
+-- variant: 0..(app.ai.advice-cache.variants - 1), answers served in rotation for the same inputs
+CREATE TABLE advice_corpus (
+    good_count INTEGER NOT NULL,
+    good_weight INTEGER NOT NULL,
+    bad_count INTEGER NOT NULL,
+    bad_weight INTEGER NOT NULL,
+    verdict VARCHAR(20) NOT NULL,
+    lang VARCHAR(2) NOT NULL,
+    variant INTEGER NOT NULL,
+    advice VARCHAR(4000) NOT NULL,
+    encouragement VARCHAR(4000) NOT NULL,
+    hadith_reference VARCHAR(4000) NOT NULL,
+    generation_ms INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (good_count, good_weight, bad_count, bad_weight, verdict, lang, variant)
+);
+
+CREATE INDEX idx_advice_corpus_created ON advice_corpus(created_at);
@@ -0,0 +1,6 @@
+-- =====================================================
+-- Per-day version of daily_balances, bumped by every write of the day's row.
+-- It backs the ETag of the day view (GET /api/day).
+-- =====================================================
+
+ALTER TABLE daily_balances ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,19 @@
+-- =====================================================
+-- Community statistics: periodic snapshots of the in-memory counters (absolute values per day)
+-- =====================================================
+
+-- Users whose day is positive, negative or neutral (days without any checked action are not counted)
+CREATE TABLE community_day_stats (
+    stat_date DATE PRIMARY KEY,
+    positive_users BIGINT NOT NULL DEFAULT 0,
+    negative_users BIGINT NOT NULL DEFAULT 0,
+    neutral_users BIGINT NOT NULL DEFAULT 0
+);
+
+-- Users who checked the action on the day
+CREATE TABLE community_action_stats (
+    stat_date DATE NOT NULL,
+    action_id BIGINT NOT NULL REFERENCES actions(id) ON DELETE CASCADE,
+    checked_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (stat_date, action_id)
+);
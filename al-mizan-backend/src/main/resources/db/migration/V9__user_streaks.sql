@@ -0,0 +1,12 @@
+-- =====================================================
+-- Streaks of consecutive POSITIVE days, maintained incrementally (filled by V10)
+-- =====================================================
+
+-- Latest run: run_length days ending on last_positive_date; earlier_best_length: longest run before it
+CREATE TABLE user_streaks (
+    user_id BIGINT PRIMARY KEY REFERENCES app_users(id) ON DELETE CASCADE,
+    run_length INTEGER NOT NULL DEFAULT 0,
+    last_positive_date DATE,
+    best_length INTEGER NOT NULL DEFAULT 0,
+    earlier_best_length INTEGER NOT NULL DEFAULT 0
+);
@@ -0,0 +1,97 @@
+package com.mizan.almizan;
+
+import com.mizan.almizan.entity.AppUser;
+import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.security.JwtUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * An advice request waiting on the model holds no pooled connection: with a pool of one, the
+ * database stays usable while the model call is pending.
+ */
+@SpringBootTest(properties = {"spring.datasource.hikari.maximum-pool-size=1",
+        "spring.datasource.hikari.connection-timeout=250"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AdviceConnectionTest {
+
+    private static final CountDownLatch modelCalled = new CountDownLatch(1);
+    private static final CountDownLatch modelReleased = new CountDownLatch(1);
+
+    @TestConfiguration
+    static class PendingModelConfig {
+
+        @Bean
+        @Primary
+        ChatModel pendingModel() {
+            return new ChatModel() {
+                @Override
+                public ChatResponse call(Prompt prompt) {
+                    modelCalled.countDown();
+                    try {
+                        modelReleased.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new ChatResponse(List.of(new Generation(new AssistantMessage(
+                            "{\"advice\": \"a\", \"encouragement\": \"e\", \"hadithReference\": \"h\"}"))));
+                }
+            };
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void pendingModelCallHoldsNoConnection() throws Exception {
+        AppUser user = TestFixtures.newUser(userRepository, "advice");
+        MvcResult started = mockMvc.perform(get("/api/advice/today")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtUtils.generateToken(user.getId(), user.getUsername())))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertTrue(modelCalled.await(5, TimeUnit.SECONDS));
+
+        // Fails on the 250 ms connection timeout if the request still holds the only connection
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT 1", Integer.class));
+
+        modelReleased.countDown();
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,93 @@
+package com.mizan.almizan;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mizan.almizan.entity.AppUser;
+import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.security.JwtUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * Server-Sent Events of /api/advice/today/stream against the local stub model: the advice text
+ * arrives as "delta" events, then one final "advice" event carries the complete advice.
+ */
+@SpringBootTest(properties = {"app.ai.stub.enabled=true", "app.ai.stub.chunk-delay=1ms"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AdviceStreamTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void deltasThenOneFinalAdviceEvent() throws Exception {
+        AppUser user = TestFixtures.newUser(userRepository, "stream");
+        MvcResult result = mockMvc.perform(get("/api/advice/today/stream").param("lang", "en")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtUtils.generateToken(user.getId(), user.getUsername()))
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(10_000);
+
+        List<String[]> events = events(result.getResponse().getContentAsString(StandardCharsets.UTF_8));
+        assertTrue(events.size() > 2, "advice streamed in several deltas: " + events.size());
+        StringBuilder text = new StringBuilder();
+        for (String[] event : events.subList(0, events.size() - 1)) {
+            assertEquals("delta", event[0]);
+            text.append(objectMapper.readTree(event[1]).get("text").asText());
+        }
+        String[] last = events.get(events.size() - 1);
+        assertEquals("advice", last[0]);
+        JsonNode advice = objectMapper.readTree(last[1]);
+        assertEquals(advice.get("advice").asText(), text.toString());
+        assertTrue(advice.get("advice").asText().startsWith("Keep up"), advice.toString());
+    }
+
+    /**
+     * Name and data of each event of an SSE body.
+     */
+    private static List<String[]> events(String body) {
+        List<String[]> events = new ArrayList<>();
+        for (String block : body.split("\n\n")) {
+            String name = null;
+            StringBuilder data = new StringBuilder();
+            for (String line : block.split("\n")) {
+                if (line.startsWith("event:")) {
+                    name = line.substring("event:".length()).trim();
+                } else if (line.startsWith("data:")) {
+                    data.append(line.substring("data:".length()));
+                }
+            }
+            if (name != null) {
+                events.add(new String[]{name, data.toString()});
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,89 @@
+package com.mizan.almizan;
+
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.entity.AppUser;
+import com.mizan.almizan.entity.UserDailyAction;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips of a multi-row JPA insert on H2 in PostgreSQL mode. With pooled sequence ids
+ * (allocation 50) rows go out as JDBC batches; without batching, every row is its own round trip.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:batch-${random.uuid};MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE")
+@ActiveProfiles("test")
+class BatchInsertTest {
+
+    private static final int ROWS = 120;
+
+    @TestConfiguration
+    static class CountingDataSourceConfig {
+
+        @Bean
+        static BeanPostProcessor countingDataSource() {
+            return StatementCounter.postProcessor();
+        }
+    }
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void multiRowInsertIsBatched() {
+        Long userId = transactionTemplate.execute(status -> {
+            AppUser user = AppUser.builder().username("batch-" + UUID.randomUUID())
+                    .email(UUID.randomUUID() + "@test").password("x").build();
+            entityManager.persist(user);
+            return user.getId();
+        });
+        Long actionId = transactionTemplate.execute(status -> {
+            Action action = Action.builder().nameAr("a").nameFr("a").nameEn("a")
+                    .type(Action.ActionType.GOOD).weight(1).category("WORSHIP").active(true).build();
+            entityManager.persist(action);
+            return action.getId();
+        });
+
+        int batched = roundTripsToInsert(userId, actionId, LocalDate.now().minusDays(ROWS), null);
+        int unbatched = roundTripsToInsert(userId, actionId, LocalDate.now().minusDays(2L * ROWS), 1);
+
+        // 3 batches of 50 rows + 3 sequence calls (one per pool of 50 ids)
+        assertEquals(6, batched);
+        assertTrue(unbatched >= ROWS, "one round trip per row without batching: " + unbatched);
+    }
+
+    /**
+     * Persist ROWS user_daily_actions in one transaction and count the executed statements.
+     *
+     * @param batchSize session JDBC batch size, null for the configured one
+     */
+    private int roundTripsToInsert(Long userId, Long actionId, LocalDate firstDate, Integer batchSize) {
+        StatementCounter.reset();
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            AppUser user = entityManager.getReference(AppUser.class, userId);
+            Action action = entityManager.getReference(Action.class, actionId);
+            for (int i = 0; i < ROWS; i++) {
+                entityManager.persist(UserDailyAction.builder()
+                        .user(user).action(action).actionDate(firstDate.plusDays(i)).checked(true).build());
+            }
+        });
+        return StatementCounter.executed();
+    }
+}
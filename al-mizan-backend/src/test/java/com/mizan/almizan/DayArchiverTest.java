@@ -0,0 +1,147 @@
+package com.mizan.almizan;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.dto.CheckActionRequest;
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.repository.ActionRepository;
+import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.service.ActionCatalog;
+import com.mizan.almizan.service.BalanceService;
+import com.mizan.almizan.service.CheckedActionStore;
+import com.mizan.almizan.service.DayArchiver;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Archival of old rows into day masks: chunks committed before a failure stay archived and the
+ * next run resumes after them, the watermark routes each user's days, and archived days are
+ * read and written as before.
+ */
+@SpringBootTest(properties = "app.balance.archive.batch-rows=4")
+@ActiveProfiles("test")
+class DayArchiverTest {
+
+    @Autowired
+    private DayArchiver dayArchiver;
+
+    @Autowired
+    private BalanceService balanceService;
+
+    @Autowired
+    private CheckedActionStore checkedActionStore;
+
+    @Autowired
+    private ActionRepository actionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ActionCatalog actionCatalog;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void interruptedRunResumesAndArchivedDaysStayTransparent() {
+        List<Long> a = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            a.add(actionRepository.save(TestFixtures.action("a" + i,
+                    i == 1 ? Action.ActionType.BAD : Action.ActionType.GOOD, 1 + i)).getId());
+        }
+        actionCatalog.refresh();
+        LocalDate today = LocalDate.now();
+        LocalDate before = today.minusDays(90);
+        LocalDate first = today.minusDays(120);
+        LocalDate second = today.minusDays(100);
+        LocalDate recent = today.minusDays(10);
+
+        // Four old rows per user: one chunk each. Only the last user checked a3.
+        List<Long> users = new ArrayList<>();
+        Map<String, Set<Long>> expected = new HashMap<>();
+        for (int u = 0; u < 3; u++) {
+            Long userId = newUser();
+            users.add(userId);
+            boolean last = u == 2;
+            check(userId, first, Set.of(a.get(0), last ? a.get(3) : a.get(1)), expected);
+            check(userId, second, Set.of(last ? a.get(1) : a.get(0), a.get(2)), expected);
+            check(userId, recent, Set.of(a.get(0)), expected);
+        }
+
+        // a3 loses its bit: the last user's chunk is refused, the first two are archived
+        jdbcTemplate.update("UPDATE actions SET bit_index = NULL WHERE id = ?", a.get(3));
+        assertThrows(IllegalStateException.class, () -> dayArchiver.archive(before));
+        assertEquals(before, watermark(users.get(0)));
+        assertEquals(before, watermark(users.get(1)));
+        assertNull(watermark(users.get(2)));
+        assertEquals(0, oldRows(users.get(0), before));
+        assertEquals(4, oldRows(users.get(2), before));
+        assertReads(users, expected);
+
+        actionCatalog.refresh();  // gives a3 a bit again
+        assertEquals(4, dayArchiver.archive(before));
+        assertEquals(before, watermark(users.get(2)));
+        assertEquals(0, oldRows(null, before));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_daily_actions", Integer.class));
+        assertReads(users, expected);
+        assertEquals(0, dayArchiver.archive(before));
+
+        // Writes on an archived day go to its mask, not to new rows
+        Long userId = users.get(0);
+        balanceService.toggleAction(userId, new CheckActionRequest(a.get(1), first, false));
+        balanceService.toggleAction(userId, new CheckActionRequest(a.get(3), first, true));
+        expected.put(userId + "/" + first, Set.of(a.get(0), a.get(3)));
+        assertEquals(0, oldRows(userId, before));
+        assertReads(users, expected);
+    }
+
+    private void check(Long userId, LocalDate date, Set<Long> actionIds, Map<String, Set<Long>> expected) {
+        actionIds.forEach(actionId -> balanceService.toggleAction(userId, new CheckActionRequest(actionId, date, true)));
+        expected.put(userId + "/" + date, actionIds);
+    }
+
+    /**
+     * Checked actions and stored balance of every seeded day, whether kept as rows or as masks.
+     */
+    private void assertReads(List<Long> users, Map<String, Set<Long>> expected) {
+        ActionCatalog.Snapshot catalog = actionCatalog.snapshot();
+        expected.forEach((key, actionIds) -> {
+            Long userId = Long.valueOf(key.substring(0, key.indexOf('/')));
+            LocalDate date = LocalDate.parse(key.substring(key.indexOf('/') + 1));
+            assertEquals(actionIds, checkedActionStore.checkedActionIds(userId, date), key);
+            BalanceTotals totals = catalog.totalsOf(actionIds);
+            assertEquals(totals, checkedActionStore.totals(userId, date), key);
+            assertEquals(totals.goodWeight(), balanceService.getBalance(userId, date).getGoodWeight(), key);
+        });
+        assertEquals(users.size() * 3, expected.size());
+    }
+
+    private LocalDate watermark(Long userId) {
+        Date date = jdbcTemplate.queryForObject(
+                "SELECT actions_archived_before FROM app_users WHERE id = ?", Date.class, userId);
+        return date != null ? date.toLocalDate() : null;
+    }
+
+    private int oldRows(Long userId, LocalDate before) {
+        return userId == null
+                ? jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_daily_actions WHERE action_date < ?",
+                        Integer.class, Date.valueOf(before))
+                : jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_daily_actions WHERE user_id = ? AND action_date < ?",
+                        Integer.class, userId, Date.valueOf(before));
+    }
+
+    private Long newUser() {
+        return TestFixtures.newUser(userRepository, "archive").getId();
+    }
+}
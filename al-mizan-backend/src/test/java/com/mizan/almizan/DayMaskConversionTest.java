@@ -0,0 +1,96 @@
+package com.mizan.almizan;
+
+import com.mizan.almizan.dto.CheckActionRequest;
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.repository.ActionRepository;
+import com.mizan.almizan.repository.UserDailyActionRepository;
+import com.mizan.almizan.repository.UserDailyActionRepositoryCustom.ActionState;
+import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.service.ActionCatalog;
+import com.mizan.almizan.service.BalanceService;
+import com.mizan.almizan.service.CheckedActionStore;
+import com.mizan.almizan.service.DayMaskConversion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Moving rows written in the rows format into the masks of the bitmask format.
+ */
+@SpringBootTest(properties = {"app.balance.day-format=bitmask", "app.balance.convert-rows.batch-rows=3"})
+@ActiveProfiles("test")
+class DayMaskConversionTest {
+
+    @Autowired
+    private DayMaskConversion dayMaskConversion;
+
+    @Autowired
+    private CheckedActionStore checkedActionStore;
+
+    @Autowired
+    private BalanceService balanceService;
+
+    @Autowired
+    private ActionRepository actionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserDailyActionRepository userDailyActionRepository;
+
+    @Autowired
+    private ActionCatalog actionCatalog;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void rowsAreMergedIntoExistingMasksAndOnlyFoldedRowsDeleted() {
+        List<Long> actionIds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            actionIds.add(actionRepository.save(TestFixtures.action("a" + i, Action.ActionType.GOOD, 1)).getId());
+        }
+        actionCatalog.refresh();
+        LocalDate day = LocalDate.now().minusDays(1);
+        List<Long> userIds = new ArrayList<>();
+        List<ActionState> rows = new ArrayList<>();
+        for (int u = 0; u < 5; u++) {
+            Long userId = newUser();
+            userIds.add(userId);
+            // Toggled in bitmask mode: must survive the conversion of the same day
+            balanceService.toggleAction(userId, new CheckActionRequest(actionIds.get(0), day, true));
+            rows.add(new ActionState(userId, actionIds.get(1), day, true));
+            rows.add(new ActionState(userId, actionIds.get(2), day.minusDays(1), true));
+        }
+        userDailyActionRepository.applyStates(rows);
+
+        // An action without a bit: nothing is converted
+        jdbcTemplate.update("UPDATE actions SET bit_index = NULL WHERE id = ?", actionIds.get(3));
+        assertThrows(IllegalStateException.class, () -> dayMaskConversion.convert());
+        assertEquals(rows.size(), userDailyActionRepository.count());
+        actionCatalog.refresh();  // gives it a bit again
+
+        assertEquals(rows.size(), dayMaskConversion.convert());
+        assertEquals(0, userDailyActionRepository.count());
+        for (Long userId : userIds) {
+            assertEquals(Set.of(actionIds.get(0), actionIds.get(1)), checkedActionStore.checkedActionIds(userId, day));
+            assertEquals(Set.of(actionIds.get(2)), checkedActionStore.checkedActionIds(userId, day.minusDays(1)));
+        }
+        assertEquals(0, dayMaskConversion.convert());
+    }
+
+    private Long newUser() {
+        return TestFixtures.newUser(userRepository, "convert").getId();
+    }
+}
@@ -0,0 +1,206 @@
+package com.mizan.almizan;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.AppUser;
+import com.mizan.almizan.repository.ActionRepository;
+import com.mizan.almizan.repository.DailyBalanceRepository;
+import com.mizan.almizan.repository.UserDailyActionRepository;
+import com.mizan.almizan.repository.UserDailyActionRepositoryCustom.ActionState;
+import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.security.JwtUtils;
+import com.mizan.almizan.service.ActionCatalog;
+import com.mizan.almizan.service.DayArchiver;
+import com.mizan.almizan.service.HistoryExportService;
+import com.mizan.almizan.service.HistoryExportService.Format;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Streaming export of a user's history: content of every day (rows and archived masks),
+ * the gzipped endpoint, and the throughput over ten years of history.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class HistoryExportTest {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryExportTest.class);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private HistoryExportService historyExportService;
+
+    @Autowired
+    private DayArchiver dayArchiver;
+
+    @Autowired
+    private ActionRepository actionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserDailyActionRepository userDailyActionRepository;
+
+    @Autowired
+    private DailyBalanceRepository dailyBalanceRepository;
+
+    @Autowired
+    private ActionCatalog actionCatalog;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    private List<Long> actionIds;
+
+    @BeforeEach
+    void setUp() {
+        actionIds = TestFixtures.sixActions(actionRepository, actionCatalog);
+    }
+
+    @Test
+    void everyDayIsExportedWithItsCheckedActions() throws Exception {
+        AppUser user = newUser();
+        Map<LocalDate, Set<Long>> history = seed(user.getId(), 200);
+        String ndjson = export(user.getId(), Format.NDJSON);
+        String csv = export(user.getId(), Format.CSV);
+
+        List<String> lines = ndjson.lines().toList();
+        assertEquals(200, lines.size());
+        List<String> rows = csv.lines().toList();
+        assertEquals(201, rows.size());
+        assertEquals("date,good_count,bad_count,good_weight,bad_weight,verdict,checked_action_ids", rows.get(0));
+        int i = 0;
+        for (Map.Entry<LocalDate, Set<Long>> day : history.entrySet()) {
+            BalanceTotals totals = actionCatalog.snapshot().totalsOf(day.getValue());
+            String ids = day.getValue().stream().sorted().map(String::valueOf).reduce((a, b) -> a + ";" + b).orElse("");
+            assertEquals(day.getKey() + "," + totals.goodCount() + "," + totals.badCount() + "," + totals.goodWeight()
+                    + "," + totals.badWeight() + "," + totals.verdict() + "," + ids, rows.get(i + 1));
+            assertTrue(lines.get(i).startsWith("{\"date\":\"" + day.getKey() + "\""), lines.get(i));
+            i++;
+        }
+
+        // Archived days come from their masks: same export
+        dayArchiver.archive(LocalDate.now().minusDays(100));
+        assertEquals(ndjson, export(user.getId(), Format.NDJSON));
+        assertEquals(csv, export(user.getId(), Format.CSV));
+    }
+
+    @Test
+    void endpointStreamsGzippedCsv() throws Exception {
+        AppUser user = newUser();
+        seed(user.getId(), 30);
+        String bearer = "Bearer " + jwtUtils.generateToken(user.getId(), user.getUsername());
+
+        MvcResult started = mockMvc.perform(get("/api/balance/export").param("format", "csv")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+        byte[] body = result.getResponse().getContentAsByteArray();
+        String csv;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals(export(user.getId(), Format.CSV), csv);
+    }
+
+    @Test
+    void throughputOverTenYearsOfHistory() throws Exception {
+        AppUser user = newUser();
+        int days = 3650;
+        seed(user.getId(), days);
+        for (Format format : Format.values()) {
+            export(user.getId(), format);  // warm-up
+            CountingOutputStream out = new CountingOutputStream();
+            long start = System.nanoTime();
+            long exported = historyExportService.export(user.getId(), format, out);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            assertEquals(days, exported);
+            log.info("{} export: {} days, {} KiB in {} ms, {} rows/s", format, exported, out.bytes / 1024,
+                    Math.round(seconds * 1000), Math.round(exported / seconds));
+        }
+    }
+
+    private AppUser newUser() {
+        return TestFixtures.newUser(userRepository, "export");
+    }
+
+    /**
+     * Check 1 to 4 actions on each of the last {@code days} days, as JDBC batches.
+     *
+     * @return the checked action ids of each day, oldest first
+     */
+    private Map<LocalDate, Set<Long>> seed(Long userId, int days) {
+        Map<LocalDate, Set<Long>> history = new TreeMap<>();
+        Random random = new Random(days);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < days; i++) {
+            Set<Long> checked = new HashSet<>();
+            for (int k = 1 + random.nextInt(4); k > 0; k--) {
+                checked.add(actionIds.get(random.nextInt(actionIds.size())));
+            }
+            history.put(today.minusDays(i), checked);
+        }
+        List<ActionState> states = new ArrayList<>();
+        Map<LocalDate, BalanceTotals> totals = new HashMap<>();
+        history.forEach((date, checked) -> {
+            checked.forEach(actionId -> states.add(new ActionState(userId, actionId, date, true)));
+            totals.put(date, actionCatalog.snapshot().totalsOf(checked));
+        });
+        userDailyActionRepository.applyStates(states);
+        dailyBalanceRepository.upsertTotals(userId, totals);
+        return history;
+    }
+
+    private String export(Long userId, Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        historyExportService.export(userId, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.mizan.almizan;
+
+import com.mizan.almizan.entity.AppUser;
+import com.mizan.almizan.repository.ActionRepository;
+import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.security.JwtUtils;
+import com.mizan.almizan.service.ActionCatalog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Statements issued per request on the balance and day paths (rows format). A count that grows
+ * with the number of checked actions is an N+1 regression.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class StatementCountTest {
+
+    @TestConfiguration
+    static class CountingDataSourceConfig {
+
+        @Bean
+        static BeanPostProcessor countingDataSource() {
+            return StatementCounter.postProcessor();
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ActionRepository actionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ActionCatalog actionCatalog;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    private List<Long> actionIds;
+    private String bearer;
+
+    @BeforeEach
+    void setUp() {
+        actionIds = TestFixtures.sixActions(actionRepository, actionCatalog);
+        AppUser user = TestFixtures.newUser(userRepository, "count");
+        bearer = "Bearer " + jwtUtils.generateToken(user.getId(), user.getUsername());
+    }
+
+    @Test
+    void dayReadsDoNotDependOnTheNumberOfCheckedActions() throws Exception {
+        // Fresh day: no daily_balances row yet
+        assertEquals(1, statementsOf(get("/api/actions/today")));
+        assertEquals(2, statementsOf(get("/api/balance/today")));  // row lookup + one aggregate
+
+        for (Long actionId : actionIds) {
+            toggle(actionId, LocalDate.now(), true);
+        }
+        assertEquals(1, statementsOf(get("/api/actions/today")));
+        assertEquals(1, statementsOf(get("/api/balance/today")));
+        assertEquals(1, statementsOf(get("/api/balance/recent")));
+        assertEquals(2, statementsOf(get("/api/day")));            // version + checked actions
+    }
+
+    @Test
+    void conditionalDayViewOnlyReadsTheVersion() throws Exception {
+        toggle(actionIds.get(0), LocalDate.now(), true);
+        MvcResult first = mockMvc.perform(get("/api/day").header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk())
+                .andReturn();
+        String eTag = first.getResponse().getHeader(HttpHeaders.ETAG);
+
+        StatementCounter.reset();
+        mockMvc.perform(get("/api/day").header(HttpHeaders.AUTHORIZATION, bearer).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        assertEquals(1, StatementCounter.prepared());
+    }
+
+    @Test
+    void togglesUseAFixedNumberOfStatements() throws Exception {
+        LocalDate day = LocalDate.now().minusDays(3);
+        // Two bad actions: the day stays non-positive, the streak is not touched
+        int firstToggle = statementsOf(post("/api/balance/toggle").contentType(MediaType.APPLICATION_JSON)
+                .content(toggleJson(actionIds.get(1), day, true)));
+        int secondToggle = statementsOf(post("/api/balance/toggle").contentType(MediaType.APPLICATION_JSON)
+                .content(toggleJson(actionIds.get(3), day, true)));
+        assertEquals(firstToggle, secondToggle);
+        assertEquals(6, firstToggle);
+        assertEquals(2, statementsOf(post("/api/balance/toggle").contentType(MediaType.APPLICATION_JSON)
+                .content(toggleJson(actionIds.get(3), day, true))));  // already checked: lookup + stored balance
+        toggle(actionIds.get(2), day, true);
+        // The day becomes positive: + streak row created if missing, locked and updated
+        assertEquals(9, statementsOf(post("/api/balance/toggle").contentType(MediaType.APPLICATION_JSON)
+                .content(toggleJson(actionIds.get(4), day, true))));
+
+        // Day locks (create batch + select), read, write batch, stored totals, upsert batch, rollups:
+        // whatever the number of items
+        assertEquals(8, statementsOf(bulk(actionIds.subList(0, 2), day.minusDays(1))));
+        assertEquals(8, statementsOf(bulk(actionIds, day.minusDays(2))));
+    }
+
+    private int statementsOf(MockHttpServletRequestBuilder request) throws Exception {
+        StatementCounter.reset();
+        mockMvc.perform(request.header(HttpHeaders.AUTHORIZATION, bearer)).andExpect(status().isOk());
+        return StatementCounter.prepared();
+    }
+
+    private void toggle(Long actionId, LocalDate date, boolean checked) throws Exception {
+        mockMvc.perform(post("/api/balance/toggle").header(HttpHeaders.AUTHORIZATION, bearer)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(toggleJson(actionId, date, checked)))
+                .andExpect(status().isOk());
+    }
+
+    private static MockHttpServletRequestBuilder bulk(List<Long> ids, LocalDate date) {
+        List<String> items = ids.stream().map(id -> toggleJson(id, date, true)).toList();
+        return post("/api/balance/toggle/bulk").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"items\": [" + String.join(",", items) + "]}");
+    }
+
+    private static String toggleJson(Long actionId, LocalDate date, boolean checked) {
+        return "{\"actionId\": " + actionId + ", \"date\": \"" + date + "\", \"checked\": " + checked + "}";
+    }
+}
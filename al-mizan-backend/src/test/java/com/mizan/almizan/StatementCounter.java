@@ -0,0 +1,91 @@
+package com.mizan.almizan;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the statements prepared on, and executed through, the connections of the application's
+ * DataSource. Register {@link #postProcessor()} as a static bean of a test configuration.
+ * Only the thread that called {@link #reset()} is counted: scheduled jobs and write-behind flushes
+ * running meanwhile on other threads are not.
+ */
+final class StatementCounter {
+
+    private static final Set<String> PREPARE = Set.of("prepareStatement", "prepareCall", "createStatement");
+    private static final Set<String> EXECUTE = Set.of("execute", "executeQuery", "executeUpdate", "executeLargeUpdate",
+            "executeBatch", "executeLargeBatch");
+
+    private static final AtomicInteger prepared = new AtomicInteger();
+    private static final AtomicInteger executed = new AtomicInteger();
+    private static volatile Thread counted;
+
+    private StatementCounter() {
+    }
+
+    /** Start counting the statements of the calling thread from zero. */
+    static void reset() {
+        counted = Thread.currentThread();
+        prepared.set(0);
+        executed.set(0);
+    }
+
+    /** Statements prepared or created since the last reset. */
+    static int prepared() {
+        return prepared.get();
+    }
+
+    /** Executions (database round trips; a JDBC batch counts once) since the last reset. */
+    static int executed() {
+        return executed.get();
+    }
+
+    static BeanPostProcessor postProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource)) {
+                    return bean;
+                }
+                return new DelegatingDataSource(dataSource) {
+                    @Override
+                    public Connection getConnection() throws SQLException {
+                        return counting(super.getConnection(), Connection.class);
+                    }
+                };
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T counting(T target, Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            String name = method.getName();
+            if (Thread.currentThread() == counted) {
+                if (PREPARE.contains(name)) {
+                    prepared.incrementAndGet();
+                } else if (EXECUTE.contains(name)) {
+                    executed.incrementAndGet();
+                }
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            if (PREPARE.contains(name)) {
+                return counting((Statement) result, (Class<Statement>) method.getReturnType());
+            }
+            return result;
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package com.mizan.almizan;
+
+import com.mizan.almizan.entity.Action;
+import com.mizan.almizan.entity.AppUser;
+import com.mizan.almizan.repository.ActionRepository;
+import com.mizan.almizan.repository.UserRepository;
+import com.mizan.almizan.service.ActionCatalog;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Catalog and user fixtures shared by the integration tests.
+ */
+final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    /** An active WORSHIP action, named {@code name} in every language. */
+    static Action action(String name, Action.ActionType type, int weight) {
+        return Action.builder().nameAr(name).nameFr(name).nameEn(name)
+                .type(type).weight(weight).category("WORSHIP").active(true)
+                .build();
+    }
+
+    /**
+     * Six actions alternating GOOD and BAD with weights 1 to 3, created on the first call of the
+     * test context.
+     *
+     * @return the ids of the catalog's actions
+     */
+    static List<Long> sixActions(ActionRepository actionRepository, ActionCatalog actionCatalog) {
+        if (actionRepository.count() == 0) {
+            for (int i = 0; i < 6; i++) {
+                actionRepository.save(action("a" + i, i % 2 == 0 ? Action.ActionType.GOOD : Action.ActionType.BAD,
+                        1 + i % 3));
+            }
+            actionCatalog.refresh();
+        }
+        return actionRepository.findAll().stream().map(Action::getId).toList();
+    }
+
+    /** A user with a unique username starting with {@code prefix}. */
+    static AppUser newUser(UserRepository userRepository, String prefix) {
+        String username = prefix + "-" + UUID.randomUUID();
+        return userRepository.save(AppUser.builder().username(username).email(username + "@test").password("x").build());
+    }
+}
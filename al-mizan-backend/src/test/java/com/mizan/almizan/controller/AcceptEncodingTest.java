@@ -0,0 +1,34 @@
+package com.mizan.almizan.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * gzip negotiation on Accept-Encoding q-values.
+ */
+class AcceptEncodingTest {
+
+    @Test
+    void gzipNeedsANonZeroQValue() {
+        assertTrue(AcceptEncoding.allowsGzip("gzip"));
+        assertTrue(AcceptEncoding.allowsGzip("deflate, GZIP;q=0.5, br"));
+        assertTrue(AcceptEncoding.allowsGzip("x-gzip"));
+        assertFalse(AcceptEncoding.allowsGzip(null));
+        assertFalse(AcceptEncoding.allowsGzip(""));
+        assertFalse(AcceptEncoding.allowsGzip("gzip;q=0"));
+        assertFalse(AcceptEncoding.allowsGzip("gzip; q=0.000, br"));
+        assertFalse(AcceptEncoding.allowsGzip("gzip;q=oops"));
+        assertFalse(AcceptEncoding.allowsGzip("deflate, br"));
+    }
+
+    @Test
+    void explicitEntryWinsOverWildcard() {
+        assertTrue(AcceptEncoding.allowsGzip("*"));
+        assertTrue(AcceptEncoding.allowsGzip("br, *;q=0.1"));
+        assertFalse(AcceptEncoding.allowsGzip("*;q=0"));
+        assertFalse(AcceptEncoding.allowsGzip("*, gzip;q=0"));
+        assertTrue(AcceptEncoding.allowsGzip("*;q=0, gzip"));
+    }
+}
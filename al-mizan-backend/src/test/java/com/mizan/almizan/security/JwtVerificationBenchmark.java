@@ -0,0 +1,52 @@
+package com.mizan.almizan.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of authenticating one request: full HMAC verification vs. the verified-token cache.
+ * Run with: mvn test-compile exec:exec -Dbenchmark=com.mizan.almizan.security.JwtVerificationBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtVerificationBenchmark {
+
+    private static final String SECRET = "benchmark-secret-key-minimum-32-characters-long";
+
+    private JwtUtils uncached;
+    private JwtUtils cached;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        uncached = new JwtUtils(SECRET, 86400000, 0, new SimpleMeterRegistry());
+        cached = new JwtUtils(SECRET, 86400000, 10000, new SimpleMeterRegistry());
+        token = cached.generateToken(42L, "benchmark-user");
+        cached.verify(token);
+    }
+
+    @Benchmark
+    public JwtUtils.VerifiedToken fullVerification() {
+        return uncached.verify(token);
+    }
+
+    @Benchmark
+    public JwtUtils.VerifiedToken cachedVerification() {
+        return cached.verify(token);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtVerificationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,79 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.BalanceTotals;
+import com.mizan.almizan.entity.Action;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Popcount totals and bit decoding of day masks against a plain loop over the checked actions.
+ */
+class ActionMasksTest {
+
+    private static Action action(long id, Action.ActionType type, int weight, Integer bitIndex) {
+        return Action.builder().id(id).nameAr("a").nameFr("a").nameEn("a")
+                .type(type).weight(weight).active(true).bitIndex(bitIndex).build();
+    }
+
+    private static long[] mask(Action... checked) {
+        BitSet bits = new BitSet();
+        for (Action action : checked) {
+            bits.set(action.getBitIndex());
+        }
+        return bits.toLongArray();
+    }
+
+    @Test
+    void totalsAndIdsSpanSeveralWords() {
+        Action prayer = action(1, Action.ActionType.GOOD, 3, 0);
+        Action charity = action(2, Action.ActionType.GOOD, 5, 3);
+        Action lie = action(3, Action.ActionType.BAD, 2, 70);
+        Action unassigned = action(4, Action.ActionType.BAD, 7, null);
+        ActionMasks masks = ActionMasks.of(new Action[]{prayer, charity, lie, unassigned});
+
+        assertEquals(new BalanceTotals(2, 1, 8, 2), masks.totals(mask(prayer, charity, lie)));
+        assertEquals(Set.of(1L, 2L, 3L), masks.actionIds(mask(prayer, charity, lie)));
+        assertEquals(BalanceTotals.EMPTY, masks.totals(new long[0]));
+        assertEquals(Set.of(), masks.actionIds(new long[0]));
+    }
+
+    @Test
+    void bitsWithoutActionAreIgnored() {
+        Action prayer = action(1, Action.ActionType.GOOD, 3, 0);
+        ActionMasks masks = ActionMasks.of(new Action[]{prayer});
+        BitSet bits = new BitSet();
+        bits.set(0);
+        bits.set(5);    // hole in the catalog
+        bits.set(130);  // beyond the catalog (action removed, longer mask)
+        assertEquals(new BalanceTotals(1, 0, 3, 0), masks.totals(bits.toLongArray()));
+        assertEquals(Set.of(1L), masks.actionIds(bits.toLongArray()));
+    }
+
+    @Test
+    void randomMasksMatchALoopOverTheirActions() {
+        Random random = new Random(7);
+        Action[] actions = new Action[150];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = action(i + 1, random.nextBoolean() ? Action.ActionType.GOOD : Action.ActionType.BAD,
+                    1 + random.nextInt(20), i % 10 == 9 ? null : i);
+        }
+        ActionMasks masks = ActionMasks.of(actions);
+        for (int round = 0; round < 500; round++) {
+            List<Action> checked = new ArrayList<>();
+            BalanceTotals expected = BalanceTotals.EMPTY;
+            for (Action action : actions) {
+                if (action.getBitIndex() != null && random.nextInt(4) == 0) {
+                    checked.add(action);
+                    expected = expected.plus(BalanceTotals.of(action, 1));
+                }
+            }
+            long[] mask = mask(checked.toArray(Action[]::new));
+            assertEquals(expected, masks.totals(mask));
+            assertEquals(checked.stream().map(Action::getId).collect(Collectors.toSet()), masks.actionIds(mask));
+        }
+    }
+}
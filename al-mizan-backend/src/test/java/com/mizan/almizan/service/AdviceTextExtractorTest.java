@@ -0,0 +1,49 @@
+package com.mizan.almizan.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Decoding of the streamed "advice" value whatever the chunk boundaries, escapes included.
+ */
+class AdviceTextExtractorTest {
+
+    private static final String ANSWER =
+            "{\"advice\": \"Say \\\"bismillah\\\"\\n\\u00e9\\u0644 \\\\ \\/ \\t.\", \"encouragement\": \"not \\\"this\\\"\"}";
+    private static final String ADVICE = "Say \"bismillah\"\n\u00e9\u0644 \\ / \t.";
+
+    private static String extract(List<String> chunks) {
+        AdviceTextExtractor extractor = new AdviceTextExtractor();
+        StringBuilder text = new StringBuilder();
+        chunks.forEach(chunk -> text.append(extractor.append(chunk)));
+        return text.toString();
+    }
+
+    @Test
+    void everySplitOfTheAnswerDecodesTheSameText() {
+        for (int i = 0; i <= ANSWER.length(); i++) {
+            assertEquals(ADVICE, extract(List.of(ANSWER.substring(0, i), ANSWER.substring(i))), "split at " + i);
+        }
+        List<String> characters = ANSWER.chars().mapToObj(c -> String.valueOf((char) c)).toList();
+        assertEquals(ADVICE, extract(characters));
+    }
+
+    @Test
+    void cutEscapesWaitForTheNextChunk() {
+        AdviceTextExtractor extractor = new AdviceTextExtractor();
+        assertEquals("a", extractor.append("{\"advice\":\"a\\"));
+        assertEquals("\"", extractor.append("\""));
+        assertEquals("", extractor.append("\\u00"));
+        assertEquals("", extractor.append("e"));
+        assertEquals("\u00e9b", extractor.append("9b"));
+        assertEquals("", extractor.append("\", \"advice\": \"again\"}"));
+    }
+
+    @Test
+    void textBeforeTheAdviceKeyIsIgnored() {
+        assertEquals("ok", extract(List.of("```json\n{\"hadithReference\": \"x\", \"adv", "ice\"", " : \"o", "k\"}\n```")));
+    }
+}
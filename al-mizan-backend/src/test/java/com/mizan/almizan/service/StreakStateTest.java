@@ -0,0 +1,100 @@
+package com.mizan.almizan.service;
+
+import com.mizan.almizan.dto.StreakState;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * O(1) streak updates against a full fold over the positive days, as computeStreak does.
+ */
+class StreakStateTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    private static StreakState fold(Collection<LocalDate> positiveDays) {
+        StreakState state = StreakState.NONE;
+        for (LocalDate date : new TreeSet<>(positiveDays)) {
+            state = state.next(date);
+        }
+        return state;
+    }
+
+    private static SortedSet<LocalDate> days(int... offsets) {
+        SortedSet<LocalDate> days = new TreeSet<>();
+        for (int offset : offsets) {
+            days.add(DAY.plusDays(offset));
+        }
+        return days;
+    }
+
+    /**
+     * Apply one change to the state of the days, and check it against the fold of the changed days
+     * when it is applied in O(1).
+     */
+    private static Optional<StreakState> change(SortedSet<LocalDate> days, int offset, boolean positive) {
+        LocalDate date = DAY.plusDays(offset);
+        SortedSet<LocalDate> after = new TreeSet<>(days);
+        Optional<StreakState> updated;
+        if (positive) {
+            after.add(date);
+            updated = fold(days).withPositive(date);
+        } else {
+            after.remove(date);
+            updated = fold(days).withoutPositive(date);
+        }
+        updated.ifPresent(state -> assertEquals(fold(after), state));
+        return updated;
+    }
+
+    @Test
+    void extendsTheLatestRunOrStartsANewOne() {
+        assertEquals(new StreakState(4, DAY.plusDays(3), 0), change(days(0, 1, 2), 3, true).orElseThrow());
+        assertEquals(new StreakState(1, DAY.plusDays(5), 3), change(days(0, 1, 2), 5, true).orElseThrow());
+        assertEquals(new StreakState(1, DAY, 0), change(days(), 0, true).orElseThrow());
+    }
+
+    @Test
+    void shortensTheLatestRunFromItsEnd() {
+        assertEquals(new StreakState(2, DAY.plusDays(1), 0), change(days(0, 1, 2), 2, false).orElseThrow());
+        assertEquals(new StreakState(1, DAY.plusDays(5), 4),
+                change(days(0, 1, 2, 3, 5, 6), 6, false).orElseThrow());
+    }
+
+    @Test
+    void splitsTheLatestRun() {
+        // In the middle: the days before become the earlier best
+        assertEquals(new StreakState(2, DAY.plusDays(4), 2), change(days(0, 1, 2, 3, 4), 2, false).orElseThrow());
+        // At the run start: nothing left before it, the earlier best is kept
+        assertEquals(new StreakState(3, DAY.plusDays(13), 2),
+                change(days(0, 1, 10, 11, 12, 13), 10, false).orElseThrow());
+        assertEquals(new StreakState(2, DAY.plusDays(2), 0), change(days(0, 1, 2), 0, false).orElseThrow());
+    }
+
+    @Test
+    void editsBeforeTheLatestRunNeedTheHistory() {
+        // Merging or shortening earlier runs, or removing the latest run's only day, is left to computeStreak
+        assertTrue(change(days(0, 2, 3, 10, 11), 1, true).isEmpty());
+        assertTrue(change(days(0, 1, 2, 10, 11), 1, false).isEmpty());
+        assertTrue(change(days(0, 1, 2, 10), 10, false).isEmpty());
+        assertTrue(change(days(), 0, false).isEmpty());
+    }
+
+    @Test
+    void randomChangesMatchTheFold() {
+        Random random = new Random(11);
+        for (int round = 0; round < 2000; round++) {
+            SortedSet<LocalDate> days = new TreeSet<>();
+            for (int offset = 0; offset < 30; offset++) {
+                if (random.nextInt(3) > 0) {
+                    days.add(DAY.plusDays(offset));
+                }
+            }
+            int offset = random.nextInt(30);
+            change(days, offset, !days.contains(DAY.plusDays(offset)));
+        }
+    }
+}
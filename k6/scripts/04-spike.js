@@ -83,6 +83,6 @@ import { textSummary } from 'https://jslib.k6.io/k6-summary/0.1.0/index.js';
 export function handleSummary(data) {
   return {
     'stdout': textSummary(data, { indent: '  ', enableColors: true }),
-    'results/spike-test-summary.json': JSON.stringify(data, null, 2),
+    [`results/spike-test-summary${__ENV.RUN_LABEL ? '-' + __ENV.RUN_LABEL : ''}.json`]: JSON.stringify(data, null, 2),
   };
 }